@@ -0,0 +1,99 @@
+package za.ac.cput.mapapp;
+
+import org.apache.derby.drda.NetworkServerControl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Seeded synthetic study locations around the CPUT campus, shared by the benchmarks
+ * so every run (and every benchmark) sees the same data.
+ * @author abong
+ */
+final class BenchmarkData {
+
+    static final double CENTER_LAT = -33.93080102488844;
+    static final double CENTER_LON = 18.430230425585137;
+    static final String CLIENT_DRIVER = "org.apache.derby.jdbc.ClientDriver";
+
+    private static final String[] TYPES = {"Library", "Study Room", "Lab", "Cafeteria", "Lecture Hall"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param spreadDegrees edge of the square the locations are scattered over
+     *                      (0.05 degrees is about 5 km)
+     */
+    static List<StudyLocation> locations(int n, double spreadDegrees, long seed) {
+        Random random = new Random(seed);
+        List<StudyLocation> locations = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            locations.add(new StudyLocation(i + 1, "Group " + Integer.toString(random.nextInt(n), 36) + " " + i,
+                    TYPES[random.nextInt(TYPES.length)], "Building " + (i % 50),
+                    CENTER_LAT + (random.nextDouble() - 0.5) * spreadDegrees,
+                    CENTER_LON + (random.nextDouble() - 0.5) * spreadDegrees,
+                    1 + random.nextInt(30)));
+        }
+        return locations;
+    }
+
+    /**
+     * Create the app's schema and replace the study locations with n synthetic rows.
+     */
+    static void seedDatabase(Connection con, int n) throws SQLException {
+        EmbeddedDatabase.createSchema(con);
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("DELETE FROM study_locations");
+        }
+        EmbeddedDatabase.insertStudyLocations(con, locations(n, 0.05, 42));
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Start a Derby network server in this JVM on a localhost port and wait until it answers.
+     */
+    static NetworkServerControl startNetworkServer(int port) throws Exception {
+        NetworkServerControl server = new NetworkServerControl(InetAddress.getLoopbackAddress(), port);
+        server.start(null);
+        for (int attempt = 0; attempt < 50; attempt++) {
+            try {
+                server.ping();
+                return server;
+            } catch (Exception e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("Derby network server did not start");
+    }
+
+    /**
+     * Client URL for the database in an EmbeddedDatabase directory, served by this server.
+     */
+    static String clientUrl(int port, Path directory) {
+        return "jdbc:derby://localhost:" + port + "/"
+                + directory.resolve("LocationDB").toAbsolutePath() + ";user=app;password=app";
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
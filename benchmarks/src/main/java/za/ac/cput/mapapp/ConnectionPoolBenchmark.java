@@ -0,0 +1,98 @@
+package za.ac.cput.mapapp;
+
+import org.apache.derby.drda.NetworkServerControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The old connect-per-call data access (load the driver, open a connection and
+ * prepare the statement on every call) against the pooled, statement-caching
+ * ConnectionPool, both over DRDA to a Derby network server in this JVM.
+ * @author abong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionPoolBenchmark {
+
+    private static final String SQL =
+            "SELECT id, GROUP_NAME, LOCATION_TYPE, BUILDING_NAME, LATITUDE, LONGITUDE, CAPACITY " +
+            "FROM study_locations ORDER BY group_name";
+
+    private Path directory;
+    private NetworkServerControl server;
+    private String url;
+    private ConnectionPool pool;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("learnhub-bench");
+        EmbeddedDatabase.prepareDirectory(directory);
+        Class.forName(EmbeddedDatabase.DRIVER);
+        try (Connection con = DriverManager.getConnection(EmbeddedDatabase.url(directory))) {
+            BenchmarkData.seedDatabase(con, 100);
+        }
+        int port = BenchmarkData.freePort();
+        server = BenchmarkData.startNetworkServer(port);
+        url = BenchmarkData.clientUrl(port, directory);
+        pool = new ConnectionPool(BenchmarkData.CLIENT_DRIVER, url, 4, 5000, 32);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pool.close();
+        server.shutdown();
+        EmbeddedDatabase.shutdown();
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void connectPerCall(Blackhole blackhole) throws Exception {
+        Class.forName(BenchmarkData.CLIENT_DRIVER);
+        try (Connection con = DriverManager.getConnection(url);
+             PreparedStatement stmt = con.prepareStatement(SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            drain(rs, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void pooled(Blackhole blackhole) throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(SQL);
+             ResultSet rs = stmt.executeQuery()) {
+            drain(rs, blackhole);
+        }
+    }
+
+    private static void drain(ResultSet rs, Blackhole blackhole) throws SQLException {
+        while (rs.next()) {
+            blackhole.consume(rs.getInt(1));
+            blackhole.consume(rs.getString(2));
+            blackhole.consume(rs.getDouble(5));
+            blackhole.consume(rs.getDouble(6));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package za.ac.cput.mapapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StudyLocationDBDemo.loadStudyLocations against an embedded Derby database in a
+ * temporary directory, seeded with synthetic rows. Uses the app's own pool and
+ * DAO, so it measures the query, the result set mapping and the pool overhead
+ * without a network round trip.
+ * @author abong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private Path directory;
+    private ConnectionPool pool;
+    private StudyLocationDBDemo dao;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("learnhub-bench");
+        EmbeddedDatabase.prepareDirectory(directory);
+        String url = EmbeddedDatabase.url(directory);
+        Class.forName(EmbeddedDatabase.DRIVER);
+        try (Connection con = DriverManager.getConnection(url)) {
+            BenchmarkData.seedDatabase(con, rows);
+        }
+        pool = new ConnectionPool(EmbeddedDatabase.DRIVER, url, 4, 5000, 32);
+        dao = new StudyLocationDBDemo(pool);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.close();
+        EmbeddedDatabase.shutdown();
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<StudyLocation> loadStudyLocations() {
+        return dao.loadStudyLocations();
+    }
+}
@@ -0,0 +1,113 @@
+package za.ac.cput.mapapp;
+
+import org.apache.derby.drda.NetworkServerControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DAO query latency with the database in-process (learnhub.db.mode=embedded)
+ * against the same database served over DRDA by a Derby network server
+ * (client mode). The server runs in this JVM on a free localhost port, so the
+ * difference is the network protocol round trips, not disk or machine.
+ * @author abong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DerbyModeBenchmark {
+
+    @Param({"embedded", "client"})
+    public String mode;
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private Path directory;
+    private NetworkServerControl server;
+    private ConnectionPool pool;
+    private StudyLocationDBDemo dao;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("learnhub-bench");
+        EmbeddedDatabase.prepareDirectory(directory);
+        String embeddedUrl = EmbeddedDatabase.url(directory);
+        Class.forName(EmbeddedDatabase.DRIVER);
+        try (Connection con = DriverManager.getConnection(embeddedUrl)) {
+            BenchmarkData.seedDatabase(con, rows);
+        }
+
+        if ("client".equals(mode)) {
+            int port = BenchmarkData.freePort();
+            server = BenchmarkData.startNetworkServer(port);
+            pool = new ConnectionPool(BenchmarkData.CLIENT_DRIVER, BenchmarkData.clientUrl(port, directory),
+                    4, 5000, 32);
+        } else {
+            pool = new ConnectionPool(EmbeddedDatabase.DRIVER, embeddedUrl, 4, 5000, 32);
+        }
+        dao = new StudyLocationDBDemo(pool);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pool.close();
+        if (server != null) {
+            server.shutdown();
+        }
+        EmbeddedDatabase.shutdown();
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    /**
+     * Whole table, ordered by name.
+     */
+    @Benchmark
+    public List<StudyLocation> loadAll() {
+        return dao.loadStudyLocations();
+    }
+
+    /**
+     * The app's startup query: locations within 1 km of the user.
+     */
+    @Benchmark
+    public List<StudyLocation> loadWithin1Km() throws SQLException {
+        return dao.loadStudyLocationsWithin(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON, 1000);
+    }
+
+    /**
+     * A single-row lookup, where the round trip dominates.
+     */
+    @Benchmark
+    public Student loadCurrentStudent() {
+        return dao.loadCurrentStudent();
+    }
+
+    /**
+     * One student's saved location, looked up by primary key.
+     */
+    @Benchmark
+    public double[] loadUserLocation() {
+        return dao.loadUserLocation(1);
+    }
+}
@@ -0,0 +1,115 @@
+package za.ac.cput.mapapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distance from the user to every study location, per formula and per code path:
+ * the per-call Haversine MapApp used to carry, the scalar DistanceEngine formulas,
+ * and the engine's batch and radius queries.
+ * @author abong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private List<StudyLocation> locations;
+    private double[] latitudes;
+    private double[] longitudes;
+    private DistanceEngine engine;
+    private double[] distances;
+    private int[] withinIndexes;
+    private double[] withinDistances;
+
+    @Setup
+    public void setUp() {
+        locations = BenchmarkData.locations(size, 0.05, 42);
+        latitudes = new double[size];
+        longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = locations.get(i).getLatitude();
+            longitudes[i] = locations.get(i).getLongitude();
+        }
+        engine = DistanceEngine.of(locations);
+        distances = new double[size];
+        withinIndexes = new int[size];
+        withinDistances = new double[size];
+    }
+
+    @Benchmark
+    public void legacyPerCall(Blackhole blackhole) {
+        for (int i = 0; i < size; i++) {
+            blackhole.consume(legacyHaversine(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON,
+                    latitudes[i], longitudes[i]));
+        }
+    }
+
+    @Benchmark
+    public void haversinePerCall(Blackhole blackhole) {
+        for (int i = 0; i < size; i++) {
+            blackhole.consume(DistanceEngine.haversineMeters(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON,
+                    latitudes[i], longitudes[i]));
+        }
+    }
+
+    @Benchmark
+    public void equirectangularPerCall(Blackhole blackhole) {
+        for (int i = 0; i < size; i++) {
+            blackhole.consume(DistanceEngine.equirectangularMeters(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON,
+                    latitudes[i], longitudes[i]));
+        }
+    }
+
+    @Benchmark
+    public double[] engineBatch() {
+        engine.distancesTo(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON, distances);
+        return distances;
+    }
+
+    /**
+     * What MapApp does after every location change: batch distances written back to the models.
+     */
+    @Benchmark
+    public List<StudyLocation> engineApply() {
+        engine.applyDistances(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON);
+        return locations;
+    }
+
+    @Benchmark
+    public int engineWithin1Km() {
+        return engine.within(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON, 1000,
+                withinIndexes, withinDistances);
+    }
+
+    /**
+     * The atan2 form MapApp.calculateDistance used before DistanceEngine.
+     */
+    private static double legacyHaversine(double lat1, double lon1, double lat2, double lon2) {
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lonDistance = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+        return DistanceEngine.EARTH_RADIUS_METERS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -0,0 +1,105 @@
+package za.ac.cput.mapapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The groups list query for the sort/filter options the UI offers.
+ * "planner" runs it as a LocationQuery; "legacy" is the single-combo
+ * filter-then-sort-everything code it replaced (a limit is a subList of the
+ * fully sorted result). Locations are scattered over about 5 km around the
+ * user, with distances already set, as they are in the app.
+ * @author abong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterSortBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"distance", "name", "members", "within100", "within500", "within1000",
+            "within500-members-top20", "name-top20"})
+    public String option;
+
+    private List<StudyLocation> locations;
+    private SpatialIndex index;
+    private LocationQueryPlanner planner;
+
+    private LocationQuery query;
+    private String legacySort;
+    private double legacyRadius;
+    private int legacyLimit;
+
+    @Setup
+    public void setUp() {
+        locations = BenchmarkData.locations(size, 0.05, 42);
+        DistanceEngine.of(locations).applyDistances(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON);
+        index = SpatialIndex.of(locations);
+        planner = new LocationQueryPlanner(locations, index);
+
+        LocationQuery.Builder builder = LocationQuery.builder();
+        legacySort = "distance";
+        legacyRadius = 0;
+        legacyLimit = 0;
+        for (String part : option.split("-")) {
+            if (part.startsWith("within")) {
+                legacyRadius = Double.parseDouble(part.substring(6));
+                builder.within(legacyRadius);
+            } else if (part.startsWith("top")) {
+                legacyLimit = Integer.parseInt(part.substring(3));
+                builder.limit(legacyLimit);
+            } else {
+                legacySort = part;
+            }
+        }
+        if (legacySort.equals("name")) {
+            builder.sortBy(LocationQuery.SortKey.NAME);
+        } else if (legacySort.equals("members")) {
+            builder.sortBy(LocationQuery.SortKey.MEMBERS);
+        }
+        builder.sortBy(LocationQuery.SortKey.DISTANCE);
+        query = builder.build();
+    }
+
+    @Benchmark
+    public List<StudyLocation> planner() {
+        return planner.execute(query, BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON);
+    }
+
+    @Benchmark
+    public List<StudyLocation> legacy() {
+        List<StudyLocation> filtered = legacyRadius > 0
+                ? index.findWithin(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON, legacyRadius)
+                : new ArrayList<>(locations);
+
+        if (legacySort.equals("name")) {
+            filtered.sort((a, b) -> a.getGroupName().compareToIgnoreCase(b.getGroupName()));
+        } else if (legacySort.equals("members")) {
+            filtered.sort((a, b) -> Integer.compare(b.getMemberCount(), a.getMemberCount()));
+        } else {
+            filtered.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        }
+
+        return legacyLimit > 0 && legacyLimit < filtered.size()
+                ? new ArrayList<>(filtered.subList(0, legacyLimit))
+                : filtered;
+    }
+}
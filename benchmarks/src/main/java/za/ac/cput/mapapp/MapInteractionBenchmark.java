@@ -0,0 +1,199 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.cache.LocalCache;
+import org.jxmapviewer.viewer.DefaultTileFactory;
+import org.jxmapviewer.viewer.GeoPosition;
+import org.jxmapviewer.viewer.TileFactoryInfo;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a drag from a high-polling mouse, with a wheel notch every so often,
+ * against the map as MapApp used to drive it (every event moves the map) and
+ * through the MapInteractionScheduler.
+ *
+ * Input events are posted to the EDT at a fixed rate. Like Swing's repaint
+ * manager, a change to the map's centre or zoom queues one paint (into an
+ * off-screen image) and further changes before it runs share it. Reported per
+ * run: input events, map changes, paints per second, the share of EDT time
+ * spent handling input and painting, and the paint-time histogram. Not a JMH
+ * benchmark; it has its own main:
+ * java -cp benchmarks/target/benchmarks.jar za.ac.cput.mapapp.MapInteractionBenchmark [eventsPerSecond] [seconds] [groups]
+ * @author abong
+ */
+public class MapInteractionBenchmark {
+
+    private static final int VIEW_WIDTH = 830;
+    private static final int VIEW_HEIGHT = 500;
+    private static final GeoPosition CAMPUS = new GeoPosition(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON);
+    private static final int WHEEL_EVERY = 100;
+
+    public static void main(String[] args) throws Exception {
+        int eventsPerSecond = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int groups = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        System.out.println(eventsPerSecond + " input events/s for " + seconds + " s, " + groups + " groups");
+        byte[] png = blankTile();
+        run("every event", false, eventsPerSecond, seconds, groups, png);
+        run("once per frame", true, eventsPerSecond, seconds, groups, png);
+    }
+
+    private static void run(String name, boolean scheduled, int eventsPerSecond, int seconds, int groups,
+                            byte[] png) throws Exception {
+        Run run = new Run(scheduled, groups, png);
+        SwingUtilities.invokeAndWait(run::warmUp);
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / eventsPerSecond;
+        int events = eventsPerSecond * seconds;
+        long start = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            LockSupport.parkNanos(start + i * interval - System.nanoTime());
+            int event = i;
+            SwingUtilities.invokeLater(() -> run.input(event));
+        }
+        SwingUtilities.invokeAndWait(() -> { });
+        // Let the last frame and the idle timer run
+        Thread.sleep(AppConfig.getMapIdleMillis() + 50L);
+        SwingUtilities.invokeAndWait(() -> { });
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-15s %6d input events %6d map changes %5d paints (%5.1f/s) EDT busy %5.1f%%%n",
+                name, run.inputEvents, run.updates, run.frames.getCount(),
+                run.frames.getCount() / (elapsed / 1e9), run.busyNanos * 100.0 / elapsed);
+        System.out.println("                paint: " + run.frames);
+    }
+
+    /**
+     * One map with its overlay, driven either directly or through the scheduler.
+     */
+    private static final class Run {
+        final boolean scheduled;
+        final InteractiveMapViewer map = new InteractiveMapViewer();
+        final MapInteractionScheduler scheduler = map.getInteractionScheduler();
+        final FrameTimeHistogram frames = new FrameTimeHistogram();
+        final BufferedImage screen = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        boolean paintQueued;
+        long inputEvents;
+        long updates;
+        long busyNanos;
+
+        Run(boolean scheduled, int groups, byte[] png) {
+            this.scheduled = scheduled;
+            TileFactoryInfo info = new TileFactoryInfo(1, 15, 17, 256, true, true,
+                    "http://tiles.invalid", "x", "y", "z") {
+                @Override
+                public String getTileUrl(int x, int y, int zoom) {
+                    return String.format("http://tiles.invalid/%d/%d/%d.png", 17 - zoom, x, y);
+                }
+            };
+            DefaultTileFactory factory = new DefaultTileFactory(info);
+            factory.setLocalCache(new LocalCache() {
+                @Override
+                public InputStream get(URL url) {
+                    return new ByteArrayInputStream(png);
+                }
+
+                @Override
+                public void put(URL url, InputStream data) {
+                }
+            });
+            map.setTileFactory(factory);
+            map.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+            map.setZoom(8);
+            map.setAddressLocation(CAMPUS);
+
+            StudyLocationWaypointPainter painter = new StudyLocationWaypointPainter();
+            scheduler.addListener(painter::setFastRendering);
+            Random random = new Random(42);
+            Set<StudyLocationWaypoint> waypoints = new HashSet<>();
+            for (int i = 0; i < groups; i++) {
+                double latitude = CAMPUS.getLatitude() + (random.nextDouble() - 0.5) * 0.2;
+                double longitude = CAMPUS.getLongitude() + (random.nextDouble() - 0.5) * 0.2;
+                StudyLocationWaypoint waypoint = new StudyLocationWaypoint("Group " + i,
+                        new GeoPosition(latitude, longitude), Color.BLUE, false);
+                waypoint.setStudyLocation(new StudyLocation(i, "Group " + i, "Library", "Building " + (i % 50),
+                        latitude, longitude, 1 + i % 8));
+                waypoints.add(waypoint);
+            }
+            painter.setWaypoints(waypoints);
+            map.setOverlayPainter(painter);
+
+            map.addPropertyChangeListener("center", e -> mapChanged());
+            map.addPropertyChangeListener("zoom", e -> mapChanged());
+        }
+
+        void warmUp() {
+            for (int i = 0; i < 20; i++) {
+                paint();
+            }
+            frames.reset();
+            busyNanos = 0;
+        }
+
+        /**
+         * Two pixels east per event; every WHEEL_EVERY events a notch, four in then four out.
+         */
+        void input(int event) {
+            long start = System.nanoTime();
+            inputEvents++;
+            double rotation = event % WHEEL_EVERY == 0 ? (event / WHEEL_EVERY % 8 < 4 ? -1 : 1) : 0;
+            if (scheduled) {
+                scheduler.drag(-2, 0);
+                if (rotation != 0) {
+                    scheduler.wheel(rotation);
+                }
+            } else {
+                // What MapApp did for each mouseDragged and wheel event
+                int zoom = map.getZoom();
+                Point2D centerPixel = map.getTileFactory().geoToPixel(map.getCenterPosition(), zoom);
+                map.setCenterPosition(map.getTileFactory().pixelToGeo(
+                        new Point2D.Double(centerPixel.getX() + 2, centerPixel.getY()), zoom));
+                if (rotation != 0) {
+                    map.setZoom(Math.max(1, Math.min(15, zoom + (int) rotation)));
+                }
+            }
+            busyNanos += System.nanoTime() - start;
+        }
+
+        void mapChanged() {
+            updates++;
+            if (!paintQueued) {
+                paintQueued = true;
+                SwingUtilities.invokeLater(this::paint);
+            }
+        }
+
+        void paint() {
+            paintQueued = false;
+            long start = System.nanoTime();
+            Graphics2D g = screen.createGraphics();
+            map.paint(g);
+            g.dispose();
+            long nanos = System.nanoTime() - start;
+            frames.record(nanos);
+            busyNanos += nanos;
+        }
+    }
+
+    private static byte[] blankTile() throws Exception {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,184 @@
+package za.ac.cput.mapapp;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test for NearbyGroupsServer: many concurrent clients, each sending its
+ * next nearby-groups query as soon as the last one is answered.
+ *
+ * Clients are asynchronous HttpClient requests rather than threads, so a few
+ * thousand fit on one box. Each client count runs a warm-up and then a measured
+ * interval, reporting requests per second and latency percentiles.
+ *
+ * Without a URL an in-process server on a random port serves synthetic groups
+ * spread over roughly 5 km x 5 km around campus. A load test rather than a JMH
+ * benchmark, so it has its own main:
+ * java -cp benchmarks/target/benchmarks.jar za.ac.cput.mapapp.NearbyGroupsServerBenchmark [clients,...] [seconds] [groups] [url]
+ * @author abong
+ */
+public class NearbyGroupsServerBenchmark {
+
+    private static final int WARMUP_SECONDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int[] clientCounts = Arrays.stream((args.length > 0 ? args[0] : "500,2000,4000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        int groups = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+
+        NearbyGroupsServer server = null;
+        String baseUrl;
+        if (args.length > 3) {
+            baseUrl = args[3];
+        } else {
+            server = new NearbyGroupsServer(new InetSocketAddress("127.0.0.1", 0),
+                    NearbyGroupsIndex.of(syntheticGroups(groups), 0), null);
+            server.start(0);
+            baseUrl = "http://127.0.0.1:" + server.getPort();
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        for (int clients : clientCounts) {
+            run(client, baseUrl, clients, WARMUP_SECONDS, false);
+            run(client, baseUrl, clients, seconds, true).report(clients);
+        }
+
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static List<StudyLocation> syntheticGroups(int groups) {
+        Random random = new Random(42);
+        List<StudyLocation> locations = new ArrayList<>(groups);
+        for (int i = 0; i < groups; i++) {
+            double lat = BenchmarkData.CENTER_LAT + (random.nextDouble() - 0.5) * 0.045;
+            double lon = BenchmarkData.CENTER_LON + (random.nextDouble() - 0.5) * 0.054;
+            locations.add(new StudyLocation(i, "Group " + i, "Library", "Building " + (i % 50),
+                    lat, lon, 1 + random.nextInt(8)));
+        }
+        return locations;
+    }
+
+    /**
+     * Keep clients requests in flight for the given time.
+     */
+    private static Result run(HttpClient client, String baseUrl, int clients, int seconds,
+                              boolean measured) throws InterruptedException {
+        Result result = new Result(clients);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            send(client, baseUrl, result, i, deadline, done);
+        }
+        // Stragglers may still be waiting on a connection after the deadline
+        if (!done.await(seconds + 60L, TimeUnit.SECONDS)) {
+            System.err.println((done.getCount()) + " clients did not finish");
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        if (!measured) {
+            System.out.println("Warmed up " + clients + " clients");
+        }
+        return result;
+    }
+
+    /**
+     * One client's next request; the response callback sends the one after.
+     */
+    private static void send(HttpClient client, String baseUrl, Result result, int clientIndex,
+                             long deadline, CountDownLatch done) {
+        if (System.nanoTime() >= deadline) {
+            done.countDown();
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + randomQuery()))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, failure) -> {
+            if (failure != null || response.statusCode() != 200) {
+                if (result.errors.incrementAndGet() == 1) {
+                    System.err.println("First failed request: "
+                            + (failure != null ? failure : "HTTP " + response.statusCode()));
+                }
+            } else {
+                result.record(clientIndex, System.nanoTime() - sent);
+            }
+            send(client, baseUrl, result, clientIndex, deadline, done);
+        });
+    }
+
+    private static String randomQuery() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double lat = BenchmarkData.CENTER_LAT + (random.nextDouble() - 0.5) * 0.02;
+        double lon = BenchmarkData.CENTER_LON + (random.nextDouble() - 0.5) * 0.02;
+        String sort = random.nextBoolean() ? "distance" : "members,distance";
+        int radius = random.nextBoolean() ? 500 : 1000;
+        return "/groups/nearby?lat=" + lat + "&lon=" + lon + "&radius=" + radius + "&sort=" + sort + "&limit=20";
+    }
+
+    private static final class Result {
+        // One latency list per client; a client only records after its previous response
+        final long[][] timings;
+        final int[] counts;
+        final AtomicInteger errors = new AtomicInteger();
+        long elapsedNanos;
+
+        Result(int clients) {
+            timings = new long[clients][64];
+            counts = new int[clients];
+        }
+
+        void record(int client, long nanos) {
+            if (counts[client] == timings[client].length) {
+                timings[client] = Arrays.copyOf(timings[client], counts[client] * 2);
+            }
+            timings[client][counts[client]++] = nanos;
+        }
+
+        void report(int clients) {
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            long[] sorted = new long[total];
+            int offset = 0;
+            for (int i = 0; i < timings.length; i++) {
+                System.arraycopy(timings[i], 0, sorted, offset, counts[i]);
+                offset += counts[i];
+            }
+            Arrays.sort(sorted);
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            System.out.printf("%5d clients: %8.0f req/s  p50=%7.2f ms  p99=%7.2f ms  p99.9=%7.2f ms  max=%7.2f ms  errors=%d%n",
+                    clients, total / seconds, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), percentile(sorted, 1.0), errors.get());
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(sorted.length * p) - 1);
+            return sorted[Math.max(0, index)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.JXMapViewer;
+import org.jxmapviewer.viewer.DefaultTileFactory;
+import org.jxmapviewer.viewer.GeoPosition;
+import org.jxmapviewer.viewer.TileFactoryInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One frame of the waypoint overlay painted into an offscreen image the size of
+ * the map panel. "repaint" is a frame with nothing changed (cached projection),
+ * "repaintAfterViewChange" re-projects first, as after a zoom or a reload.
+ * Zoom 1 is the most detailed level (no clustering), 8 is the app's start zoom.
+ * @author abong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PainterBenchmark {
+
+    private static final int WIDTH = 830;
+    private static final int HEIGHT = 400;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"1", "4", "8"})
+    public int zoom;
+
+    private JXMapViewer map;
+    private StudyLocationWaypointPainter painter;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    @Setup
+    public void setUp() {
+        // Same tile factory layout as MapApp; no tiles are fetched, only its projection is used
+        TileFactoryInfo info = new TileFactoryInfo(1, 15, 17, 256, true, true,
+                "https://tile.openstreetmap.org", "x", "y", "z");
+        map = new JXMapViewer();
+        map.setTileFactory(new DefaultTileFactory(info));
+        map.setSize(WIDTH, HEIGHT);
+        map.setZoom(zoom);
+        GeoPosition center = new GeoPosition(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON);
+        map.setAddressLocation(center);
+
+        painter = new StudyLocationWaypointPainter();
+        WaypointStore store = new WaypointStore(center);
+        store.addListener(painter);
+        Set<StudyLocationWaypoint> initial = new HashSet<>();
+        initial.add(store.getUserWaypoint());
+        painter.setWaypoints(initial);
+
+        List<StudyLocation> locations = BenchmarkData.locations(size, 0.05, 42);
+        DistanceEngine.of(locations).applyDistances(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON);
+        store.sync(locations);
+
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        graphics = image.createGraphics();
+        // Prime the projection and sprite caches
+        painter.paint(graphics, map, WIDTH, HEIGHT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage repaint() {
+        painter.paint(graphics, map, WIDTH, HEIGHT);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage repaintAfterViewChange() {
+        painter.invalidateProjection();
+        painter.paint(graphics, map, WIDTH, HEIGHT);
+        return image;
+    }
+}
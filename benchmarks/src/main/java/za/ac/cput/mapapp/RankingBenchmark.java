@@ -0,0 +1,89 @@
+package za.ac.cput.mapapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One group changes (a member joins or leaves) and the top 20 recommendations
+ * are read again. "incremental" re-scores the changed group in the
+ * RecommendationRanker; "rescore" builds a new ranker over every group, which is
+ * what re-scoring everything on each change costs. "move" is the user moving:
+ * every group's proximity is re-scored once.
+ * @author abong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankingBenchmark {
+
+    private static final int TOP = 20;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private List<StudyLocation> locations;
+    private RecommendationRanker ranker;
+    private Random random;
+    private boolean moved;
+
+    @Setup
+    public void setUp() {
+        locations = BenchmarkData.locations(size, 0.05, 42);
+        random = new Random(7);
+        LocalDate today = LocalDate.now();
+        for (StudyLocation location : locations) {
+            location.setRecentActivity(random.nextInt(30));
+            location.setCreatedDate(today.minusDays(random.nextInt(60)));
+        }
+        ranker = new RecommendationRanker(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON);
+        for (StudyLocation location : locations) {
+            ranker.update(location);
+        }
+    }
+
+    private StudyLocation changeOne() {
+        StudyLocation location = locations.get(random.nextInt(locations.size()));
+        location.setMemberCount(random.nextInt(RecommendationRanker.MAX_GROUP_SIZE + 1));
+        return location;
+    }
+
+    @Benchmark
+    public List<StudyLocation> incremental() {
+        ranker.update(changeOne());
+        return ranker.top(TOP);
+    }
+
+    @Benchmark
+    public List<StudyLocation> rescore() {
+        changeOne();
+        RecommendationRanker fresh = new RecommendationRanker(BenchmarkData.CENTER_LAT, BenchmarkData.CENTER_LON);
+        for (StudyLocation location : locations) {
+            fresh.update(location);
+        }
+        return fresh.top(TOP);
+    }
+
+    @Benchmark
+    public List<StudyLocation> move() {
+        moved = !moved;
+        ranker.setOrigin(BenchmarkData.CENTER_LAT + (moved ? 0.001 : 0), BenchmarkData.CENTER_LON);
+        return ranker.top(TOP);
+    }
+}
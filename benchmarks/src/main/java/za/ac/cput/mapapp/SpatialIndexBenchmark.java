@@ -0,0 +1,97 @@
+package za.ac.cput.mapapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SpatialIndex radius and k-nearest queries against the old approach of
+ * recomputing every distance, then copying, filtering and sorting the whole
+ * list. Each call queries the next of a fixed set of points near campus.
+ * @author abong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"200000"})
+    public int size;
+
+    @Param({"100", "500", "1000"})
+    public double radius;
+
+    private List<StudyLocation> locations;
+    private SpatialIndex index;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        locations = BenchmarkData.locations(size, 0.05, 42);
+        index = SpatialIndex.of(locations);
+        Random random = new Random(7);
+        latitudes = new double[POINTS];
+        longitudes = new double[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            latitudes[i] = BenchmarkData.CENTER_LAT + (random.nextDouble() - 0.5) * 0.02;
+            longitudes[i] = BenchmarkData.CENTER_LON + (random.nextDouble() - 0.5) * 0.02;
+        }
+    }
+
+    @Benchmark
+    public List<StudyLocation> indexWithin() {
+        int point = nextPoint();
+        List<StudyLocation> result = index.findWithin(latitudes[point], longitudes[point], radius);
+        setDistances(result, point);
+        result.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        return result;
+    }
+
+    @Benchmark
+    public List<StudyLocation> linearWithin() {
+        int point = nextPoint();
+        setDistances(locations, point);
+        List<StudyLocation> filtered = new ArrayList<>(locations);
+        filtered.removeIf(location -> location.getDistance() > radius);
+        filtered.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        return filtered;
+    }
+
+    @Benchmark
+    public List<StudyLocation> indexNearest20() {
+        int point = nextPoint();
+        return index.findNearest(latitudes[point], longitudes[point], 20);
+    }
+
+    private int nextPoint() {
+        next = (next + 1) % POINTS;
+        return next;
+    }
+
+    private void setDistances(List<StudyLocation> list, int point) {
+        for (StudyLocation location : list) {
+            location.setDistance(DistanceEngine.haversineMeters(latitudes[point], longitudes[point],
+                    location.getLatitude(), location.getLongitude()));
+        }
+    }
+}
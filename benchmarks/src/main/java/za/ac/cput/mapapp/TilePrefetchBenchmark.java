@@ -0,0 +1,214 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.cache.LocalCache;
+import org.jxmapviewer.viewer.AbstractTileFactory;
+import org.jxmapviewer.viewer.DefaultTileFactory;
+import org.jxmapviewer.viewer.GeoPosition;
+import org.jxmapviewer.viewer.Tile;
+import org.jxmapviewer.viewer.TileFactoryInfo;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Replays a fast drag and a burst of wheel zooms against the stock tile factory
+ * and against PrefetchTileFactory with and without prefetching.
+ *
+ * Tiles come from a stub source that answers every request after a fixed
+ * latency, so no network is needed. Each frame moves the view, asks the
+ * factory for the visible tiles as the map's painter does, and waits one frame.
+ * Reported per run: the share of tiles already loaded when they came into view,
+ * the share of frames with a grey (unloaded) tile, tiles downloaded, and how
+ * many of those were never on screen. Not a JMH benchmark; it has its own main:
+ * java -cp benchmarks/target/benchmarks.jar za.ac.cput.mapapp.TilePrefetchBenchmark [latencyMs] [panPixelsPerFrame] [loadThreads]
+ * @author abong
+ */
+public class TilePrefetchBenchmark {
+
+    private static final int VIEW_WIDTH = 830;
+    private static final int VIEW_HEIGHT = 500;
+    private static final int START_ZOOM = 8;
+    private static final long FRAME_MILLIS = 16;
+
+    public static void main(String[] args) throws Exception {
+        long latencyMillis = args.length > 0 ? Long.parseLong(args[0]) : 150;
+        int panPixels = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+        int loadThreads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        byte[] png = blankTile();
+        System.out.println("Tile latency " + latencyMillis + " ms, pan " + panPixels + " px/frame, "
+                + loadThreads + " load threads");
+
+        run("stock factory", null, loadThreads, latencyMillis, panPixels, png);
+        run("visible first", 0, loadThreads, latencyMillis, panPixels, png);
+        run("prefetch", AppConfig.getTilePrefetchRing(), loadThreads, latencyMillis, panPixels, png);
+    }
+
+    /**
+     * @param ringTiles null for the stock DefaultTileFactory
+     */
+    private static void run(String name, Integer ringTiles, int loadThreads, long latencyMillis,
+                            int panPixels, byte[] png) throws Exception {
+        TileFactoryInfo info = new TileFactoryInfo(1, 15, 17, 256, true, true,
+                "http://tiles.invalid", "x", "y", "z") {
+            @Override
+            public String getTileUrl(int x, int y, int zoom) {
+                return String.format("http://tiles.invalid/%d/%d/%d.png", 17 - zoom, x, y);
+            }
+        };
+        AbstractTileFactory factory;
+        if (ringTiles == null) {
+            factory = new DefaultTileFactory(info);
+            factory.setThreadPoolSize(loadThreads);
+        } else {
+            factory = new PrefetchTileFactory(info, loadThreads, ringTiles);
+        }
+        Set<String> downloaded = ConcurrentHashMap.newKeySet();
+        factory.setLocalCache(new LocalCache() {
+            @Override
+            public InputStream get(URL url) throws IOException {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                downloaded.add(url.toString());
+                return new ByteArrayInputStream(png);
+            }
+
+            @Override
+            public void put(URL url, InputStream data) {
+            }
+        });
+
+        View view = new View(factory, info);
+        // Drag east, zoom in four notches and back out, then drag north-east
+        for (int frame = 0; frame < 120; frame++) {
+            view.frame(panPixels, 0, 0);
+        }
+        for (int step = 0; step < 4; step++) {
+            view.frame(0, 0, -1);
+            view.frame(0, 0, 0);
+            view.frame(0, 0, 0);
+        }
+        for (int step = 0; step < 4; step++) {
+            view.frame(0, 0, 1);
+            view.frame(0, 0, 0);
+            view.frame(0, 0, 0);
+        }
+        for (int frame = 0; frame < 120; frame++) {
+            view.frame(panPixels, -panPixels, 0);
+        }
+
+        int wasted = 0;
+        for (String url : downloaded) {
+            if (!view.shownUrls.contains(url)) {
+                wasted++;
+            }
+        }
+        System.out.printf("%-14s present when shown=%5.1f%%  grey frames=%5.1f%%  downloaded=%4d  never shown=%4d%n",
+                name, view.present * 100.0 / Math.max(1, view.shown), view.greyFrames * 100.0 / view.frames,
+                downloaded.size(), wasted);
+        if (factory instanceof PrefetchTileFactory) {
+            System.out.println("               " + ((PrefetchTileFactory) factory).getPrefetchStats());
+        }
+        factory.dispose();
+    }
+
+    /**
+     * A map view moved frame by frame, painting through the factory like JXMapViewer.
+     */
+    private static final class View {
+        final AbstractTileFactory factory;
+        final TileFactoryInfo info;
+        final Set<String> shownUrls = new HashSet<>();
+        Set<String> visible = new HashSet<>();
+        int zoom = START_ZOOM;
+        double centerX;
+        double centerY;
+        int frames;
+        int greyFrames;
+        int shown;
+        int present;
+
+        View(AbstractTileFactory factory, TileFactoryInfo info) {
+            this.factory = factory;
+            this.info = info;
+            // Campus
+            Point2D center = factory.geoToPixel(
+                    new GeoPosition(-33.93080102488844, 18.430230425585137), zoom);
+            centerX = center.getX();
+            centerY = center.getY();
+        }
+
+        /**
+         * Move by (dx, dy) pixels and zoomDelta levels, paint, and wait a frame.
+         */
+        void frame(int dx, int dy, int zoomDelta) throws Exception {
+            SwingUtilities.invokeAndWait(() -> {
+                if (zoomDelta != 0) {
+                    int newZoom = zoom + zoomDelta;
+                    double scale = Math.pow(2, zoom - newZoom);
+                    centerX *= scale;
+                    centerY *= scale;
+                    zoom = newZoom;
+                }
+                centerX += dx;
+                centerY += dy;
+                Rectangle viewport = new Rectangle((int) centerX - VIEW_WIDTH / 2, (int) centerY - VIEW_HEIGHT / 2,
+                        VIEW_WIDTH, VIEW_HEIGHT);
+                if (factory instanceof PrefetchTileFactory) {
+                    ((PrefetchTileFactory) factory).viewportChanged(zoom, viewport);
+                }
+                paint(viewport);
+            });
+            Thread.sleep(FRAME_MILLIS);
+        }
+
+        private void paint(Rectangle viewport) {
+            int size = info.getTileSize(zoom);
+            Set<String> nowVisible = new HashSet<>();
+            boolean grey = false;
+            for (int y = Math.floorDiv(viewport.y, size); y <= Math.floorDiv(viewport.y + viewport.height - 1, size); y++) {
+                for (int x = Math.floorDiv(viewport.x, size); x <= Math.floorDiv(viewport.x + viewport.width - 1, size); x++) {
+                    Tile tile = factory.getTile(x, y, zoom);
+                    String key = zoom + "/" + x + "/" + y;
+                    nowVisible.add(key);
+                    if (!visible.contains(key)) {
+                        shown++;
+                        shownUrls.add(tile.getURL());
+                        if (tile.isLoaded()) {
+                            present++;
+                        }
+                    }
+                    grey |= !tile.isLoaded();
+                }
+            }
+            visible = nowVisible;
+            frames++;
+            if (grey) {
+                greyFrames++;
+            }
+        }
+    }
+
+    private static byte[] blankTile() throws Exception {
+        BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
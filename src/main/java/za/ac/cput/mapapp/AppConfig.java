@@ -0,0 +1,255 @@
+package za.ac.cput.mapapp;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Application configuration.
+ * Values are read from system properties first (-Dlearnhub.db.url=...),
+ * then from an optional learnhub.properties file in the working directory,
+ * and finally fall back to the built-in defaults.
+ * @author abong
+ */
+public final class AppConfig {
+
+    private static final String CONFIG_FILE = "learnhub.properties";
+
+    private static final Properties FILE_PROPERTIES = loadFileProperties();
+
+    private AppConfig() {
+    }
+
+    private static Properties loadFileProperties() {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(CONFIG_FILE)) {
+            properties.load(in);
+            System.out.println("Loaded configuration from " + CONFIG_FILE);
+        } catch (IOException e) {
+            // No config file - defaults and system properties are used
+        }
+        return properties;
+    }
+
+    public static String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = FILE_PROPERTIES.getProperty(key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(get(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid value for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(get(key, String.valueOf(defaultValue)));
+    }
+
+    // ---------------- Startup ----------------
+
+    public static boolean isNetworkDiagnosticsEnabled() {
+        return getBoolean("learnhub.diagnostics", true);
+    }
+
+    /**
+     * Radius (meters) of the study locations loaded around the user; README business rule max is 10 km.
+     */
+    public static double getSearchRadiusMeters() {
+        return getInt("learnhub.search.radiusMeters", 10000);
+    }
+
+    /**
+     * Student number of the student using this machine; empty when not configured.
+     */
+    public static String getStudentNumber() {
+        return get("learnhub.student.number", "");
+    }
+
+    // ---------------- Database ----------------
+
+    /**
+     * Database mode: "client" (Derby network server on localhost:1527) or
+     * "embedded" (in-process Derby engine with the database under getDbDirectory).
+     */
+    public static String getDbMode() {
+        return get("learnhub.db.mode", "client");
+    }
+
+    public static boolean isEmbeddedDb() {
+        return "embedded".equalsIgnoreCase(getDbMode());
+    }
+
+    /**
+     * Directory holding the embedded database (and derby.log).
+     */
+    public static Path getDbDirectory() {
+        return Paths.get(get("learnhub.db.dir",
+                Paths.get(System.getProperty("user.home"), ".learnhub", "db").toString()));
+    }
+
+    /**
+     * JDBC URL; learnhub.db.url overrides the default for the configured mode.
+     */
+    public static String getDbUrl() {
+        String defaultUrl = isEmbeddedDb()
+                ? EmbeddedDatabase.url(getDbDirectory())
+                : "jdbc:derby://localhost:1527/LocationDB;user=app;password=app";
+        return get("learnhub.db.url", defaultUrl);
+    }
+
+    public static String getDbDriver() {
+        return get("learnhub.db.driver",
+                isEmbeddedDb() ? EmbeddedDatabase.DRIVER : "org.apache.derby.jdbc.ClientDriver");
+    }
+
+    public static int getDbPoolSize() {
+        return getInt("learnhub.db.pool.size", 4);
+    }
+
+    public static long getDbBorrowTimeoutMillis() {
+        return getLong("learnhub.db.pool.borrowTimeoutMillis", 5000);
+    }
+
+    public static int getDbStatementCacheSize() {
+        return getInt("learnhub.db.pool.statementCacheSize", 32);
+    }
+
+    /**
+     * How long (ms) an AsyncStudyLocationDao call may take before its future fails.
+     */
+    public static long getDbCallTimeoutMillis() {
+        return getLong("learnhub.db.callTimeoutMillis", 15000);
+    }
+
+    /**
+     * How often (ms) to poll study_locations for changes; 0 turns polling off.
+     */
+    public static long getSyncIntervalMillis() {
+        return getLong("learnhub.sync.intervalMillis", 5000);
+    }
+
+    /**
+     * How long (hours) study_location_changes entries are kept; 0 keeps them forever.
+     */
+    public static long getSyncRetentionHours() {
+        return getLong("learnhub.sync.retentionHours", 168);
+    }
+
+    /**
+     * How long (ms) the user location writer waits for further moves before saving.
+     */
+    public static long getUserLocationCoalesceMillis() {
+        return getLong("learnhub.userLocation.coalesceMillis", 250);
+    }
+
+    // ---------------- Nearby groups server ----------------
+
+    /**
+     * Address NearbyGroupsServer listens on; 0.0.0.0 serves the whole lab.
+     */
+    public static String getServerHost() {
+        return get("learnhub.server.host", "localhost");
+    }
+
+    public static int getServerPort() {
+        return getInt("learnhub.server.port", 8085);
+    }
+
+    // ---------------- Map tiles ----------------
+
+    public static Path getTileCacheDir() {
+        return Paths.get(get("learnhub.tiles.cacheDir",
+                Paths.get(System.getProperty("user.home"), ".learnhub", "tiles").toString()));
+    }
+
+    public static long getTileCacheMaxBytes() {
+        return getLong("learnhub.tiles.cacheMaxBytes", 256L * 1024 * 1024);
+    }
+
+    /**
+     * Tiles downloading at once.
+     */
+    public static int getTileLoadThreads() {
+        return Math.max(1, getInt("learnhub.tiles.loadThreads", 4));
+    }
+
+    /**
+     * Widest ring of tiles (in tiles) loaded ahead of a pan; 0 loads only what is on screen.
+     */
+    public static int getTilePrefetchRing() {
+        return Math.max(0, getInt("learnhub.tiles.prefetchRing", 2));
+    }
+
+    /**
+     * User-Agent sent with tile requests; the OpenStreetMap tile policy asks apps to identify themselves.
+     */
+    public static String getTileUserAgent() {
+        return get("learnhub.tiles.userAgent", "LearnHub/1.0 Java");
+    }
+
+    /**
+     * Tile requests in flight at once.
+     */
+    public static int getTileHttpMaxConcurrent() {
+        return Math.max(1, getInt("learnhub.tiles.http.maxConcurrent", 2));
+    }
+
+    /**
+     * Tile requests started per second; 0 for no limit.
+     */
+    public static int getTileHttpRequestsPerSecond() {
+        return Math.max(0, getInt("learnhub.tiles.http.requestsPerSecond", 10));
+    }
+
+    public static long getTileHttpTimeoutMillis() {
+        return getLong("learnhub.tiles.http.timeoutMillis", 10_000);
+    }
+
+    /**
+     * Tile source: "online" (OpenStreetMap with disk cache) or "archive"
+     * (packed offline archive first, online for tiles it does not have).
+     */
+    public static String getTileSource() {
+        return get("learnhub.tiles.source", "online");
+    }
+
+    public static Path getTileArchive() {
+        return Paths.get(get("learnhub.tiles.archive",
+                Paths.get(System.getProperty("user.home"), ".learnhub", "campus-tiles.lhta").toString()));
+    }
+
+    // ---------------- Map interaction ----------------
+
+    /**
+     * Drag and wheel input is applied at most once per this many milliseconds.
+     */
+    public static int getMapFrameMillis() {
+        return Math.max(1, getInt("learnhub.map.frameMillis", 16));
+    }
+
+    /**
+     * How long the map must be still before it is painted at full quality again.
+     */
+    public static int getMapIdleMillis() {
+        return Math.max(0, getInt("learnhub.map.idleMillis", 150));
+    }
+}
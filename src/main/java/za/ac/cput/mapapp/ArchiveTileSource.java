@@ -0,0 +1,64 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.cache.LocalCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tile source that serves tiles from a PackedTileArchive first.
+ * Tiles the archive does not have are looked up in the fallback cache, and if
+ * that misses too the tile factory downloads them from the online source
+ * (downloads are stored in the fallback cache, never in the read-only archive).
+ * @author abong
+ */
+public class ArchiveTileSource implements LocalCache {
+
+    private final PackedTileArchive archive;
+    private final LocalCache fallback;
+
+    private final AtomicLong archiveHits = new AtomicLong();
+    private final AtomicLong archiveMisses = new AtomicLong();
+
+    public ArchiveTileSource(PackedTileArchive archive, LocalCache fallback) {
+        this.archive = archive;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public InputStream get(URL url) throws IOException {
+        TileKey key = TileKey.fromUrl(url);
+        if (key != null) {
+            InputStream tile = archive.openTile(key);
+            if (tile != null) {
+                archiveHits.incrementAndGet();
+                return tile;
+            }
+        }
+        archiveMisses.incrementAndGet();
+        return fallback != null ? fallback.get(url) : null;
+    }
+
+    @Override
+    public void put(URL url, InputStream data) throws IOException {
+        if (fallback != null) {
+            fallback.put(url, data);
+        }
+    }
+
+    public long getArchiveHits() {
+        return archiveHits.get();
+    }
+
+    public long getArchiveMisses() {
+        return archiveMisses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ArchiveTileSource{archive=%s, tiles=%d, hits=%d, misses=%d}",
+                archive.getFile(), archive.getTileCount(), archiveHits.get(), archiveMisses.get());
+    }
+}
@@ -0,0 +1,222 @@
+package za.ac.cput.mapapp;
+
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking facade over StudyLocationDBDemo: every operation returns a
+ * CompletableFuture and runs on a bounded executor.
+ *
+ * The executor has one thread per pooled connection, so queued calls wait in
+ * its queue rather than in the pool's borrow timeout, and a full queue fails
+ * the call straight away instead of piling up threads. Each call fails with a
+ * TimeoutException after its timeout. Cancelling a call's future (or timing
+ * out) before it starts removes it from the queue; a query already running
+ * finishes, but its result is dropped.
+ *
+ * Callbacks that touch Swing go through EDT or onEdt(), e.g.
+ * {@code dao.loadCurrentStudent().thenAcceptAsync(this::showStudent, AsyncStudyLocationDao.EDT)}.
+ * @author abong
+ */
+public class AsyncStudyLocationDao {
+
+    /**
+     * Runs callbacks on the Swing event dispatch thread.
+     */
+    public static final Executor EDT = SwingUtilities::invokeLater;
+
+    // Queued calls allowed per thread before new calls are rejected
+    private static final int QUEUE_PER_THREAD = 32;
+
+    private final StudyLocationDBDemo dao;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+
+    /**
+     * Facade over the DAO with one thread per connection in its pool and the configured timeout.
+     */
+    public AsyncStudyLocationDao(StudyLocationDBDemo dao) {
+        this(dao, dao.getPoolMetrics().getMaxSize(), AppConfig.getDbCallTimeoutMillis());
+    }
+
+    /**
+     * @param threads calls run at once; more than the pool's connections only adds borrow waits
+     * @param timeoutMillis default time a call may take before its future fails
+     */
+    public AsyncStudyLocationDao(StudyLocationDBDemo dao, int threads, long timeoutMillis) {
+        this.dao = dao;
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD), runnable -> {
+                    Thread thread = new Thread(runnable, "db-async-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // ---------------- Calls ----------------
+
+    /**
+     * Run a blocking task on the database executor with the default timeout.
+     * For composite work; the single operations below are built on it.
+     */
+    public <T> CompletableFuture<T> submit(String operation, Callable<T> task) {
+        return submit(operation, task, timeoutMillis);
+    }
+
+    /**
+     * Run a blocking task on the database executor.
+     * @return a future that fails with TimeoutException after timeoutMillis, or
+     *         RejectedExecutionException if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(String operation, Callable<T> task, long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> queued;
+        try {
+            queued = executor.submit(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new RejectedExecutionException(
+                    operation + " rejected: " + executor.getQueue().size() + " database calls queued", e));
+            return result;
+        }
+
+        result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            if (error != null) {
+                // Drops the task if it has not started; JDBC calls are not interrupted
+                queued.cancel(false);
+                if (unwrap(error) instanceof TimeoutException) {
+                    System.err.println(operation + " timed out after " + timeoutMillis + " ms");
+                }
+            }
+        });
+        return result;
+    }
+
+    // ---------------- Study locations ----------------
+
+    public CompletableFuture<List<StudyLocation>> loadStudyLocations() {
+        return submit("Loading study locations", dao::loadStudyLocations);
+    }
+
+    public CompletableFuture<List<StudyLocation>> loadStudyLocationsWithDistance(double latitude, double longitude) {
+        return submit("Loading study locations", () -> dao.loadStudyLocationsWithDistance(latitude, longitude));
+    }
+
+    public CompletableFuture<List<StudyLocation>> loadStudyLocationsWithin(double latitude, double longitude,
+                                                                          double radiusMeters) {
+        return submit("Loading nearby study locations",
+                () -> dao.loadStudyLocationsWithin(latitude, longitude, radiusMeters));
+    }
+
+    // ---------------- Students ----------------
+
+    public CompletableFuture<Student> loadStudentByNumber(String studentNumber) {
+        return submit("Loading student " + studentNumber, () -> dao.loadStudentByNumber(studentNumber));
+    }
+
+    public CompletableFuture<Student> loadCurrentStudent() {
+        return submit("Loading current student", dao::loadCurrentStudent);
+    }
+
+    /**
+     * StudentSession.resolve off the calling thread.
+     */
+    public CompletableFuture<StudentSession> resolveStudentSession() {
+        return submit("Resolving student", () -> StudentSession.resolve(dao));
+    }
+
+    // ---------------- User location ----------------
+
+    public CompletableFuture<double[]> loadUserLocation(int studentId) {
+        return submit("Loading location of student " + studentId, () -> dao.loadUserLocation(studentId));
+    }
+
+    public CompletableFuture<double[]> loadUserLocationByStudentNumber(String studentNumber) {
+        return submit("Loading location of student " + studentNumber,
+                () -> dao.loadUserLocationByStudentNumber(studentNumber));
+    }
+
+    public CompletableFuture<Boolean> saveUserLocation(int studentId, double latitude, double longitude) {
+        return submit("Saving location of student " + studentId,
+                () -> dao.saveUserLocation(studentId, latitude, longitude));
+    }
+
+    /**
+     * @return a future that fails with the SQLException if the location was not stored
+     */
+    public CompletableFuture<Void> upsertUserLocation(int studentId, double latitude, double longitude) {
+        return submit("Saving location of student " + studentId, () -> {
+            dao.upsertUserLocation(studentId, latitude, longitude);
+            return null;
+        });
+    }
+
+    // ---------------- Connection ----------------
+
+    public CompletableFuture<Boolean> testConnection() {
+        return submit("Testing database connection", dao::testConnection);
+    }
+
+    /**
+     * Stop the executor; queued calls are dropped and their futures never complete
+     * unless they time out.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // ---------------- EDT hand-off ----------------
+
+    /**
+     * Deliver a call's outcome on the EDT: the value to onSuccess, or the
+     * underlying failure (not the CompletionException wrapper) to onFailure.
+     * Cancelled calls are delivered to neither.
+     */
+    public static <T> CompletableFuture<Void> onEdt(CompletableFuture<T> future, Consumer<? super T> onSuccess,
+                                                    Consumer<Throwable> onFailure) {
+        return future.handleAsync((value, error) -> {
+            if (future.isCancelled()) {
+                return null;
+            }
+            if (error != null) {
+                onFailure.accept(unwrap(error));
+            } else {
+                onSuccess.accept(value);
+            }
+            return null;
+        }, EDT);
+    }
+
+    /**
+     * The cause behind CompletionException wrappers.
+     */
+    public static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,228 @@
+package za.ac.cput.mapapp;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded JDBC connection pool shared by all DAO methods.
+ * Connections are validated before reuse when they have been idle for a while,
+ * and each connection keeps its own prepared statement cache.
+ * @author abong
+ */
+public class ConnectionPool {
+
+    /**
+     * One-time setup run on the first physical connection the pool opens
+     * (for example creating the schema of a fresh embedded database).
+     */
+    public interface Initializer {
+        void initialize(Connection con) throws SQLException;
+    }
+
+    private static final long VALIDATION_INTERVAL_MILLIS = 30_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private static ConnectionPool shared;
+
+    private final String url;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private volatile boolean closed;
+    private volatile Initializer initializer;
+
+    // Metrics
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private final LongAdder connectionsCreated = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    public ConnectionPool(String driverClass, String url, int maxSize,
+                          long borrowTimeoutMillis, int statementCacheSize) {
+        this.url = url;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        // Load the JDBC driver once for the whole pool
+        try {
+            Class.forName(driverClass);
+        } catch (ClassNotFoundException e) {
+            System.err.println("JDBC driver not found: " + driverClass);
+        }
+    }
+
+    /**
+     * Pool shared by the application, configured from AppConfig.
+     */
+    public static synchronized ConnectionPool getShared() {
+        if (shared == null) {
+            if (AppConfig.isEmbeddedDb()) {
+                EmbeddedDatabase.prepareDirectory(AppConfig.getDbDirectory());
+            }
+            shared = new ConnectionPool(
+                    AppConfig.getDbDriver(),
+                    AppConfig.getDbUrl(),
+                    AppConfig.getDbPoolSize(),
+                    AppConfig.getDbBorrowTimeoutMillis(),
+                    AppConfig.getDbStatementCacheSize());
+            // Schema migrations run once per process, on the first connection
+            if (AppConfig.isEmbeddedDb()) {
+                shared.setInitializer(EmbeddedDatabase::createSchema);
+            } else {
+                shared.setInitializer(SchemaManager::migrateIfPossible);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Set the setup to run on the next physical connection. It runs once; if it
+     * fails, the connection is discarded and the next borrow tries again.
+     */
+    public void setInitializer(Initializer initializer) {
+        this.initializer = initializer;
+    }
+
+    /**
+     * Borrow a connection. Closing the returned connection gives it back to the pool.
+     * @return a validated connection
+     * @throws SQLException if no connection becomes available in time or the database is unreachable
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed", "08003");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting " + borrowTimeoutMillis + " ms for a database connection", "08001");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", "08001", e);
+        }
+        recordBorrow(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = new PooledConnection(this, openPhysical(), statementCacheSize);
+                connectionsCreated.increment();
+            }
+            active.incrementAndGet();
+            return pooled.newLogicalConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection con = DriverManager.getConnection(url);
+        if (initializer != null) {
+            try {
+                runInitializer(con);
+            } catch (SQLException | RuntimeException e) {
+                try { con.close(); } catch (SQLException ignored) {}
+                throw e;
+            }
+        }
+        return con;
+    }
+
+    private synchronized void runInitializer(Connection con) throws SQLException {
+        // Another borrower may have finished it while this one waited
+        Initializer pending = initializer;
+        if (pending != null) {
+            pending.initialize(con);
+            initializer = null;
+        }
+    }
+
+    /**
+     * Take an idle connection, validating it if it has been idle for a while.
+     * Most recently used connections are reused first so the rest can age out.
+     */
+    private PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            boolean stale = System.currentTimeMillis() - pooled.getLastReleasedAt() > VALIDATION_INTERVAL_MILLIS;
+            if (!stale || pooled.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return pooled;
+            }
+            validationFailures.increment();
+            pooled.closePhysical();
+        }
+        return null;
+    }
+
+    void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        if (closed || pooled.isBroken()) {
+            pooled.closePhysical();
+        } else {
+            idle.offerFirst(pooled);
+        }
+        permits.release();
+    }
+
+    private void recordBorrow(long waitNanos) {
+        borrowCount.increment();
+        borrowWaitNanos.add(waitNanos);
+        maxBorrowWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    void recordStatementCacheHit() {
+        statementCacheHits.increment();
+    }
+
+    void recordStatementCacheMiss() {
+        statementCacheMisses.increment();
+    }
+
+    /**
+     * Snapshot of the pool counters.
+     */
+    public PoolMetrics getMetrics() {
+        return new PoolMetrics(
+                maxSize,
+                active.get(),
+                idle.size(),
+                borrowCount.sum(),
+                borrowWaitNanos.sum(),
+                maxBorrowWaitNanos.get(),
+                connectionsCreated.sum(),
+                validationFailures.sum(),
+                statementCacheHits.sum(),
+                statementCacheMisses.sum());
+    }
+
+    /**
+     * Close all idle connections. Borrowed connections are closed when they are returned.
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            pooled.closePhysical();
+        }
+    }
+}
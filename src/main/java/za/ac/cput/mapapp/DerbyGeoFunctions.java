@@ -0,0 +1,22 @@
+package za.ac.cput.mapapp;
+
+/**
+ * Java stored functions for Derby.
+ * Registered by StudyLocationDBDemo as HAVERSINE_METERS so distance refinement and
+ * ordering can run inside the database. For the network server this class and
+ * DistanceEngine, which does the maths, must be on the server's classpath (e.g.
+ * add the application jar to CLASSPATH when starting startNetworkServer).
+ * @author abong
+ */
+public final class DerbyGeoFunctions {
+
+    private DerbyGeoFunctions() {
+    }
+
+    /**
+     * Great-circle distance between two points in meters (Haversine formula).
+     */
+    public static double haversineMeters(double lat1, double lon1, double lat2, double lon2) {
+        return DistanceEngine.haversineMeters(lat1, lon1, lat2, lon2);
+    }
+}
@@ -0,0 +1,438 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.cache.LocalCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Persistent tile cache plugged under the map's DefaultTileFactory.
+ * Tiles are stored as z/x/y.png files below the cache directory, total size is
+ * capped in bytes and the least recently used tiles are evicted first. Files are
+ * written to a temp file and atomically moved into place, so readers never see
+ * a partial tile and can read without holding any lock.
+ *
+ * Tiles downloaded by HttpTileLoader also keep their HTTP validators (ETag,
+ * Last-Modified) and expiry time in a z/x/y.png.meta file beside the tile, so
+ * a stale tile can be revalidated instead of downloaded again. The metadata
+ * is not counted against the size cap and is deleted with its tile.
+ * @author abong
+ */
+public class DiskTileCache implements LocalCache {
+
+    // Only refresh a file's timestamp on access if it is older than this
+    private static final long TOUCH_INTERVAL_MILLIS = 10 * 60 * 1000;
+    // Suffix of the HTTP metadata file kept beside a tile
+    private static final String META_SUFFIX = ".meta";
+    // Stripes guarding a key's files while they are written and indexed, or deleted
+    private static final int KEY_LOCKS = 64;
+
+    private final Path root;
+    private final long maxBytes;
+
+    // Access-ordered index of cached tiles: key -> size in bytes (guarded by "this")
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(1024, 0.75f, true);
+    private long totalBytes;
+    private volatile boolean indexLoaded;
+    // Taken before "this", never while holding another key lock
+    private final Object[] keyLocks = new Object[KEY_LOCKS];
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DiskTileCache(Path root, long maxBytes) {
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new Object();
+        }
+        this.root = root;
+        this.maxBytes = maxBytes;
+
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            System.err.println("Could not create tile cache directory " + root + ": " + e.getMessage());
+        }
+
+        // Scan existing tiles off the EDT; until then lookups go straight to disk
+        Thread loader = new Thread(this::loadIndex, "tile-cache-index");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Cache configured from AppConfig.
+     */
+    public static DiskTileCache fromConfig() {
+        return new DiskTileCache(AppConfig.getTileCacheDir(), AppConfig.getTileCacheMaxBytes());
+    }
+
+    /**
+     * A cached tile with the HTTP metadata it was stored with.
+     */
+    public static final class Entry {
+        private final byte[] data;
+        private final String etag;
+        private final String lastModified;
+        private final long expiresAt;
+
+        Entry(byte[] data, String etag, String lastModified, long expiresAt) {
+            this.data = data;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * @return the ETag header of the response the tile came from, or null
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the Last-Modified header of the response the tile came from, or null
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return epoch millis after which the tile should be revalidated; 0 if unknown
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public boolean isFresh(long nowMillis) {
+            return nowMillis < expiresAt;
+        }
+    }
+
+    // ---------------- LocalCache ----------------
+
+    @Override
+    public InputStream get(URL url) throws IOException {
+        byte[] data = read(keyFor(url));
+        return data != null ? new ByteArrayInputStream(data) : null;
+    }
+
+    @Override
+    public void put(URL url, InputStream data) throws IOException {
+        put(url, readAll(data), null, null, 0);
+    }
+
+    // ---------------- Entries with HTTP metadata ----------------
+
+    /**
+     * The tile and its metadata; tiles stored without metadata have no
+     * validators and an unknown (already passed) expiry.
+     * @return the entry, or null if the tile is not cached
+     */
+    public Entry getEntry(URL url) throws IOException {
+        String key = keyFor(url);
+        byte[] data = read(key);
+        if (data == null) {
+            return null;
+        }
+        Properties meta = readMetadata(key);
+        return new Entry(data, meta.getProperty("etag"), meta.getProperty("lastModified"),
+                parseLong(meta.getProperty("expiresAt")));
+    }
+
+    /**
+     * Store a tile with its HTTP metadata.
+     * @param etag ETag header, or null
+     * @param lastModified Last-Modified header, or null
+     * @param expiresAt epoch millis the tile stays fresh until
+     */
+    public void put(URL url, byte[] bytes, String etag, String lastModified, long expiresAt) throws IOException {
+        String key = keyFor(url);
+        Path file = root.resolve(key);
+
+        Files.createDirectories(file.getParent());
+        List<String> evicted;
+        synchronized (keyLock(key)) {
+            // Metadata first: a crash in between leaves a tile that is merely revalidated early
+            writeMetadata(key, etag, lastModified, expiresAt);
+            writeAtomically(file, bytes);
+
+            writes.incrementAndGet();
+            synchronized (this) {
+                Long previous = index.put(key, (long) bytes.length);
+                totalBytes += bytes.length - (previous != null ? previous : 0);
+                evicted = collectEvictions();
+            }
+        }
+        deleteEvicted(evicted);
+    }
+
+    /**
+     * Update a cached tile's metadata after the server confirmed it is unchanged.
+     */
+    public void refresh(URL url, String etag, String lastModified, long expiresAt) throws IOException {
+        String key = keyFor(url);
+        synchronized (keyLock(key)) {
+            if (Files.exists(root.resolve(key))) {
+                writeMetadata(key, etag, lastModified, expiresAt);
+            }
+        }
+    }
+
+    private Properties readMetadata(String key) throws IOException {
+        Properties meta = new Properties();
+        try (InputStream in = Files.newInputStream(root.resolve(key + META_SUFFIX))) {
+            meta.load(in);
+        } catch (NoSuchFileException e) {
+            // Cached before metadata was kept, or stored through LocalCache.put
+        }
+        return meta;
+    }
+
+    private void writeMetadata(String key, String etag, String lastModified, long expiresAt) throws IOException {
+        Path file = root.resolve(key + META_SUFFIX);
+        if (etag == null && lastModified == null && expiresAt == 0) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Properties meta = new Properties();
+        if (etag != null) {
+            meta.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            meta.setProperty("lastModified", lastModified);
+        }
+        meta.setProperty("expiresAt", Long.toString(expiresAt));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        meta.store(out, null);
+        writeAtomically(file, out.toByteArray());
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // ---------------- Files ----------------
+
+    /**
+     * Read a cached tile, counting the hit or miss.
+     * @return the bytes, or null if not cached
+     */
+    private byte[] read(String key) throws IOException {
+        Path file = root.resolve(key);
+
+        if (indexLoaded) {
+            synchronized (this) {
+                if (index.get(key) == null) {
+                    misses.incrementAndGet();
+                    return null;
+                }
+            }
+        }
+
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            // Evicted (or never cached) between the index check and the read
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (!indexLoaded) {
+            synchronized (this) {
+                if (index.put(key, (long) data.length) == null) {
+                    totalBytes += data.length;
+                }
+            }
+        }
+
+        touch(file);
+        hits.incrementAndGet();
+        bytesSaved.addAndGet(data.length);
+        return data;
+    }
+
+    private static void writeAtomically(Path file, byte[] bytes) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), ".tile", ".tmp");
+        try {
+            Files.write(temp, bytes);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // ---------------- Index & eviction ----------------
+
+    /**
+     * Build the LRU index from the files on disk, oldest access first.
+     */
+    private void loadIndex() {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root)) {
+            walk.filter(path -> path.toString().endsWith(".png")).forEach(files::add);
+        } catch (IOException e) {
+            System.err.println("Could not scan tile cache: " + e.getMessage());
+        }
+
+        Map<Path, Long> modified = new LinkedHashMap<>();
+        for (Path file : files) {
+            try {
+                modified.put(file, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                // Deleted while scanning
+            }
+        }
+        files.removeIf(file -> !modified.containsKey(file));
+        files.sort((a, b) -> Long.compare(modified.get(a), modified.get(b)));
+
+        List<String> evicted;
+        synchronized (this) {
+            // Entries added by lookups during the scan are the most recent, keep them last
+            LinkedHashMap<String, Long> recent = new LinkedHashMap<>(index);
+            index.clear();
+            totalBytes = 0;
+            for (Path file : files) {
+                try {
+                    long size = Files.size(file);
+                    index.put(root.relativize(file).toString().replace('\\', '/'), size);
+                    totalBytes += size;
+                } catch (IOException e) {
+                    // Deleted while scanning
+                }
+            }
+            for (Map.Entry<String, Long> entry : recent.entrySet()) {
+                Long previous = index.put(entry.getKey(), entry.getValue());
+                totalBytes += entry.getValue() - (previous != null ? previous : 0);
+            }
+            indexLoaded = true;
+            evicted = collectEvictions();
+        }
+        deleteEvicted(evicted);
+
+        System.out.printf("Tile cache: %d tiles (%.1f MB) in %s%n", getTileCount(), getTotalBytes() / 1048576.0, root);
+    }
+
+    /**
+     * Remove least recently used entries until the cache fits. Caller holds the lock.
+     */
+    private List<String> collectEvictions() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            totalBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            it.remove();
+        }
+        return evicted;
+    }
+
+    /**
+     * Delete the files of evicted keys. A key that a put has indexed again
+     * since it was evicted keeps its (new) files.
+     */
+    private void deleteEvicted(List<String> keys) {
+        for (String key : keys) {
+            synchronized (keyLock(key)) {
+                synchronized (this) {
+                    if (index.containsKey(key)) {
+                        continue;
+                    }
+                }
+                try {
+                    Files.deleteIfExists(root.resolve(key));
+                    Files.deleteIfExists(root.resolve(key + META_SUFFIX));
+                    evictions.incrementAndGet();
+                } catch (IOException e) {
+                    System.err.println("Could not evict cached tile " + key + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private Object keyLock(String key) {
+        return keyLocks[(key.hashCode() & 0x7fffffff) % keyLocks.length];
+    }
+
+    private void touch(Path file) {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - Files.getLastModifiedTime(file).toMillis() > TOUCH_INTERVAL_MILLIS) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+            }
+        } catch (IOException e) {
+            // Timestamp is only a hint for the next launch's LRU order
+        }
+    }
+
+    /**
+     * Key a tile by z/x/y taken from the end of the URL path
+     * (e.g. https://tile.openstreetmap.org/16/37750/39760.png -> 16/37750/39760.png).
+     */
+    static String keyFor(URL url) {
+        TileKey tile = TileKey.fromUrl(url);
+        if (tile != null) {
+            return tile.toPath();
+        }
+        // Unknown URL layout - fall back to a hash of the whole URL
+        return "other/" + Integer.toHexString(url.toString().hashCode()) + ".png";
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    // ---------------- Stats ----------------
+
+    public synchronized int getTileCount() {
+        return index.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public TileCacheStats getStats() {
+        return new TileCacheStats(hits.get(), misses.get(), bytesSaved.get(), writes.get(),
+                                  evictions.get(), getTileCount(), getTotalBytes(), maxBytes);
+    }
+}
@@ -0,0 +1,173 @@
+package za.ac.cput.mapapp;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The one place great-circle distances are computed (in meters).
+ *
+ * The static methods are the scalar Haversine / equirectangular formulas. An
+ * instance keeps a set of study locations as primitive arrays (latitude and
+ * longitude in radians plus the precomputed cosine of each latitude), so
+ * distances to a query point are a tight loop over doubles with only one
+ * toRadians and cos per query. Large sets are split across the common
+ * fork-join pool.
+ *
+ * An engine is immutable once built; rebuild it when the location list changes.
+ * @author abong
+ */
+public final class DistanceEngine {
+
+    public static final double EARTH_RADIUS_METERS = 6371000;
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180.0;
+
+    // Below this many points a parallel split costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    private static final int PARALLEL_CHUNK = 16_384;
+
+    // Slack for the flat-earth prefilter; its curvature error is far below this
+    // for the radii we query (up to a few hundred km)
+    private static final double PREFILTER_MARGIN = 1.01;
+
+    private final List<StudyLocation> locations;
+    private final double[] latRad;
+    private final double[] lonRad;
+    private final double[] cosLat;
+
+    private DistanceEngine(List<StudyLocation> locations) {
+        this.locations = locations;
+        int n = locations.size();
+        latRad = new double[n];
+        lonRad = new double[n];
+        cosLat = new double[n];
+        for (int i = 0; i < n; i++) {
+            StudyLocation location = locations.get(i);
+            latRad[i] = Math.toRadians(location.getLatitude());
+            lonRad[i] = Math.toRadians(location.getLongitude());
+            cosLat[i] = Math.cos(latRad[i]);
+        }
+    }
+
+    /**
+     * Build an engine over the given locations (the list is kept, not copied,
+     * and index i in the engine is index i in the list).
+     */
+    public static DistanceEngine of(List<StudyLocation> locations) {
+        return new DistanceEngine(locations);
+    }
+
+    public int size() {
+        return latRad.length;
+    }
+
+    // ---------------- Batch ----------------
+
+    /**
+     * Haversine distance from a point to every location.
+     * @param out receives distance i at index i; must hold at least size() values
+     */
+    public void distancesTo(double latitude, double longitude, double[] out) {
+        double queryLat = Math.toRadians(latitude);
+        double queryLon = Math.toRadians(longitude);
+        double queryCos = Math.cos(queryLat);
+        int n = latRad.length;
+
+        if (n < PARALLEL_THRESHOLD) {
+            distances(queryLat, queryLon, queryCos, out, 0, n);
+        } else {
+            int chunks = (n + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                int from = chunk * PARALLEL_CHUNK;
+                distances(queryLat, queryLon, queryCos, out, from, Math.min(n, from + PARALLEL_CHUNK));
+            });
+        }
+    }
+
+    /**
+     * Set every location's distance field to its distance from the point.
+     */
+    public void applyDistances(double latitude, double longitude) {
+        double[] distances = new double[latRad.length];
+        distancesTo(latitude, longitude, distances);
+        for (int i = 0; i < distances.length; i++) {
+            locations.get(i).setDistance(distances[i]);
+        }
+    }
+
+    /**
+     * Indexes of the locations within a radius of a point, with their distances.
+     * Candidates are rejected first on latitude alone, then on the equirectangular
+     * approximation, and only the rest get an exact Haversine check.
+     * @param outIndexes receives the matching indexes in list order; must hold at least size() values
+     * @param outDistances receives the matching distances, parallel to outIndexes
+     * @return number of matches written
+     */
+    public int within(double latitude, double longitude, double radiusMeters,
+                      int[] outIndexes, double[] outDistances) {
+        double queryLat = Math.toRadians(latitude);
+        double queryLon = Math.toRadians(longitude);
+        double queryCos = Math.cos(queryLat);
+        double radiusRad = radiusMeters / EARTH_RADIUS_METERS;
+        // Smallest cos(latitude) inside the radius, so the prefilter never underestimates the box
+        double prefilterCos = Math.cos(Math.min(Math.PI / 2, Math.abs(queryLat) + radiusRad));
+        double prefilterRad = radiusRad * PREFILTER_MARGIN;
+        double prefilterSquared = prefilterRad * prefilterRad;
+
+        int count = 0;
+        for (int i = 0; i < latRad.length; i++) {
+            double dLat = latRad[i] - queryLat;
+            // Great-circle distance is never less than the latitude difference
+            if (Math.abs(dLat) > radiusRad) {
+                continue;
+            }
+            double x = (lonRad[i] - queryLon) * prefilterCos;
+            if (x * x + dLat * dLat > prefilterSquared) {
+                continue;
+            }
+            double distance = haversine(queryLat, queryLon, queryCos, latRad[i], lonRad[i], cosLat[i]);
+            if (distance <= radiusMeters) {
+                outIndexes[count] = i;
+                outDistances[count] = distance;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void distances(double queryLat, double queryLon, double queryCos, double[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out[i] = haversine(queryLat, queryLon, queryCos, latRad[i], lonRad[i], cosLat[i]);
+        }
+    }
+
+    // ---------------- Scalar ----------------
+
+    /**
+     * Great-circle distance between two points in meters (Haversine formula).
+     */
+    public static double haversineMeters(double lat1, double lon1, double lat2, double lon2) {
+        double latRad1 = Math.toRadians(lat1);
+        double latRad2 = Math.toRadians(lat2);
+        return haversine(latRad1, Math.toRadians(lon1), Math.cos(latRad1),
+                         latRad2, Math.toRadians(lon2), Math.cos(latRad2));
+    }
+
+    /**
+     * Equirectangular approximation of the distance in meters: a flat projection
+     * scaled by the cosine of the mean latitude. Much cheaper than Haversine and
+     * accurate to well under 1% at campus and city scale.
+     */
+    public static double equirectangularMeters(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return EARTH_RADIUS_METERS * Math.sqrt(x * x + y * y);
+    }
+
+    private static double haversine(double lat1, double lon1, double cos1,
+                                    double lat2, double lon2, double cos2) {
+        double sinLat = Math.sin((lat2 - lat1) / 2);
+        double sinLon = Math.sin((lon2 - lon1) / 2);
+        double a = sinLat * sinLat + cos1 * cos2 * sinLon * sinLon;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(Math.min(1.0, a)));
+    }
+}
@@ -0,0 +1,176 @@
+package za.ac.cput.mapapp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process Derby database for learnhub.db.mode=embedded.
+ * The database lives in a local directory and is created on first use by the
+ * same SchemaManager migrations as the network server database, so the DAO runs
+ * the same queries in both modes. A new database is seeded with the sample
+ * study locations.
+ * @author abong
+ */
+public final class EmbeddedDatabase {
+
+    public static final String DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
+
+    private static final String DATABASE_NAME = "LocationDB";
+
+    private EmbeddedDatabase() {
+    }
+
+    /**
+     * JDBC URL of the database in the given directory, created if missing.
+     * Connecting as app keeps the tables in the APP schema, as on the server.
+     */
+    public static String url(Path directory) {
+        return "jdbc:derby:" + directory.resolve(DATABASE_NAME).toAbsolutePath() + ";create=true;user=app";
+    }
+
+    /**
+     * Create the directory and point Derby's home (and derby.log) at it, unless
+     * derby.system.home is already set. Must run before the engine boots.
+     */
+    public static void prepareDirectory(Path directory) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            System.err.println("Could not create database directory " + directory + ": " + e.getMessage());
+        }
+        if (System.getProperty("derby.system.home") == null) {
+            System.setProperty("derby.system.home", directory.toAbsolutePath().toString());
+        }
+    }
+
+    // ---------------- Schema ----------------
+
+    /**
+     * Bring the schema up to date and seed an empty study_locations table with
+     * the sample locations.
+     */
+    public static void createSchema(Connection con) throws SQLException {
+        SchemaManager.migrate(con);
+
+        if (isEmpty(con)) {
+            insertStudyLocations(con, sampleStudyLocations());
+            System.out.println("Created embedded database with sample study locations");
+        }
+    }
+
+    /**
+     * Batch insert study locations in one transaction.
+     */
+    public static void insertStudyLocations(Connection con, List<StudyLocation> locations) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (PreparedStatement insert = con.prepareStatement(
+                "INSERT INTO study_locations (id, group_name, location_type, building_name, latitude, longitude, " +
+                "capacity, created_at, activity) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (StudyLocation location : locations) {
+                insert.setInt(1, location.getId());
+                insert.setString(2, location.getGroupName());
+                insert.setString(3, location.getLocationName());
+                insert.setString(4, location.getBuilding());
+                insert.setDouble(5, location.getLatitude());
+                insert.setDouble(6, location.getLongitude());
+                insert.setInt(7, location.getMemberCount());
+                insert.setDate(8, location.getCreatedDate() != null ? Date.valueOf(location.getCreatedDate()) : null);
+                insert.setInt(9, location.getRecentActivity());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+            con.commit();
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean isEmpty(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM study_locations")) {
+            return rs.next() && rs.getInt(1) == 0;
+        }
+    }
+
+    /**
+     * Study locations around the CPUT campus; seeds a new embedded database and
+     * is the app's fallback when no database is reachable.
+     */
+    public static List<StudyLocation> sampleStudyLocations() {
+        List<StudyLocation> locations = new ArrayList<>();
+
+        locations.add(new StudyLocation(1, "ADF2625 GROUP", "Library", "Library Building",
+                -33.930505201808685, 18.430816189682822, 5));
+
+        locations.add(new StudyLocation(2, "MAF Group", "Library", "Library Building",
+                -33.93009832484135, 18.430670728029888, 4));
+
+        locations.add(new StudyLocation(3, "PRJ152S", "Engineering Lab", "Engineering Building",
+                -33.930877181287876, 18.42936060636949, 6));
+
+        locations.add(new StudyLocation(4, "Business Practice", "Commerce Building", "Commerce Building",
+                -33.930204714751454, 18.42946654578125, 4));
+
+        locations.add(new StudyLocation(5, "Proff Com", "E-Learning Center", "E-Learning Building",
+                -33.92893680677932, 18.42840885211103, 3));
+
+        // Activity and age for the recommendation ranking
+        int[] recentActivity = {12, 3, 20, 6, 2};
+        int[] ageDays = {40, 120, 25, 9, 2};
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < locations.size(); i++) {
+            locations.get(i).setRecentActivity(recentActivity[i]);
+            locations.get(i).setCreatedDate(today.minusDays(ageDays[i]));
+        }
+
+        return locations;
+    }
+
+    // ---------------- Shutdown ----------------
+
+    /**
+     * Shut the embedded engine down cleanly so the next start does not need
+     * crash recovery. Call after the connection pool is closed.
+     */
+    public static void shutdown() {
+        try {
+            DriverManager.getConnection("jdbc:derby:;shutdown=true");
+        } catch (SQLException e) {
+            // XJ015 = engine shut down normally
+            if (!"XJ015".equals(e.getSQLState())) {
+                System.err.println("Embedded database shutdown failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Shut down only the database in the given directory, leaving the engine
+     * (and its registered driver) running for other databases.
+     */
+    public static void shutdown(Path directory) {
+        try {
+            DriverManager.getConnection("jdbc:derby:" + directory.resolve(DATABASE_NAME).toAbsolutePath()
+                    + ";shutdown=true");
+        } catch (SQLException e) {
+            // 08006 = database shut down normally
+            if (!"08006".equals(e.getSQLState())) {
+                System.err.println("Embedded database shutdown failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package za.ac.cput.mapapp;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of frame (paint) times in quarter-millisecond buckets up to 64 ms;
+ * slower frames share the last bucket and still count towards the maximum.
+ * Written on the EDT, read from anywhere.
+ * @author abong
+ */
+public class FrameTimeHistogram {
+
+    /** A 60 Hz display frame. */
+    public static final double BUDGET_MILLIS = 16.0;
+
+    private static final long BUCKET_NANOS = 250_000;
+    private static final int BUCKETS = 256;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long overBudget;
+
+    public synchronized void record(long nanos) {
+        counts[(int) Math.min(BUCKETS - 1, Math.max(0, nanos) / BUCKET_NANOS)]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        if (nanos > BUDGET_MILLIS * 1_000_000) {
+            overBudget++;
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0.0 : totalNanos / 1_000_000.0 / count;
+    }
+
+    public synchronized double getMaxMillis() {
+        return maxNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return the share of frames slower than BUDGET_MILLIS
+     */
+    public synchronized double getOverBudgetRate() {
+        return count == 0 ? 0.0 : overBudget / (double) count;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return upper edge of the bucket holding that quantile, in milliseconds
+     */
+    public synchronized double getPercentileMillis(double quantile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return i == BUCKETS - 1 ? getMaxMillis() : (i + 1) * BUCKET_NANOS / 1_000_000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        overBudget = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("frames=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms over %.0fms=%.1f%%",
+                count, getMeanMillis(), getPercentileMillis(0.50), getPercentileMillis(0.95),
+                getPercentileMillis(0.99), getMaxMillis(), BUDGET_MILLIS, getOverBudgetRate() * 100);
+    }
+}
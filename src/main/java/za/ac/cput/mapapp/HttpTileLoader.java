@@ -0,0 +1,467 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.cache.LocalCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads map tiles with java.net.http.HttpClient on behalf of the tile
+ * factory, in front of a DiskTileCache.
+ *
+ * The factory only downloads (through HttpURLConnection) when its LocalCache
+ * returns null, so for http(s) tiles this class never does: it returns the
+ * tile or throws. One HttpClient keeps its connections open between tiles.
+ * At most maxConcurrent requests run at once and request starts are spaced to
+ * stay under requestsPerSecond.
+ *
+ * Cached tiles are served straight away. Once past the expiry the server gave
+ * (Cache-Control max-age or Expires) they are revalidated in the background
+ * with If-None-Match / If-Modified-Since, so an unchanged tile costs a 304 and
+ * a changed one is used the next time it loads.
+ *
+ * Failures are remembered per tile: a 404 is not asked for again for an hour,
+ * other errors back off exponentially, and the factory's retries of a failed
+ * tile fail at once instead of going back to the server. A 429 or 503 pauses
+ * every request for the Retry-After time, as do repeated connection errors.
+ * @author abong
+ */
+public class HttpTileLoader implements LocalCache {
+
+    // Used when the server gives no expiry
+    private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long NOT_FOUND_RETRY_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long FIRST_BACKOFF_MILLIS = 2_000;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Pause used for a 429/503 without a usable Retry-After
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 30_000;
+    // Connection errors in a row before every request is paused
+    private static final int HOST_FAILURE_THRESHOLD = 3;
+    // Tiles whose failures are remembered
+    private static final int MAX_FAILURES = 10_000;
+    private static final int REVALIDATION_QUEUE = 256;
+
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])(?:s-)?max-age\\s*=\\s*\"?(\\d+)");
+
+    private final DiskTileCache cache;
+    private final HttpClient client;
+    private final String userAgent;
+    private final Duration timeout;
+    private final Semaphore permits;
+    private final long requestIntervalNanos;
+    private final ThreadPoolExecutor revalidator;
+
+    // Recent failures by URL, oldest first (guarded by itself)
+    private final LinkedHashMap<String, Failure> failures = new LinkedHashMap<>();
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    // Earliest start of the next request and end of any server-requested pause (guarded by "this")
+    private long nextRequestNanos = System.nanoTime();
+    private long pausedUntilNanos = System.nanoTime();
+    private int hostFailures;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong downloads = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong failFast = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    /**
+     * Loader configured from AppConfig.
+     */
+    public static HttpTileLoader fromConfig(DiskTileCache cache) {
+        return new HttpTileLoader(cache, AppConfig.getTileUserAgent(), AppConfig.getTileHttpMaxConcurrent(),
+                AppConfig.getTileHttpRequestsPerSecond(), AppConfig.getTileHttpTimeoutMillis());
+    }
+
+    /**
+     * @param maxConcurrent requests in flight at once
+     * @param requestsPerSecond request starts per second; 0 for no limit
+     * @param timeoutMillis connect and response timeout
+     */
+    public HttpTileLoader(DiskTileCache cache, String userAgent, int maxConcurrent, int requestsPerSecond,
+                          long timeoutMillis) {
+        this.cache = cache;
+        this.userAgent = userAgent;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        maxConcurrent = Math.max(1, maxConcurrent);
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.requestIntervalNanos = requestsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / requestsPerSecond : 0;
+        AtomicInteger revalidatorThreads = new AtomicInteger();
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .proxy(ProxySelector.getDefault())
+                .build();
+
+        // Revalidations take request permits like any other request
+        this.revalidator = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REVALIDATION_QUEUE), runnable -> {
+                    Thread thread = new Thread(runnable, "tile-revalidate-" + revalidatorThreads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        revalidator.allowCoreThreadTimeOut(true);
+    }
+
+    private static final class Failure {
+        int attempts;
+        long retryAtMillis;
+        int status;
+    }
+
+    // ---------------- LocalCache ----------------
+
+    /**
+     * The cached tile, revalidated in the background if stale, or else the
+     * downloaded one.
+     * @throws FileNotFoundException if the server has no such tile
+     * @throws IOException if the download failed now or recently
+     */
+    @Override
+    public InputStream get(URL url) throws IOException {
+        if (!url.getProtocol().startsWith("http")) {
+            return cache.get(url);
+        }
+        DiskTileCache.Entry cached = cache.getEntry(url);
+        if (cached != null) {
+            if (!cached.isFresh(System.currentTimeMillis())) {
+                staleServed.incrementAndGet();
+                revalidateLater(url, cached);
+            }
+            return new ByteArrayInputStream(cached.getData());
+        }
+        checkRecentFailure(url);
+        return new ByteArrayInputStream(fetch(url, null));
+    }
+
+    @Override
+    public void put(URL url, InputStream data) throws IOException {
+        cache.put(url, data);
+    }
+
+    /**
+     * Stop background revalidation.
+     */
+    public void close() {
+        revalidator.shutdownNow();
+    }
+
+    // ---------------- Requests ----------------
+
+    /**
+     * One request for a tile, conditional if there is a cached copy.
+     * @return the tile, or the cached copy if the server says it is unchanged
+     */
+    private byte[] fetch(URL url, DiskTileCache.Entry cached) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(toUri(url))
+                .timeout(timeout)
+                .header("User-Agent", userAgent)
+                .GET();
+        if (cached != null && cached.getEtag() != null) {
+            builder.header("If-None-Match", cached.getEtag());
+        }
+        if (cached != null && cached.getLastModified() != null) {
+            builder.header("If-Modified-Since", cached.getLastModified());
+        }
+
+        HttpResponse<byte[]> response;
+        acquire(url);
+        try {
+            requests.incrementAndGet();
+            response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            connectionFailed();
+            recordFailure(url, 0);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted loading " + url);
+        } finally {
+            permits.release();
+        }
+
+        int status = response.statusCode();
+        HttpHeaders headers = response.headers();
+        synchronized (this) {
+            hostFailures = 0;
+        }
+        if (status == 200) {
+            byte[] body = response.body();
+            cache.put(url, body, headers.firstValue("ETag").orElse(null),
+                    headers.firstValue("Last-Modified").orElse(null), expiresAt(headers));
+            clearFailure(url);
+            downloads.incrementAndGet();
+            return body;
+        }
+        if (status == 304 && cached != null) {
+            cache.refresh(url, headers.firstValue("ETag").orElse(cached.getEtag()),
+                    headers.firstValue("Last-Modified").orElse(cached.getLastModified()), expiresAt(headers));
+            clearFailure(url);
+            notModified.incrementAndGet();
+            return cached.getData();
+        }
+        if (status == 429 || status == 503) {
+            rateLimited.incrementAndGet();
+            pause(retryAfterMillis(headers), "Tile server asked to slow down (HTTP " + status + ")");
+        }
+        recordFailure(url, status);
+        if (status == 404 || status == 410) {
+            throw new FileNotFoundException("No tile at " + url);
+        }
+        throw new IOException("HTTP " + status + " loading " + url);
+    }
+
+    /**
+     * Conditional request off the caller's thread; the cached copy keeps being
+     * served meanwhile, and if the queue is full the next load tries again.
+     */
+    private void revalidateLater(URL url, DiskTileCache.Entry cached) {
+        String key = url.toString();
+        if (!revalidating.add(key)) {
+            return;
+        }
+        try {
+            revalidator.execute(() -> {
+                try {
+                    if (recentFailure(url) == null) {
+                        fetch(url, cached);
+                    }
+                } catch (IOException e) {
+                    // Still serving the cached copy; the failure is remembered for backoff
+                } finally {
+                    revalidating.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            revalidating.remove(key);
+        }
+    }
+
+    /**
+     * Wait for a request slot: a concurrency permit, the rate limit and any
+     * server-requested pause. Fails at once rather than wait past the timeout.
+     */
+    private void acquire(URL url) throws IOException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long start = Math.max(now, Math.max(nextRequestNanos, pausedUntilNanos));
+            waitNanos = start - now;
+            if (waitNanos > timeout.toNanos()) {
+                failFast.incrementAndGet();
+                throw new IOException("Tile server paused for " + TimeUnit.NANOSECONDS.toSeconds(waitNanos)
+                        + " s, not loading " + url);
+            }
+            nextRequestNanos = start + requestIntervalNanos;
+        }
+        try {
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to load " + url);
+        }
+    }
+
+    private synchronized void pause(long millis, String reason) {
+        pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+        System.err.println(reason + ", pausing tile downloads for " + millis + " ms");
+    }
+
+    /**
+     * Repeated connection errors (server down, no network) pause every request with growing backoff.
+     */
+    private void connectionFailed() {
+        int failuresInRow;
+        synchronized (this) {
+            failuresInRow = ++hostFailures;
+        }
+        if (failuresInRow >= HOST_FAILURE_THRESHOLD) {
+            pause(backoffMillis(failuresInRow - HOST_FAILURE_THRESHOLD + 1),
+                    failuresInRow + " tile connections failed in a row");
+        }
+    }
+
+    // ---------------- Negative cache ----------------
+
+    private void checkRecentFailure(URL url) throws IOException {
+        Failure failure = recentFailure(url);
+        if (failure == null) {
+            return;
+        }
+        failFast.incrementAndGet();
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(failure.retryAtMillis - System.currentTimeMillis());
+        if (failure.status == 404 || failure.status == 410) {
+            throw new FileNotFoundException("No tile at " + url + " (retrying in " + seconds + " s)");
+        }
+        throw new IOException("Tile failed " + failure.attempts + " times, retrying in " + seconds + " s: " + url);
+    }
+
+    /**
+     * @return the tile's failure if it is still backing off, else null
+     */
+    private Failure recentFailure(URL url) {
+        synchronized (failures) {
+            Failure failure = failures.get(url.toString());
+            return failure != null && System.currentTimeMillis() < failure.retryAtMillis ? failure : null;
+        }
+    }
+
+    /**
+     * @param status HTTP status, or 0 for a connection error
+     */
+    private void recordFailure(URL url, int status) {
+        failed.incrementAndGet();
+        synchronized (failures) {
+            Failure failure = failures.remove(url.toString());
+            if (failure == null) {
+                failure = new Failure();
+            }
+            failure.attempts++;
+            failure.status = status;
+            failure.retryAtMillis = System.currentTimeMillis() + (status == 404 || status == 410
+                    ? NOT_FOUND_RETRY_MILLIS : backoffMillis(failure.attempts));
+            failures.put(url.toString(), failure);
+            if (failures.size() > MAX_FAILURES) {
+                Iterator<String> eldest = failures.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    private void clearFailure(URL url) {
+        synchronized (failures) {
+            failures.remove(url.toString());
+        }
+    }
+
+    static long backoffMillis(int attempts) {
+        return Math.min(MAX_BACKOFF_MILLIS, FIRST_BACKOFF_MILLIS << Math.min(attempts - 1, 20));
+    }
+
+    // ---------------- Headers ----------------
+
+    /**
+     * Expiry from Cache-Control max-age, else Expires, else the default; no-cache expires at once.
+     */
+    static long expiresAt(HttpHeaders headers) {
+        long now = System.currentTimeMillis();
+        String cacheControl = String.join(",", headers.allValues("Cache-Control")).toLowerCase();
+        if (cacheControl.contains("no-cache") || cacheControl.contains("no-store")) {
+            return now;
+        }
+        Matcher maxAge = MAX_AGE.matcher(cacheControl);
+        if (maxAge.find()) {
+            try {
+                return now + TimeUnit.SECONDS.toMillis(Long.parseLong(maxAge.group(1)));
+            } catch (NumberFormatException e) {
+                // Absurdly large; fall through
+            }
+        }
+        Long expires = parseDate(headers.firstValue("Expires").orElse(null));
+        if (expires != null) {
+            return expires;
+        }
+        return now + DEFAULT_MAX_AGE_MILLIS;
+    }
+
+    /**
+     * Retry-After in seconds or as an HTTP date.
+     */
+    static long retryAfterMillis(HttpHeaders headers) {
+        String value = headers.firstValue("Retry-After").orElse(null);
+        if (value != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+            } catch (NumberFormatException e) {
+                Long date = parseDate(value);
+                if (date != null) {
+                    return Math.max(0, date - System.currentTimeMillis());
+                }
+            }
+        }
+        return DEFAULT_RETRY_AFTER_MILLIS;
+    }
+
+    private static Long parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static URI toUri(URL url) throws IOException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Bad tile URL " + url, e);
+        }
+    }
+
+    // ---------------- Stats ----------------
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getDownloads() {
+        return downloads.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * @return loads that failed without a request, because the tile or the server was backing off
+     */
+    public long getFailFast() {
+        return failFast.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HttpTileLoader{requests=%d, downloads=%d, notModified=%d, staleServed=%d, " +
+                           "failed=%d, failFast=%d, rateLimited=%d}",
+                           requests.get(), downloads.get(), notModified.get(), staleServed.get(),
+                           failed.get(), failFast.get(), rateLimited.get());
+    }
+}
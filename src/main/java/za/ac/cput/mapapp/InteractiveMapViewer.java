@@ -0,0 +1,33 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.JXMapViewer;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+/**
+ * JXMapViewer whose drag and wheel input goes through a MapInteractionScheduler.
+ * Each paint is timed into the scheduler's frame-time histograms. While the map
+ * is moving, tiles scaled up from a lower zoom (shown until the real tile loads)
+ * use nearest-neighbour interpolation instead of bilinear.
+ * @author abong
+ */
+public class InteractiveMapViewer extends JXMapViewer {
+
+    private final MapInteractionScheduler interactionScheduler = new MapInteractionScheduler(this);
+
+    public MapInteractionScheduler getInteractionScheduler() {
+        return interactionScheduler;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_INTERPOLATION, interactionScheduler.isMoving()
+                ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+                : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        super.paintComponent(g);
+        interactionScheduler.frameRendered(System.nanoTime() - start);
+    }
+}
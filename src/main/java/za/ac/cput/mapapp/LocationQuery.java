@@ -0,0 +1,130 @@
+package za.ac.cput.mapapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the groups list asks for: an optional radius around the user, the sort
+ * keys in order of precedence and an optional limit. The three are independent,
+ * so "within 500 m, most members first, top 20" is one query. Run it with a
+ * LocationQueryPlanner.
+ *
+ * Immutable; build one with builder().
+ * @author abong
+ */
+public final class LocationQuery {
+
+    /**
+     * Sort keys, each with its natural direction.
+     */
+    public enum SortKey {
+        /** Closest first */
+        DISTANCE,
+        /** Alphabetical by group name (locale collation, case-insensitive) */
+        NAME,
+        /** Most members first */
+        MEMBERS,
+        /** Highest RecommendationRanker score first (needs a planner with a ranker) */
+        RECOMMENDED
+    }
+
+    public static final int NO_LIMIT = 0;
+
+    private final double radiusMeters;
+    private final List<SortKey> sortKeys;
+    private final int limit;
+
+    private LocationQuery(Builder builder) {
+        this.radiusMeters = builder.radiusMeters;
+        this.sortKeys = Collections.unmodifiableList(new ArrayList<>(builder.sortKeys));
+        this.limit = builder.limit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return radius in meters, or Double.POSITIVE_INFINITY for no radius filter
+     */
+    public double getRadiusMeters() {
+        return radiusMeters;
+    }
+
+    public boolean hasRadius() {
+        return radiusMeters != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return sort keys, most significant first; empty keeps candidate order
+     */
+    public List<SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    /**
+     * @return maximum number of results, or NO_LIMIT
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean hasLimit() {
+        return limit != NO_LIMIT;
+    }
+
+    @Override
+    public String toString() {
+        return "LocationQuery{radius=" + (hasRadius() ? radiusMeters + " m" : "any")
+                + ", sort=" + sortKeys
+                + ", limit=" + (hasLimit() ? String.valueOf(limit) : "none") + "}";
+    }
+
+    public static final class Builder {
+        private double radiusMeters = Double.POSITIVE_INFINITY;
+        private final List<SortKey> sortKeys = new ArrayList<>();
+        private int limit = NO_LIMIT;
+
+        private Builder() {
+        }
+
+        /**
+         * Only locations within this many meters of the query point.
+         */
+        public Builder within(double radiusMeters) {
+            if (!(radiusMeters > 0)) {
+                throw new IllegalArgumentException("Radius must be positive: " + radiusMeters);
+            }
+            this.radiusMeters = radiusMeters;
+            return this;
+        }
+
+        /**
+         * Append sort keys; earlier keys take precedence, later ones break ties.
+         */
+        public Builder sortBy(SortKey... keys) {
+            for (SortKey key : keys) {
+                if (!sortKeys.contains(key)) {
+                    sortKeys.add(key);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Keep only the first limit results (NO_LIMIT for all).
+         */
+        public Builder limit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("Limit must not be negative: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public LocationQuery build() {
+            return new LocationQuery(this);
+        }
+    }
+}
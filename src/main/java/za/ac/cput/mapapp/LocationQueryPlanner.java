@@ -0,0 +1,314 @@
+package za.ac.cput.mapapp;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Runs LocationQuery objects over a set of study locations.
+ *
+ * Candidates come from the spatial index when the query has a radius, otherwise
+ * from the whole set. Each candidate becomes a Match holding its distance from
+ * the query point and the other sort values, so a query never reads or writes
+ * the distance stored in a StudyLocation. The matches are streamed through the
+ * query's ordering: with a limit only the best k are kept in a bounded heap
+ * (O(n log k) instead of sorting everything), without one they are sorted once.
+ * Group names get collation keys when the planner is built and are ranked by
+ * them on the first name query, so a name comparison is an int compare rather
+ * than a case-folding string compare. RECOMMENDED queries with a limit read the
+ * best groups straight off the RecommendationRanker's score order.
+ *
+ * Member counts are read from the locations at query time; build a new planner
+ * when the set of locations changes. Queries without RECOMMENDED may run from
+ * any number of threads at once, e.g. one per user position; RECOMMENDED
+ * queries share the ranker and are serialised. No Swing dependencies.
+ * @author abong
+ */
+public class LocationQueryPlanner {
+
+    private final SpatialIndex index;
+    private final RecommendationRanker ranker;
+    private final Entry[] entries;
+    private final Map<Integer, Entry> entriesById;
+    // Name rank per entry position, filled on the first name query
+    private volatile int[] nameRanks;
+
+    /**
+     * @param index spatial index over the same locations (kept, not copied)
+     */
+    public LocationQueryPlanner(List<StudyLocation> locations, SpatialIndex index) {
+        this(locations, index, null);
+    }
+
+    /**
+     * @param index spatial index over the same locations (kept, not copied)
+     * @param ranker ranker over the same locations, for RECOMMENDED queries (may be null)
+     */
+    public LocationQueryPlanner(List<StudyLocation> locations, SpatialIndex index, RecommendationRanker ranker) {
+        this.index = index;
+        this.ranker = ranker;
+
+        // Case differences are ignored, accents are not
+        Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+
+        entries = new Entry[locations.size()];
+        entriesById = new HashMap<>(locations.size() * 2);
+        for (int i = 0; i < entries.length; i++) {
+            StudyLocation location = locations.get(i);
+            String name = location.getGroupName() != null ? location.getGroupName() : "";
+            entries[i] = new Entry(location, collator.getCollationKey(name), i);
+            entriesById.put(location.getId(), entries[i]);
+        }
+    }
+
+    /**
+     * Planner with its own spatial index, for use outside the app.
+     */
+    public static LocationQueryPlanner of(List<StudyLocation> locations) {
+        return new LocationQueryPlanner(locations, SpatialIndex.of(locations));
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    /**
+     * Run a query around a point.
+     * @return matching locations in query order; a new list
+     */
+    public List<StudyLocation> execute(LocationQuery query, double latitude, double longitude) {
+        List<Match> matches = match(query, latitude, longitude);
+        List<StudyLocation> result = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            result.add(match.location);
+        }
+        return result;
+    }
+
+    /**
+     * Run a query around a point, keeping each result's distance from it.
+     * @return matching groups in query order; a new list
+     */
+    public List<Match> match(LocationQuery query, double latitude, double longitude) {
+        if (!query.getSortKeys().contains(LocationQuery.SortKey.RECOMMENDED)) {
+            return run(query, latitude, longitude, false);
+        }
+        if (ranker == null) {
+            throw new IllegalStateException("RECOMMENDED needs a planner with a RecommendationRanker");
+        }
+        synchronized (this) {
+            // The ranker already keeps groups in score order: read the best off the front
+            if (query.getSortKeys().get(0) == LocationQuery.SortKey.RECOMMENDED && query.hasLimit()) {
+                return topRecommended(query, latitude, longitude);
+            }
+            ranker.refresh();
+            return run(query, latitude, longitude, true);
+        }
+    }
+
+    private List<Match> run(LocationQuery query, double latitude, double longitude, boolean recommended) {
+        List<Match> candidates = candidates(query, latitude, longitude, recommended);
+        Comparator<Match> order = comparator(query.getSortKeys(),
+                query.getSortKeys().contains(LocationQuery.SortKey.NAME) ? rankNames() : null);
+
+        if (query.hasLimit() && query.getLimit() < candidates.size()) {
+            return topK(candidates, order, query.getLimit());
+        }
+        candidates.sort(order);
+        return candidates;
+    }
+
+    /**
+     * Number every entry by its collation key once, on the first name query, so
+     * name comparisons from then on are int comparisons. Equal names share a rank.
+     */
+    private int[] rankNames() {
+        int[] ranks = nameRanks;
+        if (ranks != null) {
+            return ranks;
+        }
+        synchronized (entries) {
+            if (nameRanks == null) {
+                Entry[] byName = entries.clone();
+                Arrays.sort(byName, (a, b) -> a.nameKey.compareTo(b.nameKey));
+                ranks = new int[entries.length];
+                int rank = 0;
+                for (int i = 0; i < byName.length; i++) {
+                    if (i > 0 && byName[i].nameKey.compareTo(byName[i - 1].nameKey) != 0) {
+                        rank++;
+                    }
+                    ranks[byName[i].position] = rank;
+                }
+                nameRanks = ranks;
+            }
+            return nameRanks;
+        }
+    }
+
+    private List<Match> candidates(LocationQuery query, double latitude, double longitude, boolean recommended) {
+        RecommendationRanker scores = recommended ? ranker : null;
+        if (!query.hasRadius()) {
+            List<Match> candidates = new ArrayList<>(entries.length);
+            for (Entry entry : entries) {
+                StudyLocation location = entry.location;
+                candidates.add(new Match(entry, DistanceEngine.haversineMeters(latitude, longitude,
+                        location.getLatitude(), location.getLongitude()), scores));
+            }
+            return candidates;
+        }
+        List<StudyLocation> found = index.findWithin(latitude, longitude, query.getRadiusMeters());
+        List<Match> candidates = new ArrayList<>(found.size());
+        for (StudyLocation location : found) {
+            Entry entry = entriesById.get(location.getId());
+            // The index may briefly hold locations from a newer load than this planner
+            if (entry != null && entry.location == location) {
+                candidates.add(new Match(entry, DistanceEngine.haversineMeters(latitude, longitude,
+                        location.getLatitude(), location.getLongitude()), scores));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Walk the ranker's order, best first, until the limit is reached. Scores
+     * are unique per id in the ranker's order, so later sort keys cannot change it.
+     */
+    private List<Match> topRecommended(LocationQuery query, double latitude, double longitude) {
+        List<Match> result = new ArrayList<>(query.getLimit());
+        Iterator<StudyLocation> it = ranker.iterator();
+        while (result.size() < query.getLimit() && it.hasNext()) {
+            StudyLocation location = it.next();
+            Entry entry = entriesById.get(location.getId());
+            if (entry == null || entry.location != location) {
+                continue;
+            }
+            double distance = DistanceEngine.haversineMeters(latitude, longitude,
+                    location.getLatitude(), location.getLongitude());
+            if (query.hasRadius() && distance > query.getRadiusMeters()) {
+                continue;
+            }
+            result.add(new Match(entry, distance, null));
+        }
+        return result;
+    }
+
+    /**
+     * Keep the best k candidates in a max-heap whose root is the worst kept so
+     * far; a candidate that does not beat the root is dropped without touching the heap.
+     */
+    private static List<Match> topK(List<Match> candidates, Comparator<Match> order, int k) {
+        PriorityQueue<Match> best = new PriorityQueue<>(k + 1, order.reversed());
+        for (Match match : candidates) {
+            if (best.size() < k) {
+                best.add(match);
+            } else if (order.compare(match, best.peek()) < 0) {
+                best.poll();
+                best.add(match);
+            }
+        }
+
+        Match[] sorted = best.toArray(new Match[0]);
+        Arrays.sort(sorted, order);
+        return new ArrayList<>(Arrays.asList(sorted));
+    }
+
+    /**
+     * Ordering for the sort keys, ending with the position in the location set
+     * so equal keys keep a stable, total order (the heap relies on it).
+     * @param nameRanks name rank per position, needed for NAME
+     */
+    private static Comparator<Match> comparator(List<LocationQuery.SortKey> sortKeys, int[] nameRanks) {
+        LocationQuery.SortKey[] keys = sortKeys.toArray(new LocationQuery.SortKey[0]);
+        // One comparator walking the keys; a thenComparing chain costs a call per key per compare
+        return (a, b) -> {
+            for (LocationQuery.SortKey key : keys) {
+                int cmp;
+                switch (key) {
+                    case DISTANCE:
+                        cmp = Double.compare(a.distance, b.distance);
+                        break;
+                    case NAME:
+                        cmp = Integer.compare(nameRanks[a.position], nameRanks[b.position]);
+                        break;
+                    case MEMBERS:
+                        cmp = Integer.compare(b.memberCount, a.memberCount);
+                        break;
+                    case RECOMMENDED:
+                        cmp = Double.compare(b.score, a.score);
+                        if (cmp == 0) {
+                            // Same tie-break as the ranker's own order
+                            cmp = Integer.compare(a.location.getId(), b.location.getId());
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown sort key " + key);
+                }
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return Integer.compare(a.position, b.position);
+        };
+    }
+
+    /**
+     * A location with its precomputed name key and position in the set.
+     */
+    private static final class Entry {
+        final StudyLocation location;
+        final CollationKey nameKey;
+        final int position;
+
+        Entry(StudyLocation location, CollationKey nameKey, int position) {
+            this.location = location;
+            this.nameKey = nameKey;
+            this.position = position;
+        }
+    }
+
+    /**
+     * A group found by a query, with its distance from the query point. The
+     * other sort values are copied from the location when the match is made,
+     * so comparisons read one object instead of two.
+     */
+    public static final class Match {
+        private final StudyLocation location;
+        private final double distance;
+        private final int position;
+        private final int memberCount;
+        private final double score;
+
+        Match(Entry entry, double distance, RecommendationRanker ranker) {
+            this.location = entry.location;
+            this.distance = distance;
+            this.position = entry.position;
+            this.memberCount = location.getMemberCount();
+            if (ranker != null) {
+                double current = ranker.currentScore(location.getId());
+                // Groups the ranker does not know go last
+                this.score = Double.isNaN(current) ? -1 : current;
+            } else {
+                this.score = 0;
+            }
+        }
+
+        public StudyLocation getLocation() {
+            return location;
+        }
+
+        /**
+         * @return meters from the query point
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+}
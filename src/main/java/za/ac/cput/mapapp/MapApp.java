@@ -2,6 +2,7 @@ package za.ac.cput.mapapp;
 
 import org.jxmapviewer.JXMapViewer;
 import org.jxmapviewer.OSMTileFactoryInfo;
+import org.jxmapviewer.cache.LocalCache;
 import org.jxmapviewer.painter.CompoundPainter;
 import org.jxmapviewer.painter.Painter;
 import org.jxmapviewer.viewer.*;
@@ -10,11 +11,20 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Point2D;
-import java.sql.*;
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * MapApp - main JFrame for Study Groups Location Search
@@ -32,6 +42,9 @@ public class MapApp extends JFrame implements ActionListener {
 
     private JPanel mapPanel;
     private JScrollPane groupsScrollPane;
+    private JList<StudyLocation> groupsList;
+    private final StudyLocationListModel groupsModel = new StudyLocationListModel();
+    private final StudyLocationCellRenderer groupsRenderer = new StudyLocationCellRenderer();
     private boolean mapExpanded = false;
     private final int normalMapHeight = 200;
     private final int expandedMapHeight = 350;
@@ -39,31 +52,67 @@ public class MapApp extends JFrame implements ActionListener {
     private final int expandedFrameHeight = 830;
     private boolean isGridView = false;
     private JButton listBtn, gridBtn;
-    private JComboBox<String> sortCombo;
+    private JComboBox<String> radiusCombo, sortCombo, limitCombo;
     private JButton expandButton;
 
     // JXMapViewer components
     private JXMapViewer mapViewer;
-    private WaypointPainter<StudyLocationWaypoint> waypointPainter;
-    private Set<StudyLocationWaypoint> waypoints;
+    private MapInteractionScheduler interactionScheduler;
+    private StudyLocationWaypointPainter waypointPainter;
+    private WaypointStore waypointStore;
+    private DiskTileCache tileCache;
+    private PrefetchTileFactory tileFactory;
+    private HttpTileLoader tileLoader;
 
     // Movement control variables
     private boolean isDragging = false;
     private Point lastMousePoint;
+    private Object hoverTarget;
 
     // User's current location (default)
-    private double userLatitude = -33.93080102488844;
-    private double userLongitude = 18.430230425585137;
+    private static final double DEFAULT_LATITUDE = -33.93080102488844;
+    private static final double DEFAULT_LONGITUDE = 18.430230425585137;
+    // Recommended groups drawn with the gold marker
+    private static final int HIGHLIGHTED_RECOMMENDATIONS = 3;
+    private double userLatitude = DEFAULT_LATITUDE;
+    private double userLongitude = DEFAULT_LONGITUDE;
     private GeoPosition userPosition;
 
     // List to store study locations from database
     private List<StudyLocation> studyLocations;
-
-    // Database connection helper
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+    private DistanceEngine distanceEngine = DistanceEngine.of(new ArrayList<>());
+    private final RecommendationRanker recommendationRanker =
+            new RecommendationRanker(DEFAULT_LATITUDE, DEFAULT_LONGITUDE);
+    private LocationQueryPlanner queryPlanner =
+            new LocationQueryPlanner(new ArrayList<>(), spatialIndex, recommendationRanker);
+    private volatile boolean usingSampleData = false;
+
+    // Polls study_locations for changes after the first load
+    private final ScheduledExecutorService changePoller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "study-location-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private StudyLocationChangeFeed changeFeed;
+    private boolean changePollFailing = false;
+    // Change log version the loaded groups are current to (EDT only)
+    private long loadedVersion = -1;
+    // Deltas applied while a reload is running, re-applied over its older snapshot (EDT only)
+    private final List<StudyLocationChangeFeed.Changes> changesDuringReload = new ArrayList<>();
+
+    // Database connection helper; the EDT only uses it through asyncDb
     private StudyLocationDBDemo dbHelper;
+    private AsyncStudyLocationDao asyncDb;
+    // Latest groups reload; a newer one cancels it
+    private CompletableFuture<StudyLocationChangeFeed.Snapshot> pendingReload;
+    // Where the user was when location selection started, restored on cancel
+    private double[] locationBeforeSelection;
 
     // Current student information
     private Student currentStudent;
+    private JPanel userIconPanel;
+    private JLabel nameLabel, studentNoLabel, emailLabel;
 
     public MapApp() {
         setTitle("Study Groups Location Search");
@@ -73,26 +122,20 @@ public class MapApp extends JFrame implements ActionListener {
         setBackground(Color.WHITE);
         setResizable(false);
 
-        // Initialize DB helper and load data
+        // Initialize DB helper
         dbHelper = new StudyLocationDBDemo();
+        asyncDb = new AsyncStudyLocationDao(dbHelper);
+        changeFeed = new StudyLocationChangeFeed();
 
-        // Load user location from DB (or default)
-        loadUserLocationFromDatabase();
+        // Start with defaults so the frame can be shown before any DB or network access
+        currentStudent = new Student();
+        studyLocations = new ArrayList<>();
         userPosition = new GeoPosition(userLatitude, userLongitude);
 
-        // Load student info and study locations
-        loadStudentData();
-        initializeDatabase();
-
-        // Network diagnostics
-        System.out.println("=== NETWORK DIAGNOSTICS ===");
+        // Cheap, must happen before the tile factory starts loading
         configureNetworkSettings();
-        checkSecurityPolicy();
-        testFirewallConnectivity();
-        testNetworkConnectivity();
-        System.out.println("=== END DIAGNOSTICS ===");
 
-        // Build UI
+        // Build UI skeleton
         createHeader();
         createNavigationButtons();
         createMapSection();
@@ -102,7 +145,95 @@ public class MapApp extends JFrame implements ActionListener {
         // Setup map interactions
         setupMouseControls();
 
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> {
+                    System.out.println("Tile cache on exit: " + tileCache.getStats());
+                    System.out.println("Tile prefetch on exit: " + tileFactory.getPrefetchStats());
+                    System.out.println("Tile downloads on exit: " + tileLoader);
+                    System.out.println("Map frames on exit: " + interactionScheduler);
+                }, "tile-cache-stats"));
+
         setVisible(true);
+        SwingUtilities.invokeLater(StartupTimer::markFirstFrame);
+
+        // Load student, user location and study locations in the background
+        startBackgroundLoading();
+    }
+
+    // ---------------- Staged startup ----------------
+
+    /**
+     * Loads startup data concurrently and fills in the header, map and list
+     * on the EDT as each stage finishes. Diagnostics run afterwards, off the EDT.
+     */
+    private void startBackgroundLoading() {
+        // The student and their saved location are looked up in parallel, both by student number
+        CompletableFuture<StudentSession> studentStage = loadStudentData();
+        CompletableFuture<double[]> userLocationStage = loadUserLocationFromDatabase();
+        // The radius query needs the user's position, so it starts as soon as that arrives
+        CompletableFuture<StudyLocationChangeFeed.Snapshot> locationsStage =
+                userLocationStage.thenCompose(this::loadStudyLocationsAround);
+
+        CompletableFuture<Void> headerReady = studentStage.thenAcceptAsync(session -> {
+            currentStudent = session.getStudent();
+            updateHeader();
+            StartupTimer.markStage("student");
+        }, SwingUtilities::invokeLater);
+
+        CompletableFuture<Void> userLocationReady = userLocationStage.thenAcceptAsync(location -> {
+            // Don't override a location the user is picking right now; cancelling returns to it
+            if (isLocationSelectionMode) {
+                locationBeforeSelection = location;
+            } else {
+                applyUserLocation(location);
+                mapViewer.setAddressLocation(userPosition);
+                moveUserMarker();
+            }
+            StartupTimer.markStage("user location");
+        }, SwingUtilities::invokeLater);
+
+        CompletableFuture<Void> groupsReady = locationsStage.handleAsync((loaded, error) -> {
+            StudyLocationChangeFeed.Snapshot snapshot = loaded;
+            if (error != null) {
+                // Only this first load falls back to sample data; the user location stage never fails
+                System.err.println("Database error: " + AsyncStudyLocationDao.unwrap(error).getMessage());
+                snapshot = loadSampleDataAround(userLocationStage.join());
+            }
+            applyStudyLocations(snapshot);
+            if (isLocationSelectionMode) {
+                updateDistances(userLatitude, userLongitude);
+            }
+            updateGroupsList();
+            StartupTimer.markStage("study locations");
+            return null;
+        }, SwingUtilities::invokeLater);
+
+        CompletableFuture.allOf(headerReady, userLocationReady, groupsReady).whenComplete((ignored, error) -> {
+            if (error != null) {
+                System.err.println("Startup loading failed: " + error.getMessage());
+            }
+            SwingUtilities.invokeLater(StartupTimer::markInteractive);
+            runNetworkDiagnosticsInBackground();
+            startChangePolling();
+        });
+    }
+
+    /**
+     * Network diagnostics only log to the console, so they never hold up the UI.
+     */
+    private void runNetworkDiagnosticsInBackground() {
+        if (!AppConfig.isNetworkDiagnosticsEnabled()) {
+            return;
+        }
+        Thread diagnostics = new Thread(() -> {
+            System.out.println("=== NETWORK DIAGNOSTICS ===");
+            checkSecurityPolicy();
+            testFirewallConnectivity();
+            testNetworkConnectivity();
+            System.out.println("=== END DIAGNOSTICS ===");
+        }, "network-diagnostics");
+        diagnostics.setDaemon(true);
+        diagnostics.start();
     }
 
     // ---------------- Network diagnostics ----------------
@@ -180,98 +311,277 @@ public class MapApp extends JFrame implements ActionListener {
 
     // ---------------- Load / DB helpers ----------------
 
-    private void loadStudentData() {
-        try {
-            if (dbHelper.testConnection()) {
-                currentStudent = dbHelper.loadCurrentStudent();
-                if (currentStudent == null) {
-                    System.out.println("No student data found, using default");
-                    currentStudent = new Student();
-                }
-            } else {
-                System.err.println("Database connection failed, using default student data");
-                currentStudent = new Student();
-            }
-        } catch (Exception e) {
-            System.err.println("Error loading student data: " + e.getMessage());
-            currentStudent = new Student();
-        }
+    /**
+     * Resolve the student using this machine and make it the current session.
+     * Falls back to the default student if the lookup fails or times out.
+     */
+    private CompletableFuture<StudentSession> loadStudentData() {
+        return asyncDb.resolveStudentSession()
+                .exceptionally(error -> {
+                    System.err.println("Error loading student data, using default student data: "
+                            + AsyncStudyLocationDao.unwrap(error).getMessage());
+                    return StudentSession.of(new Student());
+                })
+                .thenApply(session -> {
+                    StudentSession.setCurrent(session);
+                    System.out.println("Loaded student: " + session.getStudent().getFullName() + " " + session);
+                    return session;
+                });
+    }
 
-        System.out.println("Loaded student: " + currentStudent.getFullName());
+    /**
+     * Loads the study locations within the search radius of the given position.
+     * Blocks, so it only runs on the asyncDb executor.
+     * @param userLocation { latitude, longitude }
+     * @return locations with distances (meters) filled in, closest first, and
+     *         the change log version read before loading them
+     * @throws SQLException if the database is unavailable or the query fails
+     */
+    private StudyLocationChangeFeed.Snapshot loadStudyLocationsFromDatabase(double[] userLocation)
+            throws SQLException {
+        if (!dbHelper.testConnection()) {
+            throw new SQLException("Database connection failed");
+        }
+        // Read the change feed's version first so changes made during the load are polled again
+        long version = readChangeVersion();
+        List<StudyLocation> locations = dbHelper.loadStudyLocationsWithin(userLocation[0], userLocation[1],
+                AppConfig.getSearchRadiusMeters());
+        System.out.println("Loaded " + locations.size() + " study locations from Derby database");
+        if (version >= 0) {
+            changeFeed.start(version);
+        }
+        return new StudyLocationChangeFeed.Snapshot(locations, version);
     }
 
-    private void initializeDatabase() {
-        studyLocations = new ArrayList<>();
+    /**
+     * loadStudyLocationsFromDatabase on the database executor. Fails on a
+     * database error, timeout or rejection; the caller decides what to fall back to.
+     */
+    private CompletableFuture<StudyLocationChangeFeed.Snapshot> loadStudyLocationsAround(double[] userLocation) {
+        return asyncDb.submit("Loading study locations", () -> loadStudyLocationsFromDatabase(userLocation));
+    }
 
-        try {
-            if (dbHelper.testConnection()) {
-                studyLocations = dbHelper.loadStudyLocationsWithDistance(userLatitude, userLongitude);
+    /**
+     * Install a full load, then re-apply the deltas polled while it was loading
+     * that are newer than it, so an older snapshot never undoes them.
+     */
+    private void applyStudyLocations(StudyLocationChangeFeed.Snapshot snapshot) {
+        List<StudyLocation> locations = snapshot.getLocations();
+        studyLocations = locations;
+        distanceEngine = DistanceEngine.of(locations);
+        // Waypoints, painter and spatial index follow the diff
+        waypointStore.sync(locations);
+        queryPlanner = new LocationQueryPlanner(locations, spatialIndex, recommendationRanker);
+        loadedVersion = snapshot.getVersion();
+
+        List<StudyLocationChangeFeed.Changes> newer = new ArrayList<>(changesDuringReload);
+        changesDuringReload.clear();
+        for (StudyLocationChangeFeed.Changes changes : newer) {
+            applyStudyLocationChanges(changes);
+        }
+    }
 
-                for (StudyLocation location : studyLocations) {
-                    location.setDistance(calculateDistance(userLatitude, userLongitude,
-                            location.getLatitude(), location.getLongitude()));
-                }
+    /**
+     * Recalculate distances for the new position right away, then re-run the
+     * radius query around it in the background (sample data has no server to query).
+     */
+    private void reloadStudyLocations() {
+        updateDistances(userLatitude, userLongitude);
+        updateGroupsList();
+        if (usingSampleData) {
+            return;
+        }
 
-                System.out.println("Loaded " + studyLocations.size() + " study locations from Derby database");
-            } else {
-                throw new Exception("Database connection failed");
+        // Only the latest position matters: drop an older reload that has not finished
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+        }
+        double[] origin = {userLatitude, userLongitude};
+        CompletableFuture<StudyLocationChangeFeed.Snapshot> reload =
+                asyncDb.submit("Reloading study locations", () -> loadStudyLocationsFromDatabase(origin));
+        pendingReload = reload;
+        // Deltas applied before now are older than the version this reload will read
+        changesDuringReload.clear();
+
+        AsyncStudyLocationDao.onEdt(reload, snapshot -> {
+            pendingReload = null;
+            applyStudyLocations(snapshot);
+            // The query already set distances from origin; only redo them if the user moved since
+            if (userLatitude != origin[0] || userLongitude != origin[1]) {
+                updateDistances(userLatitude, userLongitude);
             }
+            updateGroupsList();
+        }, error -> {
+            pendingReload = null;
+            changesDuringReload.clear();
+            System.err.println("Reloading study locations failed, keeping the current list: "
+                    + error.getMessage());
+        });
+    }
+
+    // ---------------- Change feed ----------------
 
+    /**
+     * @return the change feed's current version, or -1 if it cannot be used
+     */
+    private long readChangeVersion() {
+        try {
+            return changeFeed.currentVersion();
         } catch (Exception e) {
-            System.err.println("Database error: " + e.getMessage());
-            loadSampleData();
+            System.err.println("Study location change feed unavailable: " + e.getMessage());
+            return -1;
         }
     }
 
-    private void loadSampleData() {
-        studyLocations.add(new StudyLocation(1, "ADF2625 GROUP", "Library", "Library Building",
-                -33.930505201808685, 18.430816189682822, 5));
-
-        studyLocations.add(new StudyLocation(2, "MAF Group", "Library", "Library Building",
-                -33.93009832484135, 18.430670728029888, 4));
+    /**
+     * Poll the change feed in the background. The first poll is delayed by a
+     * random part of the interval so lab machines started together do not poll
+     * the server in step.
+     */
+    private void startChangePolling() {
+        long interval = AppConfig.getSyncIntervalMillis();
+        if (interval <= 0 || usingSampleData || !changeFeed.isStarted()) {
+            return;
+        }
+        long initialDelay = interval + ThreadLocalRandom.current().nextLong(interval);
+        changePoller.scheduleWithFixedDelay(this::pollChanges, initialDelay, interval, TimeUnit.MILLISECONDS);
+        System.out.println("Polling study location changes every " + interval + " ms");
+    }
 
-        studyLocations.add(new StudyLocation(3, "PRJ152S", "Engineering Lab", "Engineering Building",
-                -33.930877181287876, 18.42936060636949, 6));
+    /**
+     * Runs on the poller thread; non-empty deltas are applied on the EDT.
+     * Failures are logged once until polling recovers. An expired feed is
+     * restarted by a full reload, retried each interval until one succeeds.
+     */
+    private void pollChanges() {
+        if (!changeFeed.isStarted()) {
+            SwingUtilities.invokeLater(this::reloadExpiredChanges);
+            return;
+        }
+        try {
+            StudyLocationChangeFeed.Changes changes = changeFeed.poll();
+            if (changePollFailing) {
+                changePollFailing = false;
+                System.out.println("Study location change polling recovered");
+            }
+            if (changes.isExpired()) {
+                System.err.println("Study location change log no longer reaches version "
+                        + changes.getVersion() + ", reloading");
+                SwingUtilities.invokeLater(this::reloadExpiredChanges);
+            } else if (!changes.isEmpty()) {
+                System.out.println("Study location changes: " + changes);
+                SwingUtilities.invokeLater(() -> applyStudyLocationChanges(changes));
+            }
+        } catch (Exception e) {
+            if (!changePollFailing) {
+                changePollFailing = true;
+                System.err.println("Study location change polling failed: " + e.getMessage());
+            }
+        }
+    }
 
-        studyLocations.add(new StudyLocation(4, "Business Practice", "Commerce Building", "Commerce Building",
-                -33.930204714751454, 18.42946654578125, 4));
+    /**
+     * Full reload for an expired change feed; it starts the feed again. Leaves
+     * a reload that is already running to do that.
+     */
+    private void reloadExpiredChanges() {
+        if (pendingReload == null) {
+            reloadStudyLocations();
+        }
+    }
 
-        studyLocations.add(new StudyLocation(5, "Proff Com", "E-Learning Center", "E-Learning Building",
-                -33.92893680677932, 18.42840885211103, 3));
+    /**
+     * Apply a delta to the loaded groups. Only changed groups get new objects,
+     * so only their waypoints and list rows are refreshed. Groups that moved
+     * out of the search radius are dropped like deletes. Deltas no newer than
+     * the loaded groups are skipped; ones arriving while a reload runs are kept
+     * to be re-applied over its snapshot.
+     */
+    private void applyStudyLocationChanges(StudyLocationChangeFeed.Changes changes) {
+        if (changes.getVersion() <= loadedVersion) {
+            // Polled before a newer snapshot was read, which already includes it
+            return;
+        }
+        loadedVersion = changes.getVersion();
+        if (pendingReload != null) {
+            changesDuringReload.add(changes);
+        }
 
+        Map<Integer, StudyLocation> byId = new LinkedHashMap<>();
         for (StudyLocation location : studyLocations) {
-            location.setDistance(calculateDistance(userLatitude, userLongitude,
-                    location.getLatitude(), location.getLongitude()));
+            byId.put(location.getId(), location);
         }
 
+        double radius = AppConfig.getSearchRadiusMeters();
+        for (StudyLocation location : changes.getUpserted()) {
+            double distance = DistanceEngine.haversineMeters(userLatitude, userLongitude,
+                    location.getLatitude(), location.getLongitude());
+            if (distance <= radius) {
+                location.setDistance(distance);
+                byId.put(location.getId(), location);
+                waypointStore.upsert(location);
+            } else if (byId.remove(location.getId()) != null) {
+                waypointStore.remove(location.getId());
+            }
+        }
+        for (int id : changes.getDeletedIds()) {
+            if (byId.remove(id) != null) {
+                waypointStore.remove(id);
+            }
+        }
+
+        studyLocations = new ArrayList<>(byId.values());
+        distanceEngine = DistanceEngine.of(studyLocations);
+        queryPlanner = new LocationQueryPlanner(studyLocations, spatialIndex, recommendationRanker);
+        updateGroupsList(true);
+    }
+
+    /**
+     * Sample data with distances from the given position; the app stays on it
+     * from now on. Runs on the EDT, at startup only.
+     */
+    private StudyLocationChangeFeed.Snapshot loadSampleDataAround(double[] userLocation) {
+        List<StudyLocation> locations = EmbeddedDatabase.sampleStudyLocations();
         System.out.println("Loaded sample data with updated coordinates");
+        DistanceEngine.of(locations).applyDistances(userLocation[0], userLocation[1]);
+        usingSampleData = true;
+        return new StudyLocationChangeFeed.Snapshot(locations, -1);
     }
 
     /**
-     * Loads user location from database using dbHelper (keeps single method)
+     * Set the distance of every loaded study location from the given position.
      */
-    private void loadUserLocationFromDatabase() {
-        try {
-            double[] location = dbHelper.loadUserLocation();
+    private void updateDistances(double latitude, double longitude) {
+        distanceEngine.applyDistances(latitude, longitude);
+    }
 
-            if (location != null && location.length == 2) {
-                userLatitude = location[0];
-                userLongitude = location[1];
-                userPosition = new GeoPosition(userLatitude, userLongitude);
-                System.out.println("Loaded user location from DB: " + userLatitude + ", " + userLongitude);
-            } else {
-                // Use default Cape Town coordinates
-                userLatitude = -33.93080102488844;
-                userLongitude = 18.430230425585137;
-                userPosition = new GeoPosition(userLatitude, userLongitude);
-                System.out.println("No saved location, using default");
-            }
-        } catch (Exception e) {
-            System.err.println("Error reading user location from DB: " + e.getMessage());
-            userLatitude = -33.93080102488844;
-            userLongitude = 18.430230425585137;
-            userPosition = new GeoPosition(userLatitude, userLongitude);
-        }
+    /**
+     * Loads this machine's student's saved location by student number, so it
+     * does not wait for the student lookup.
+     * @return { latitude, longitude } - the saved location or the default
+     */
+    private CompletableFuture<double[]> loadUserLocationFromDatabase() {
+        return asyncDb.loadUserLocationByStudentNumber(AppConfig.getStudentNumber())
+                .handle((location, error) -> {
+                    if (error != null) {
+                        System.err.println("Error reading user location from DB: "
+                                + AsyncStudyLocationDao.unwrap(error).getMessage());
+                    } else if (location != null && location.length == 2) {
+                        System.out.println("Loaded user location from DB: " + location[0] + ", " + location[1]);
+                        return location;
+                    } else {
+                        System.out.println("No saved location, using default");
+                    }
+
+                    // Use default Cape Town coordinates
+                    return new double[]{DEFAULT_LATITUDE, DEFAULT_LONGITUDE};
+                });
+    }
+
+    private void applyUserLocation(double[] location) {
+        userLatitude = location[0];
+        userLongitude = location[1];
+        userPosition = new GeoPosition(userLatitude, userLongitude);
     }
 
     // ---------------- UI: Header & Navigation ----------------
@@ -287,7 +597,7 @@ public class MapApp extends JFrame implements ActionListener {
         userDetailsPanel.setBackground(Color.WHITE);
 
         // Dynamic User Icon with first letter of name
-        JPanel iconPanel = new JPanel() {
+        userIconPanel = new JPanel() {
             @Override
             protected void paintComponent(Graphics g) {
                 super.paintComponent(g);
@@ -306,24 +616,24 @@ public class MapApp extends JFrame implements ActionListener {
                 g2d.drawString(text, x, y);
             }
         };
-        iconPanel.setPreferredSize(new Dimension(40, 40));
-        iconPanel.setOpaque(false);
+        userIconPanel.setPreferredSize(new Dimension(40, 40));
+        userIconPanel.setOpaque(false);
 
         // User text info panel with dynamic data
         JPanel textPanel = new JPanel();
         textPanel.setLayout(new BoxLayout(textPanel, BoxLayout.Y_AXIS));
         textPanel.setBackground(Color.WHITE);
 
-        JLabel nameLabel = new JLabel(currentStudent.getFullName());
+        nameLabel = new JLabel(currentStudent.getFullName());
         nameLabel.setFont(new Font("Arial", Font.BOLD, 14));
         nameLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
 
-        JLabel studentNoLabel = new JLabel(currentStudent.getStudentNumber());
+        studentNoLabel = new JLabel(currentStudent.getStudentNumber());
         studentNoLabel.setFont(new Font("Arial", Font.PLAIN, 11));
         studentNoLabel.setForeground(Color.GRAY);
         studentNoLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
 
-        JLabel emailLabel = new JLabel(currentStudent.getEmail());
+        emailLabel = new JLabel(currentStudent.getEmail());
         emailLabel.setFont(new Font("Arial", Font.PLAIN, 11));
         emailLabel.setForeground(Color.GRAY);
         emailLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
@@ -333,7 +643,7 @@ public class MapApp extends JFrame implements ActionListener {
         textPanel.add(studentNoLabel);
         textPanel.add(emailLabel);
 
-        userDetailsPanel.add(iconPanel);
+        userDetailsPanel.add(userIconPanel);
         userDetailsPanel.add(textPanel);
 
         // Right section: Logo
@@ -366,6 +676,16 @@ public class MapApp extends JFrame implements ActionListener {
         add(headerPanel);
     }
 
+    /**
+     * Refresh the header once the student has been loaded.
+     */
+    private void updateHeader() {
+        nameLabel.setText(currentStudent.getFullName());
+        studentNoLabel.setText(currentStudent.getStudentNumber());
+        emailLabel.setText(currentStudent.getEmail());
+        userIconPanel.repaint();
+    }
+
     private void createNavigationButtons() {
         JPanel navPanel = new JPanel(new GridLayout(1, 6, 5, 0));
         navPanel.setBounds(15, 70, 840, 45);
@@ -468,7 +788,10 @@ public class MapApp extends JFrame implements ActionListener {
         mapPanel.setBackground(Color.WHITE);
         mapPanel.setBorder(BorderFactory.createLineBorder(Color.GRAY));
 
-        mapViewer = new JXMapViewer();
+        // Drag and wheel input is applied once per frame; paint times go into a histogram
+        InteractiveMapViewer interactiveMapViewer = new InteractiveMapViewer();
+        interactionScheduler = interactiveMapViewer.getInteractionScheduler();
+        mapViewer = interactiveMapViewer;
         TileFactoryInfo info = new TileFactoryInfo(
                 1, 15, 17,
                 256, true, true,
@@ -480,17 +803,21 @@ public class MapApp extends JFrame implements ActionListener {
                 return String.format("https://tile.openstreetmap.org/%d/%d/%d.png", z, x, y);
             }
         };
-        DefaultTileFactory tileFactory = new DefaultTileFactory(info);
-        System.setProperty("http.agent", "LearnHub/1.0 Java");
+        // Visible tiles load first, then the ones ahead of a pan and the next zoom levels
+        tileFactory = new PrefetchTileFactory(info);
+
+        // Keep downloaded tiles on disk so they render immediately on the next launch
+        tileCache = DiskTileCache.fromConfig();
+        tileFactory.setLocalCache(createTileSource(tileCache));
         mapViewer.setTileFactory(tileFactory);
 
         mapViewer.setZoom(8);
         mapViewer.setAddressLocation(userPosition);
+        tileFactory.attach(mapViewer);
 
         waypointPainter = new StudyLocationWaypointPainter();
-        waypoints = new HashSet<>();
-
-        setupMapWaypoints();
+        interactionScheduler.addListener(waypointPainter::setFastRendering);
+        createWaypointStore();
 
         List<Painter<JXMapViewer>> painters = new ArrayList<>();
         painters.add(waypointPainter);
@@ -502,6 +829,26 @@ public class MapApp extends JFrame implements ActionListener {
         add(mapPanel);
     }
 
+    /**
+     * Pick the tile source from configuration: the packed offline archive (falling
+     * back to the disk cache / online tiles it lacks) or just the disk cache.
+     * Online tiles are downloaded and revalidated by an HttpTileLoader.
+     */
+    private LocalCache createTileSource(DiskTileCache diskCache) {
+        tileLoader = HttpTileLoader.fromConfig(diskCache);
+        if ("archive".equalsIgnoreCase(AppConfig.getTileSource())) {
+            try {
+                PackedTileArchive archive = PackedTileArchive.open(AppConfig.getTileArchive());
+                System.out.println("Using offline tile archive " + archive.getFile() +
+                        " (" + archive.getTileCount() + " tiles)");
+                return new ArchiveTileSource(archive, tileLoader);
+            } catch (IOException e) {
+                System.err.println("Could not open tile archive, using online tiles: " + e.getMessage());
+            }
+        }
+        return tileLoader;
+    }
+
     private void createLocationModePanel() {
         locationModePanel = new JPanel(new BorderLayout());
         locationModePanel.setBounds(20, 155, 830, 40);
@@ -546,6 +893,7 @@ public class MapApp extends JFrame implements ActionListener {
 
     private void toggleLocationSelectionMode() {
         isLocationSelectionMode = true;
+        locationBeforeSelection = new double[]{userLatitude, userLongitude};
         locationModePanel.setVisible(true);
         setLocationButton.setEnabled(false);
 
@@ -571,42 +919,33 @@ public class MapApp extends JFrame implements ActionListener {
 
     private void confirmLocationSelection() {
         if (isLocationSelectionMode) {
-            // Save the current user position to database using dbHelper
-            if (dbHelper.saveUserLocation(userPosition.getLatitude(), userPosition.getLongitude())) {
-                JOptionPane.showMessageDialog(
-                        this,
-                        String.format("Location saved successfully!\nLat: %.6f, Lon: %.6f",
-                                userPosition.getLatitude(),
-                                userPosition.getLongitude()),
-                        "Location Confirmed",
-                        JOptionPane.INFORMATION_MESSAGE
-                );
-
-                // Recalculate distances for all study locations
-                for (StudyLocation location : studyLocations) {
-                    location.setDistance(calculateDistance(userLatitude, userLongitude,
-                            location.getLatitude(), location.getLongitude()));
-                }
+            // Saved in the background; bursts of confirmations become one write
+            UserLocationWriter.getShared().submit(StudentSession.getCurrent().getStudentId(),
+                    userPosition.getLatitude(), userPosition.getLongitude());
+            JOptionPane.showMessageDialog(
+                    this,
+                    String.format("Location saved successfully!\nLat: %.6f, Lon: %.6f",
+                            userPosition.getLatitude(),
+                            userPosition.getLongitude()),
+                    "Location Confirmed",
+                    JOptionPane.INFORMATION_MESSAGE
+            );
 
-                // Refresh the UI
-                updateGroupsList();
-                setupMapWaypoints();
-            } else {
-                JOptionPane.showMessageDialog(
-                        this,
-                        "Failed to save location to database.",
-                        "Error",
-                        JOptionPane.ERROR_MESSAGE
-                );
-            }
+            // Reload groups around the new position and refresh the UI
+            reloadStudyLocations();
+            moveUserMarker();
 
             exitLocationSelectionMode();
         }
     }
 
     private void cancelLocationSelection() {
-        // Reload original location from database
-        loadUserLocationFromDatabase();
+        // Back to where the user was; no database read, and a confirmed
+        // location still waiting in the writer is not replaced by an older one
+        applyUserLocation(locationBeforeSelection);
+        moveUserMarker();
+        updateDistances(userLatitude, userLongitude);
+        updateGroupsList();
         exitLocationSelectionMode();
 
         JOptionPane.showMessageDialog(
@@ -669,6 +1008,7 @@ public class MapApp extends JFrame implements ActionListener {
                 if (SwingUtilities.isLeftMouseButton(e)) {
                     isDragging = false;
                     mapViewer.setCursor(Cursor.getDefaultCursor());
+                    hoverTarget = null;
                 }
             }
 
@@ -687,37 +1027,19 @@ public class MapApp extends JFrame implements ActionListener {
             @Override
             public void mouseDragged(MouseEvent e) {
                 if (isDragging && lastMousePoint != null) {
-                    handleMousePanning(e.getPoint());
+                    Point currentPoint = e.getPoint();
+                    interactionScheduler.drag(currentPoint.x - lastMousePoint.x, currentPoint.y - lastMousePoint.y);
+                    lastMousePoint = currentPoint;
                 }
             }
-        });
 
-        mapViewer.addMouseWheelListener(e -> {
-            if (e.getWheelRotation() < 0) {
-                zoomIn();
-            } else {
-                zoomOut();
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                updateHoverTooltip(e.getPoint());
             }
         });
-    }
 
-    private void handleMousePanning(Point currentPoint) {
-        if (lastMousePoint == null) return;
-
-        int deltaX = currentPoint.x - lastMousePoint.x;
-        int deltaY = currentPoint.y - lastMousePoint.y;
-
-        GeoPosition currentCenter = mapViewer.getCenterPosition();
-        Point2D centerPixel = mapViewer.getTileFactory().geoToPixel(currentCenter, mapViewer.getZoom());
-
-        Point2D newCenterPixel = new Point2D.Double(
-                centerPixel.getX() - deltaX,
-                centerPixel.getY() - deltaY
-        );
-
-        GeoPosition newCenter = mapViewer.getTileFactory().pixelToGeo(newCenterPixel, mapViewer.getZoom());
-        mapViewer.setCenterPosition(newCenter);
-        lastMousePoint = currentPoint;
+        mapViewer.addMouseWheelListener(e -> interactionScheduler.wheel(e.getPreciseWheelRotation()));
     }
 
     private void centerMapOnClick(Point clickPoint) {
@@ -735,9 +1057,8 @@ public class MapApp extends JFrame implements ActionListener {
             userLongitude = clickedPosition.getLongitude();
             userPosition = clickedPosition;
 
-            // Update waypoints to show new user location
-            setupMapWaypoints();
-            mapViewer.repaint();
+            // Move the user marker to the new location
+            moveUserMarker();
 
             // Update the instruction label (if present)
             Component[] components = locationModePanel.getComponents();
@@ -751,32 +1072,80 @@ public class MapApp extends JFrame implements ActionListener {
             return;
         }
 
-        // Original waypoint click logic for study locations
+        // Clicking a cluster badge zooms in until it splits
         Point2D point = e.getPoint();
-        for (StudyLocationWaypoint waypoint : waypoints) {
-            if (waypoint.getStudyLocation() != null) {
-                Point2D waypointPoint = mapViewer.convertGeoPositionToPoint(waypoint.getPosition());
-                double distance = point.distance(waypointPoint);
+        MarkerClusterer.Cluster cluster = waypointPainter.findClusterAt(mapViewer, point);
+        if (cluster != null) {
+            zoomIntoCluster(cluster);
+            return;
+        }
 
-                if (distance < 20) {
-                    showWaypointInfo(waypoint.getStudyLocation());
-                    break;
-                }
+        // Study location marker under the click (resolved by the painter's pick index)
+        StudyLocationWaypoint waypoint = waypointPainter.findWaypointAt(mapViewer, point);
+        if (waypoint != null && waypoint.getStudyLocation() != null) {
+            showWaypointInfo(waypoint.getStudyLocation());
+        }
+    }
+
+    /**
+     * Show a tooltip for the marker or cluster under the pointer.
+     * The text only changes when the pointer moves onto a different marker.
+     */
+    private void updateHoverTooltip(Point point) {
+        Object target = waypointPainter.findClusterAt(mapViewer, point);
+        if (target == null) {
+            target = waypointPainter.findWaypointAt(mapViewer, point);
+        }
+        if (target == hoverTarget) {
+            return;
+        }
+        hoverTarget = target;
+
+        String text = null;
+        if (target instanceof MarkerClusterer.Cluster) {
+            MarkerClusterer.Cluster cluster = (MarkerClusterer.Cluster) target;
+            text = String.format("<html><b>%d study groups</b><br>%d members<br><i>Click to zoom in</i></html>",
+                    cluster.getCount(), cluster.getMemberSum());
+        } else if (target instanceof StudyLocationWaypoint) {
+            StudyLocation location = ((StudyLocationWaypoint) target).getStudyLocation();
+            if (location != null) {
+                text = String.format("<html><b>%s</b><br>%s, %s<br>%d members &middot; %s</html>",
+                        escapeHtml(location.getGroupName()), escapeHtml(location.getLocationName()),
+                        escapeHtml(location.getBuilding()), location.getMemberCount(),
+                        formatDistance(location.getDistance()));
+            } else {
+                text = "Your location";
             }
         }
+        mapViewer.setToolTipText(text);
+        if (!isDragging) {
+            mapViewer.setCursor(target != null
+                    ? Cursor.getPredefinedCursor(Cursor.HAND_CURSOR)
+                    : Cursor.getDefaultCursor());
+        }
     }
 
-    private void zoomIn() {
-        int currentZoom = mapViewer.getZoom();
-        if (currentZoom > 1) {
-            mapViewer.setZoom(currentZoom - 1);
+    private static String escapeHtml(String text) {
+        if (text == null) {
+            return "";
         }
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
     }
 
-    private void zoomOut() {
+    private void zoomIntoCluster(MarkerClusterer.Cluster cluster) {
+        MarkerClusterer clusterer = waypointPainter.getClusterer();
+        int splitLevel = clusterer.getSplitLevel(cluster);
+        int zoom = splitLevel >= 0
+                ? MarkerClusterer.zoomForLevel(mapViewer.getTileFactory(), splitLevel)
+                : 1; // Groups at the same spot only separate at the most detailed zoom
+        mapViewer.setZoom(Math.max(1, Math.min(zoom, mapViewer.getZoom() - 1)));
+        mapViewer.setAddressLocation(cluster.getPosition());
+    }
+
+    private void zoomIn() {
         int currentZoom = mapViewer.getZoom();
-        if (currentZoom < 15) {
-            mapViewer.setZoom(currentZoom + 1);
+        if (currentZoom > 1) {
+            mapViewer.setZoom(currentZoom - 1);
         }
     }
 
@@ -793,46 +1162,41 @@ public class MapApp extends JFrame implements ActionListener {
 
     // ---------------- Waypoints ----------------
 
-    private void setupMapWaypoints() {
-        waypoints = new HashSet<>();
-
-        StudyLocationWaypoint userWaypoint = new StudyLocationWaypoint(
-                "Your Location", userPosition, Color.RED, true
-        );
-        waypoints.add(userWaypoint);
-
-        for (StudyLocation location : studyLocations) {
-            GeoPosition position = new GeoPosition(location.getLatitude(), location.getLongitude());
-            StudyLocationWaypoint waypoint = new StudyLocationWaypoint(
-                    location.getGroupName(), position, Color.BLUE, false
-            );
-            waypoint.setStudyLocation(location);
-            waypoints.add(waypoint);
-        }
+    /**
+     * Create the persistent waypoint store and register the painter and the
+     * spatial index for its change events.
+     */
+    private void createWaypointStore() {
+        waypointStore = new WaypointStore(userPosition);
+        waypointStore.addListener(waypointPainter);
+        waypointStore.addListener(new WaypointStore.Listener() {
+            @Override
+            public void waypointAdded(StudyLocationWaypoint waypoint) {
+                spatialIndex.insert(waypoint.getStudyLocation());
+            }
 
-        waypointPainter.setWaypoints(waypoints);
-        mapViewer.repaint();
-    }
+            @Override
+            public void waypointRemoved(StudyLocationWaypoint waypoint) {
+                spatialIndex.remove(waypoint.getStudyLocation().getId());
+            }
 
-    private void updateMapWaypoints() {
-        waypoints.clear();
+            @Override
+            public void waypointUpdated(StudyLocationWaypoint waypoint) {
+                spatialIndex.update(waypoint.getStudyLocation());
+            }
+        });
 
-        StudyLocationWaypoint userWaypoint = new StudyLocationWaypoint(
-                "Your Location", userPosition, Color.RED, true
-        );
-        waypoints.add(userWaypoint);
+        // Re-ranks only the groups that change, and lazily after the user moves
+        waypointStore.addListener(recommendationRanker);
+        recommendationRanker.setOrigin(userLatitude, userLongitude);
 
-        List<StudyLocation> filteredLocations = getFilteredAndSortedLocations();
-        for (StudyLocation location : filteredLocations) {
-            GeoPosition position = new GeoPosition(location.getLatitude(), location.getLongitude());
-            StudyLocationWaypoint waypoint = new StudyLocationWaypoint(
-                    location.getGroupName(), position, Color.BLUE, false
-            );
-            waypoint.setStudyLocation(location);
-            waypoints.add(waypoint);
-        }
+        Set<StudyLocationWaypoint> initial = new HashSet<>();
+        initial.add(waypointStore.getUserWaypoint());
+        waypointPainter.setWaypoints(initial);
+    }
 
-        waypointPainter.setWaypoints(waypoints);
+    private void moveUserMarker() {
+        waypointStore.moveUser(userPosition);
         mapViewer.repaint();
     }
 
@@ -858,7 +1222,7 @@ public class MapApp extends JFrame implements ActionListener {
         add(groupsLabel);
 
         JPanel controlsPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
-        controlsPanel.setBounds(500, 375, 350, 25);
+        controlsPanel.setBounds(300, 375, 550, 25);
         controlsPanel.setBackground(new Color(239, 239, 239));
 
         listBtn = new JButton("LIST");
@@ -880,21 +1244,16 @@ public class MapApp extends JFrame implements ActionListener {
         gridBtn.addActionListener(this);
         gridBtn.setActionCommand("GRID");
 
-        // Sort dropdown
-        sortCombo = new JComboBox<>();
-        sortCombo.addItem("SORT BY DISTANCE");
-        sortCombo.addItem("SORT BY NAME");
-        sortCombo.addItem("SORT BY MEMBERS");
-        sortCombo.addItem("WITHIN 100 M");
-        sortCombo.addItem("WITHIN 500 M");
-        sortCombo.addItem("WITHIN 1 KM");
-        sortCombo.setPreferredSize(new Dimension(140, 25));
-        sortCombo.setFont(new Font("Arial", Font.PLAIN, 10));
-        sortCombo.addActionListener(this);
+        // Radius, sort order and limit are independent parts of one query
+        radiusCombo = createQueryCombo(110, "ANY DISTANCE", "WITHIN 100 M", "WITHIN 500 M", "WITHIN 1 KM");
+        sortCombo = createQueryCombo(130, "SORT BY DISTANCE", "SORT BY NAME", "SORT BY MEMBERS", "RECOMMENDED");
+        limitCombo = createQueryCombo(80, "SHOW ALL", "TOP 10", "TOP 20", "TOP 50");
 
         controlsPanel.add(listBtn);
         controlsPanel.add(gridBtn);
+        controlsPanel.add(radiusCombo);
         controlsPanel.add(sortCombo);
+        controlsPanel.add(limitCombo);
 
         add(controlsPanel);
 
@@ -902,81 +1261,98 @@ public class MapApp extends JFrame implements ActionListener {
         createGroupsList();
     }
 
-    private void updateGroupsList() {
-        createGroupsContent();
-        updateMapWaypoints();
+    private JComboBox<String> createQueryCombo(int width, String... items) {
+        JComboBox<String> combo = new JComboBox<>(items);
+        combo.setPreferredSize(new Dimension(width, 25));
+        combo.setFont(new Font("Arial", Font.PLAIN, 10));
+        combo.addActionListener(this);
+        return combo;
     }
 
-    private List<StudyLocation> getFilteredAndSortedLocations() {
-        List<StudyLocation> filtered = new ArrayList<>(studyLocations);
-        String selectedSort = (String) sortCombo.getSelectedItem();
-
-        if (selectedSort == null) selectedSort = "SORT BY DISTANCE";
-
-        // Apply distance filters (converted to meters)
-        if (selectedSort.equals("WITHIN 100 M")) {
-            filtered.removeIf(location -> location.getDistance() > 100);
-        } else if (selectedSort.equals("WITHIN 500 M")) {
-            filtered.removeIf(location -> location.getDistance() > 500);
-        } else if (selectedSort.equals("WITHIN 1 KM")) {
-            filtered.removeIf(location -> location.getDistance() > 1000);
-        }
+    /**
+     * Apply the current query to the groups list and the map markers.
+     */
+    private void updateGroupsList() {
+        updateGroupsList(false);
+    }
 
-        // Apply sorting
-        if (selectedSort.equals("SORT BY DISTANCE") || selectedSort.startsWith("WITHIN")) {
-            filtered.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
-        } else if (selectedSort.equals("SORT BY NAME")) {
-            filtered.sort((a, b) -> a.getGroupName().compareToIgnoreCase(b.getGroupName()));
-        } else if (selectedSort.equals("SORT BY MEMBERS")) {
-            filtered.sort((a, b) -> Integer.compare(b.getMemberCount(), a.getMemberCount()));
+    /**
+     * @param changedRowsOnly repaint only list rows whose group object changed
+     *                        (after a change feed delta; distances were not touched)
+     */
+    private void updateGroupsList(boolean changedRowsOnly) {
+        LocationQuery query = buildQuery();
+        List<StudyLocation> filtered = queryPlanner.execute(query, userLatitude, userLongitude);
+        if (changedRowsOnly) {
+            groupsModel.updateLocations(filtered);
+        } else {
+            groupsModel.setLocations(filtered);
         }
-
-        return filtered;
+        waypointStore.applyFilter(filtered);
+        // Recommended ordering also marks the best few on the map
+        boolean recommended = query.getSortKeys().contains(LocationQuery.SortKey.RECOMMENDED);
+        waypointStore.applyHighlight(recommended
+                ? filtered.subList(0, Math.min(HIGHLIGHTED_RECOMMENDATIONS, filtered.size()))
+                : Collections.<StudyLocation>emptyList());
+        mapViewer.repaint();
     }
 
-    private void createGroupsList() {
-        createGroupsContent();
-    }
+    /**
+     * Build the query selected in the radius, sort and limit combos.
+     * Name and member orders fall back to distance for ties (recommended
+     * scores already include distance).
+     */
+    private LocationQuery buildQuery() {
+        LocationQuery.Builder query = LocationQuery.builder();
+
+        String radius = (String) radiusCombo.getSelectedItem();
+        if ("WITHIN 100 M".equals(radius)) {
+            query.within(100);
+        } else if ("WITHIN 500 M".equals(radius)) {
+            query.within(500);
+        } else if ("WITHIN 1 KM".equals(radius)) {
+            query.within(1000);
+        }
 
-    private void createGroupsContent() {
-        if (groupsScrollPane != null) {
-            remove(groupsScrollPane);
-            groupsScrollPane = null;
+        String sort = (String) sortCombo.getSelectedItem();
+        if ("SORT BY NAME".equals(sort)) {
+            query.sortBy(LocationQuery.SortKey.NAME);
+        } else if ("SORT BY MEMBERS".equals(sort)) {
+            query.sortBy(LocationQuery.SortKey.MEMBERS);
+        } else if ("RECOMMENDED".equals(sort)) {
+            query.sortBy(LocationQuery.SortKey.RECOMMENDED);
         }
+        query.sortBy(LocationQuery.SortKey.DISTANCE);
 
-        if (isGridView) {
-            createGridView();
-        } else {
-            createListView();
+        String limit = (String) limitCombo.getSelectedItem();
+        if (limit != null && limit.startsWith("TOP ")) {
+            query.limit(Integer.parseInt(limit.substring(4)));
         }
 
-        revalidate();
-        repaint();
+        return query.build();
     }
 
-    private void createListView() {
-        JPanel scrollableContent = new JPanel();
-        scrollableContent.setLayout(null);
-        scrollableContent.setBackground(GREY_BACKGROUND);
-
-        List<StudyLocation> locations = getFilteredAndSortedLocations();
-
-        int itemHeight = 70;
-        int contentHeight = Math.max(locations.size() * itemHeight + 20, 150);
-        scrollableContent.setPreferredSize(new Dimension(810, contentHeight));
-
-        for (int i = 0; i < locations.size(); i++) {
-            StudyLocation location = locations.get(i);
-            String locationText = formatDistance(location.getDistance()) + " - " + location.getBuilding();
-            String membersText = location.getMemberCount() + " MEMBERS";
-
-            createGroupItem(scrollableContent, location.getGroupName(), locationText, membersText,
-                    10, 10 + (i * itemHeight));
-        }
+    /**
+     * Build the groups list once. Only the visible rows / cards are painted (by
+     * the shared renderer); sorting, filtering and view switches update the
+     * model and layout of this same list.
+     */
+    private void createGroupsList() {
+        groupsList = new JList<>(groupsModel);
+        groupsList.setCellRenderer(groupsRenderer);
+        groupsList.setBackground(GREY_BACKGROUND);
+        groupsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        groupsList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                handleGroupsListClick(e.getPoint());
+            }
+        });
+        applyGroupsViewMode();
 
         int scrollPaneY = mapExpanded ? 410 + (expandedMapHeight - normalMapHeight) : 410;
 
-        groupsScrollPane = new JScrollPane(scrollableContent);
+        groupsScrollPane = new JScrollPane(groupsList);
         groupsScrollPane.setBounds(20, scrollPaneY, 830, 180);
         groupsScrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
         groupsScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
@@ -985,87 +1361,41 @@ public class MapApp extends JFrame implements ActionListener {
         add(groupsScrollPane);
     }
 
-    private void createGridView() {
-        JPanel scrollableContent = new JPanel();
-        scrollableContent.setLayout(null);
-        scrollableContent.setBackground(GREY_BACKGROUND);
-
-        List<StudyLocation> locations = getFilteredAndSortedLocations();
-
-        int columns = 3;
-        int rows = (int) Math.ceil((double) locations.size() / columns);
-        int cardWidth = 260;
-        int cardHeight = 120;
-        int padding = 10;
-
-        int contentHeight = Math.max((rows * cardHeight) + ((rows + 1) * padding), 180);
-        scrollableContent.setPreferredSize(new Dimension(810, contentHeight));
-
-        for (int i = 0; i < locations.size(); i++) {
-            StudyLocation location = locations.get(i);
-            int row = i / columns;
-            int col = i % columns;
-            int x = padding + (col * (cardWidth + padding));
-            int y = padding + (row * (cardHeight + padding));
-
-            String locationText = formatDistance(location.getDistance()) + " - " + location.getBuilding();
-            String membersText = location.getMemberCount() + " MEMBERS";
-
-            createGridItem(scrollableContent, location.getGroupName(), locationText, membersText,
-                    x, y, cardWidth, cardHeight);
+    /**
+     * Switch the list between one row per group and a three-column card grid.
+     * Fixed cell sizes keep the JList from measuring every entry.
+     */
+    private void applyGroupsViewMode() {
+        groupsRenderer.setGridMode(isGridView);
+        if (isGridView) {
+            groupsList.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+            groupsList.setVisibleRowCount(-1);
+            groupsList.setFixedCellWidth(StudyLocationCellRenderer.GRID_CELL_WIDTH);
+            groupsList.setFixedCellHeight(StudyLocationCellRenderer.GRID_CELL_HEIGHT);
+        } else {
+            groupsList.setLayoutOrientation(JList.VERTICAL);
+            groupsList.setVisibleRowCount(8);
+            groupsList.setFixedCellWidth(StudyLocationCellRenderer.LIST_CELL_WIDTH);
+            groupsList.setFixedCellHeight(StudyLocationCellRenderer.LIST_CELL_HEIGHT);
         }
-
-        int scrollPaneY = mapExpanded ? 410 + (expandedMapHeight - normalMapHeight) : 410;
-
-        groupsScrollPane = new JScrollPane(scrollableContent);
-        groupsScrollPane.setBounds(20, scrollPaneY, 830, 180);
-        groupsScrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
-        groupsScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
-        groupsScrollPane.getVerticalScrollBar().setUnitIncrement(16);
-
-        add(groupsScrollPane);
+        groupsList.revalidate();
+        groupsList.repaint();
     }
 
-    private void createGridItem(JPanel parent, String groupName, String location, String members, int x, int y, int width, int height) {
-        JPanel itemPanel = new JPanel();
-        itemPanel.setBounds(x, y, width, height);
-        itemPanel.setBackground(Color.LIGHT_GRAY);
-        itemPanel.setBorder(BorderFactory.createLineBorder(Color.GRAY));
-        itemPanel.setLayout(null);
-
-        JPanel iconPanel = new JPanel();
-        iconPanel.setBounds(10, 10, 50, 50);
-        iconPanel.setBackground(Color.GRAY);
-        iconPanel.setBorder(BorderFactory.createLineBorder(Color.DARK_GRAY));
-        itemPanel.add(iconPanel);
-
-        JLabel nameLabel = new JLabel(groupName);
-        nameLabel.setBounds(70, 10, 180, 15);
-        nameLabel.setFont(new Font("Arial", Font.BOLD, 11));
-        itemPanel.add(nameLabel);
-
-        JLabel locationLabel = new JLabel("• " + location);
-        locationLabel.setBounds(70, 25, 180, 12);
-        locationLabel.setFont(new Font("Arial", Font.PLAIN, 9));
-        itemPanel.add(locationLabel);
-
-        JLabel membersLabel = new JLabel(members);
-        membersLabel.setBounds(70, 37, 100, 12);
-        membersLabel.setFont(new Font("Arial", Font.PLAIN, 9));
-        itemPanel.add(membersLabel);
-
-        JButton messageBtn = new JButton("MESSAGE");
-        messageBtn.setBounds(10, 70, 100, 20);
-        messageBtn.setBackground(BUTTON_BLUE);
-        messageBtn.setForeground(Color.BLACK);
-        messageBtn.setFont(new Font("Arial", Font.PLAIN, 8));
-        messageBtn.setBorder(BorderFactory.createEmptyBorder());
-        messageBtn.setFocusPainted(false);
-        messageBtn.setActionCommand("MESSAGE");
-        messageBtn.addActionListener(this);
-        itemPanel.add(messageBtn);
-
-        parent.add(itemPanel);
+    private void handleGroupsListClick(Point point) {
+        int index = groupsList.locationToIndex(point);
+        if (index < 0) {
+            return;
+        }
+        Rectangle cell = groupsList.getCellBounds(index, index);
+        if (cell == null || !cell.contains(point)) {
+            return;
+        }
+        Rectangle button = groupsRenderer.getMessageButtonBounds();
+        button.translate(cell.x, cell.y);
+        if (button.contains(point)) {
+            actionPerformed(new ActionEvent(groupsList, ActionEvent.ACTION_PERFORMED, "MESSAGE"));
+        }
     }
 
     private void switchToListView() {
@@ -1075,7 +1405,7 @@ public class MapApp extends JFrame implements ActionListener {
             listBtn.setForeground(Color.WHITE);
             gridBtn.setBackground(Color.WHITE);
             gridBtn.setForeground(Color.BLACK);
-            createGroupsContent();
+            applyGroupsViewMode();
         }
     }
 
@@ -1086,7 +1416,7 @@ public class MapApp extends JFrame implements ActionListener {
             gridBtn.setForeground(Color.WHITE);
             listBtn.setBackground(Color.WHITE);
             listBtn.setForeground(Color.BLACK);
-            createGroupsContent();
+            applyGroupsViewMode();
         }
     }
 
@@ -1128,48 +1458,6 @@ public class MapApp extends JFrame implements ActionListener {
         repaint();
     }
 
-    private void createGroupItem(JPanel parent, String groupName, String location, String members, int x, int y) {
-        JPanel itemPanel = new JPanel();
-        itemPanel.setBounds(x, y, 790, 60);
-        itemPanel.setBackground(Color.LIGHT_GRAY);
-        itemPanel.setBorder(BorderFactory.createLineBorder(Color.GRAY));
-        itemPanel.setLayout(null);
-
-        JPanel iconPanel = new JPanel();
-        iconPanel.setBounds(10, 10, 40, 40);
-        iconPanel.setBackground(Color.GRAY);
-        iconPanel.setBorder(BorderFactory.createLineBorder(Color.DARK_GRAY));
-        itemPanel.add(iconPanel);
-
-        JLabel nameLabel = new JLabel(groupName);
-        nameLabel.setBounds(60, 10, 250, 15);
-        nameLabel.setFont(new Font("Arial", Font.BOLD, 12));
-        itemPanel.add(nameLabel);
-
-        JLabel locationLabel = new JLabel("• " + location);
-        locationLabel.setBounds(60, 25, 250, 12);
-        locationLabel.setFont(new Font("Arial", Font.PLAIN, 10));
-        itemPanel.add(locationLabel);
-
-        JLabel membersLabel = new JLabel(members);
-        membersLabel.setBounds(60, 37, 150, 12);
-        membersLabel.setFont(new Font("Arial", Font.PLAIN, 10));
-        itemPanel.add(membersLabel);
-
-        JButton messageBtn = new JButton("MESSAGE");
-        messageBtn.setBounds(645, 20, 100, 20);
-        messageBtn.setBackground(BUTTON_BLUE);
-        messageBtn.setForeground(Color.BLACK);
-        messageBtn.setFont(new Font("Arial", Font.PLAIN, 10));
-        messageBtn.setBorder(BorderFactory.createEmptyBorder());
-        messageBtn.setFocusPainted(false);
-        messageBtn.setActionCommand("MESSAGE");
-        messageBtn.addActionListener(this);
-        itemPanel.add(messageBtn);
-
-        parent.add(itemPanel);
-    }
-
     private void createTrademark() {
         JPanel trademarkPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
         int trademarkY = mapExpanded ? 760 : 610;
@@ -1190,23 +1478,7 @@ public class MapApp extends JFrame implements ActionListener {
 
     // ---------------- Utility ----------------
 
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371000; // Radius of the earth in meters
-
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        double distance = R * c; // Distance in meters
-
-        return distance;
-    }
-
-    private String formatDistance(double distanceInMeters) {
+    static String formatDistance(double distanceInMeters) {
         if (distanceInMeters < 1000) {
             return String.format("%.0f M", distanceInMeters);
         } else {
@@ -1243,7 +1515,7 @@ public class MapApp extends JFrame implements ActionListener {
         showUnderConstructionDialog("Study Points");
     } else if (command.equals("NAV_LOCATION")) {
         centerOnUser();
-    } else if (e.getSource() == sortCombo) {
+    } else if (e.getSource() == radiusCombo || e.getSource() == sortCombo || e.getSource() == limitCombo) {
         updateGroupsList();
     }
     }
@@ -1257,76 +1529,22 @@ public class MapApp extends JFrame implements ActionListener {
         );
     }
 
-    // ---------------- Optional DB helper for storing location (unused if dbHelper used) ----------------
-    // kept here in case you want local direct SQL usage in this class
-
-    private boolean saveUserLocationToDatabase(GeoPosition position) {
-        Connection con = null;
-        PreparedStatement stmt = null;
-
-        try {
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
-            con = DriverManager.getConnection("jdbc:derby://localhost:1527/LocationDB;user=app;password=app");
-
-            // Create table if not exists
-            createUserLocationTableIfNotExists(con);
-
-            // Use DELETE + INSERT approach
-            String deleteSql = "DELETE FROM user_location WHERE id = 1";
-            stmt = con.prepareStatement(deleteSql);
-            stmt.executeUpdate();
-            stmt.close();
-
-            String insertSql = "INSERT INTO user_location (id, latitude, longitude) VALUES (1, ?, ?)";
-            stmt = con.prepareStatement(insertSql);
-            stmt.setDouble(1, position.getLatitude());
-            stmt.setDouble(2, position.getLongitude());
-
-            int rowsAffected = stmt.executeUpdate();
-            System.out.println("User location saved: Lat=" + position.getLatitude() +
-                    ", Lon=" + position.getLongitude());
-
-            return rowsAffected > 0;
-
-        } catch (Exception e) {
-            System.err.println("Error saving location: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        } finally {
-            try { if (stmt != null) stmt.close(); } catch (Exception e) {}
-            try { if (con != null) con.close(); } catch (Exception e) {}
-        }
-    }
-
-    /**
-     * Creates user_location table if not exists
-     */
-    private void createUserLocationTableIfNotExists(Connection con) throws SQLException {
-        Statement stmt = null;
-        try {
-            stmt = con.createStatement();
-            String createTableSQL =
-                    "CREATE TABLE user_location (" +
-                            "id INT PRIMARY KEY, " +
-                            "latitude DOUBLE NOT NULL, " +
-                            "longitude DOUBLE NOT NULL, " +
-                            "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                            ")";
-            stmt.executeUpdate(createTableSQL);
-            System.out.println("Created user_location table");
-        } catch (SQLException e) {
-            // X0Y32 is Derby SQLState for "table already exists"
-            if (!"X0Y32".equals(e.getSQLState())) {
-                throw e;
-            }
-        } finally {
-            try { if (stmt != null) stmt.close(); } catch (Exception e) {}
-        }
-    }
-
     // ---------------- Main ----------------
 
     public static void main(String[] args) {
+        StartupTimer.markStart();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // Pending location writes need the pool, so they go first
+            UserLocationWriter.closeShared(5, TimeUnit.SECONDS);
+            ConnectionPool pool = ConnectionPool.getShared();
+            System.out.println("DB pool on exit: " + pool.getMetrics());
+            pool.close();
+            if (AppConfig.isEmbeddedDb()) {
+                EmbeddedDatabase.shutdown();
+            }
+        }, "db-pool-shutdown"));
+
         SwingUtilities.invokeLater(() -> new MapApp());
     }
 }
@@ -0,0 +1,185 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.JXMapViewer;
+import org.jxmapviewer.viewer.TileFactoryInfo;
+
+import javax.swing.Timer;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coalesces drag and wheel input on the map into at most one update per frame.
+ *
+ * A high-polling mouse delivers several drag events per display frame, and
+ * moving the map for each one repaints the tiles and the overlay every time.
+ * Here drag deltas and wheel rotation are only added up; the first event after
+ * a pause is applied at once and the rest on a frame timer, so the map moves
+ * (and fires its "center"/"zoom" changes) at most once per frame. The map
+ * counts as moving from the first input until it has been still for the idle
+ * delay; listeners use that to paint cheaply while moving and at full quality
+ * once it stops. Paint times are kept in separate histograms for the two states.
+ * All methods must be called on the EDT.
+ * @author abong
+ */
+public class MapInteractionScheduler {
+
+    /**
+     * Told when the map starts and stops moving.
+     */
+    public interface Listener {
+        void movingChanged(boolean moving);
+    }
+
+    private final JXMapViewer map;
+    private final Timer frameTimer;
+    private final Timer idleTimer;
+    private final List<Listener> listeners = new ArrayList<>();
+    private final FrameTimeHistogram movingFrames = new FrameTimeHistogram();
+    private final FrameTimeHistogram stillFrames = new FrameTimeHistogram();
+
+    // Input not yet applied to the map
+    private int pendingDx;
+    private int pendingDy;
+    private double pendingWheel;
+    private boolean moving;
+
+    private long inputEvents;
+    private long updates;
+
+    /**
+     * Scheduler with the configured frame and idle times.
+     */
+    public MapInteractionScheduler(JXMapViewer map) {
+        this(map, AppConfig.getMapFrameMillis(), AppConfig.getMapIdleMillis());
+    }
+
+    /**
+     * @param frameMillis shortest time between two map updates
+     * @param idleMillis  how long the map must be still to count as stopped
+     */
+    public MapInteractionScheduler(JXMapViewer map, int frameMillis, int idleMillis) {
+        this.map = map;
+        this.frameTimer = new Timer(frameMillis, e -> applyPending());
+        this.idleTimer = new Timer(idleMillis, e -> setMoving(false));
+        idleTimer.setRepeats(false);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * The pointer dragged the map by (dx, dy) screen pixels.
+     */
+    public void drag(int dx, int dy) {
+        pendingDx += dx;
+        pendingDy += dy;
+        inputReceived();
+    }
+
+    /**
+     * The wheel turned; negative zooms in, one notch per zoom level.
+     * Fractions from high-resolution wheels add up to whole notches.
+     */
+    public void wheel(double rotation) {
+        pendingWheel += rotation;
+        inputReceived();
+    }
+
+    public boolean isMoving() {
+        return moving;
+    }
+
+    /**
+     * Record how long a paint of the map took.
+     */
+    public void frameRendered(long nanos) {
+        (moving ? movingFrames : stillFrames).record(nanos);
+    }
+
+    /**
+     * @return paint times while the map was moving
+     */
+    public FrameTimeHistogram getMovingFrames() {
+        return movingFrames;
+    }
+
+    /**
+     * @return paint times while the map was still
+     */
+    public FrameTimeHistogram getStillFrames() {
+        return stillFrames;
+    }
+
+    public long getInputEvents() {
+        return inputEvents;
+    }
+
+    /**
+     * @return times the accumulated input was applied to the map
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+    private void inputReceived() {
+        inputEvents++;
+        setMoving(true);
+        idleTimer.restart();
+        if (!frameTimer.isRunning()) {
+            // Nothing applied in the last frame: respond now, then at most once per frame
+            applyPending();
+            frameTimer.start();
+        }
+    }
+
+    private void applyPending() {
+        int notches = (int) pendingWheel;
+        if (pendingDx == 0 && pendingDy == 0 && notches == 0) {
+            frameTimer.stop();
+            return;
+        }
+
+        // Drag deltas were measured at the current zoom, so pan before zooming
+        if (pendingDx != 0 || pendingDy != 0) {
+            Point2D center = map.getCenter();
+            map.setCenter(new Point2D.Double(center.getX() - pendingDx, center.getY() - pendingDy));
+            pendingDx = 0;
+            pendingDy = 0;
+        }
+        if (notches != 0) {
+            pendingWheel -= notches;
+            TileFactoryInfo info = map.getTileFactory().getInfo();
+            int zoom = Math.max(info.getMinimumZoomLevel(),
+                    Math.min(info.getMaximumZoomLevel(), map.getZoom() + notches));
+            if (zoom != map.getZoom()) {
+                map.setZoom(zoom);
+            }
+        }
+        updates++;
+    }
+
+    private void setMoving(boolean moving) {
+        if (this.moving == moving) {
+            return;
+        }
+        this.moving = moving;
+        if (!moving) {
+            // A part notch left over from this gesture should not zoom the next one
+            pendingWheel = 0;
+        }
+        for (Listener listener : listeners) {
+            listener.movingChanged(moving);
+        }
+        if (!moving) {
+            map.repaint();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("input events=%d map updates=%d | moving: %s | still: %s",
+                inputEvents, updates, movingFrames, stillFrames);
+    }
+}
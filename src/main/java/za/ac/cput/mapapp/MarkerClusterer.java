@@ -0,0 +1,350 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.viewer.GeoPosition;
+import org.jxmapviewer.viewer.TileFactory;
+import org.jxmapviewer.viewer.TileFactoryInfo;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Zoom-dependent clustering of study group waypoints.
+ *
+ * Every level is a grid of square cells, cellPixels wide on screen, over the
+ * Web Mercator world; level L is the zoom at which the world is 256 * 2^L pixels
+ * wide. A waypoint belongs to exactly one cell per level, so adding, removing or
+ * moving a waypoint only touches one cluster per level instead of rebuilding the
+ * hierarchy. The cells nest (a cell at level L+1 lies inside one cell at level L),
+ * which is what lets getSplitLevel find the zoom at which a cluster breaks apart.
+ *
+ * Not thread-safe: use from the EDT like the painter that owns it.
+ * @author abong
+ */
+public class MarkerClusterer {
+
+    public static final int DEFAULT_CELL_PIXELS = 60;
+    // Most detailed level that is clustered (about street level); beyond it markers are drawn individually
+    public static final int MAX_LEVEL = 20;
+
+    private final int cellPixels;
+    private final List<Map<Long, Cluster>> levels = new ArrayList<>();
+    private final Map<Integer, Member> membersById = new HashMap<>();
+    private int version;
+
+    public MarkerClusterer() {
+        this(DEFAULT_CELL_PIXELS);
+    }
+
+    public MarkerClusterer(int cellPixels) {
+        this.cellPixels = cellPixels;
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            levels.add(new HashMap<>());
+        }
+    }
+
+    // ---------------- Updates ----------------
+
+    /**
+     * Bring the hierarchy in line with the given study group waypoints.
+     * Waypoints are matched by study location id; unchanged ones only have their
+     * waypoint reference swapped, moved or resized ones are re-inserted and
+     * missing ones are removed. Waypoints without a study location (the user's
+     * own marker) are ignored.
+     */
+    public void setWaypoints(Collection<? extends StudyLocationWaypoint> waypoints) {
+        Set<Integer> seen = new HashSet<>();
+        for (StudyLocationWaypoint waypoint : waypoints) {
+            StudyLocation location = waypoint.getStudyLocation();
+            if (location == null || waypoint.isUserLocation()) {
+                continue;
+            }
+            seen.add(location.getId());
+            update(waypoint);
+        }
+
+        Iterator<Map.Entry<Integer, Member>> it = membersById.entrySet().iterator();
+        while (it.hasNext()) {
+            Member member = it.next().getValue();
+            if (!seen.contains(member.id)) {
+                it.remove();
+                detach(member);
+            }
+        }
+    }
+
+    /**
+     * Re-insert a waypoint whose position or member count changed, or just swap
+     * in the new waypoint object if neither did.
+     */
+    public void update(StudyLocationWaypoint waypoint) {
+        StudyLocation location = waypoint.getStudyLocation();
+        if (location == null) {
+            return;
+        }
+        Member existing = membersById.get(location.getId());
+        if (existing != null && existing.matches(waypoint)) {
+            existing.waypoint = waypoint;
+        } else {
+            add(waypoint);
+        }
+    }
+
+    /**
+     * Insert a waypoint, replacing any waypoint for the same study location.
+     */
+    public void add(StudyLocationWaypoint waypoint) {
+        StudyLocation location = waypoint.getStudyLocation();
+        if (location == null) {
+            return;
+        }
+        remove(location.getId());
+
+        Member member = new Member(location.getId(), waypoint);
+        membersById.put(member.id, member);
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            long key = cellKey(member, level);
+            Cluster cluster = levels.get(level).get(key);
+            if (cluster == null) {
+                cluster = new Cluster(level, key);
+                levels.get(level).put(key, cluster);
+            }
+            cluster.attach(member);
+        }
+        version++;
+    }
+
+    public void remove(int id) {
+        Member member = membersById.remove(id);
+        if (member != null) {
+            detach(member);
+        }
+    }
+
+    public void clear() {
+        for (Map<Long, Cluster> level : levels) {
+            level.clear();
+        }
+        membersById.clear();
+        version++;
+    }
+
+    private void detach(Member member) {
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            long key = cellKey(member, level);
+            Cluster cluster = levels.get(level).get(key);
+            if (cluster != null) {
+                cluster.detach(member);
+                if (cluster.getCount() == 0) {
+                    levels.get(level).remove(key);
+                }
+            }
+        }
+        version++;
+    }
+
+    // ---------------- Queries ----------------
+
+    /**
+     * @return the clusters at a level (a single waypoint is a cluster of one)
+     */
+    public Collection<Cluster> getClusters(int level) {
+        return Collections.unmodifiableCollection(levels.get(level).values());
+    }
+
+    /**
+     * @return the least detailed level at which the cluster's waypoints fall into
+     *         more than one cell, or -1 if they share a position and never split
+     */
+    public int getSplitLevel(Cluster cluster) {
+        if (cluster.getCount() < 2) {
+            return -1;
+        }
+        for (int level = cluster.level + 1; level <= MAX_LEVEL; level++) {
+            long first = Long.MIN_VALUE;
+            for (Member member : cluster.members) {
+                long key = cellKey(member, level);
+                if (first == Long.MIN_VALUE) {
+                    first = key;
+                } else if (key != first) {
+                    return level;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return membersById.size();
+    }
+
+    /**
+     * Incremented on every structural change, so painters can tell when cached
+     * projections of the clusters are stale.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    private long cellKey(Member member, int level) {
+        double worldPixels = 256.0 * (1L << level);
+        long col = (long) (member.normX * worldPixels / cellPixels);
+        long row = (long) (member.normY * worldPixels / cellPixels);
+        return (row << 32) | col;
+    }
+
+    // ---------------- Zoom <-> level ----------------
+
+    /**
+     * Clustering level for a map zoom, or -1 when the zoom is the tile factory's
+     * most detailed one (markers are then drawn individually so co-located groups
+     * can still be reached).
+     */
+    public static int levelForZoom(TileFactory tileFactory, int zoom) {
+        TileFactoryInfo info = tileFactory.getInfo();
+        if (zoom <= info.getMinimumZoomLevel()) {
+            return -1;
+        }
+        Dimension mapSize = tileFactory.getMapSize(zoom);
+        long worldPixels = (long) mapSize.width * tileFactory.getTileSize(zoom);
+        int level = 63 - Long.numberOfLeadingZeros(Math.max(1, worldPixels / 256));
+        return level <= MAX_LEVEL ? level : -1;
+    }
+
+    /**
+     * @return the least detailed zoom whose clustering level is at least the given
+     *         level, or the most detailed zoom if none is
+     */
+    public static int zoomForLevel(TileFactory tileFactory, int level) {
+        TileFactoryInfo info = tileFactory.getInfo();
+        for (int zoom = info.getMaximumZoomLevel(); zoom > info.getMinimumZoomLevel(); zoom--) {
+            int zoomLevel = levelForZoom(tileFactory, zoom);
+            if (zoomLevel < 0 || zoomLevel >= level) {
+                return zoom;
+            }
+        }
+        return info.getMinimumZoomLevel();
+    }
+
+    // ---------------- Model ----------------
+
+    /**
+     * Waypoints sharing a grid cell at one level, with their aggregated member
+     * count and centroid.
+     */
+    public static class Cluster {
+        private final int level;
+        private final long key;
+        private final Set<Member> members = new LinkedHashSet<>();
+        private int memberSum;
+        private double sumLatitude;
+        private double sumLongitude;
+        private GeoPosition position;
+
+        Cluster(int level, long key) {
+            this.level = level;
+            this.key = key;
+        }
+
+        void attach(Member member) {
+            members.add(member);
+            memberSum += member.memberCount;
+            sumLatitude += member.latitude;
+            sumLongitude += member.longitude;
+            position = null;
+        }
+
+        void detach(Member member) {
+            if (members.remove(member)) {
+                memberSum -= member.memberCount;
+                sumLatitude -= member.latitude;
+                sumLongitude -= member.longitude;
+                position = null;
+            }
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public int getCount() {
+            return members.size();
+        }
+
+        public int getMemberSum() {
+            return memberSum;
+        }
+
+        /**
+         * @return centroid of the cluster's waypoints
+         */
+        public GeoPosition getPosition() {
+            if (position == null && !members.isEmpty()) {
+                position = new GeoPosition(sumLatitude / members.size(), sumLongitude / members.size());
+            }
+            return position;
+        }
+
+        /**
+         * @return the waypoint of a cluster of one, otherwise null
+         */
+        public StudyLocationWaypoint getSingleWaypoint() {
+            return members.size() == 1 ? members.iterator().next().waypoint : null;
+        }
+
+        public List<StudyLocationWaypoint> getWaypoints() {
+            List<StudyLocationWaypoint> waypoints = new ArrayList<>(members.size());
+            for (Member member : members) {
+                waypoints.add(member.waypoint);
+            }
+            return waypoints;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cluster{level=%d, cell=%d/%d, count=%d, members=%d}",
+                    level, key >> 32, key & 0xffffffffL, members.size(), memberSum);
+        }
+    }
+
+    /**
+     * A clustered waypoint. Position and member count are captured when it is
+     * added so that removal subtracts exactly what was added.
+     */
+    private static class Member {
+        final int id;
+        final double latitude;
+        final double longitude;
+        final double normX;
+        final double normY;
+        final int memberCount;
+        StudyLocationWaypoint waypoint;
+
+        Member(int id, StudyLocationWaypoint waypoint) {
+            this.id = id;
+            this.waypoint = waypoint;
+            this.latitude = waypoint.getPosition().getLatitude();
+            this.longitude = waypoint.getPosition().getLongitude();
+            this.memberCount = waypoint.getStudyLocation().getMemberCount();
+
+            // Web Mercator, normalised to 0..1
+            double latRad = Math.toRadians(Math.max(-85.05112878, Math.min(85.05112878, latitude)));
+            this.normX = (longitude + 180.0) / 360.0;
+            this.normY = (1.0 - Math.log(Math.tan(latRad) + 1.0 / Math.cos(latRad)) / Math.PI) / 2.0;
+        }
+
+        boolean matches(StudyLocationWaypoint other) {
+            return other.getPosition().getLatitude() == latitude
+                    && other.getPosition().getLongitude() == longitude
+                    && other.getStudyLocation().getMemberCount() == memberCount;
+        }
+    }
+}
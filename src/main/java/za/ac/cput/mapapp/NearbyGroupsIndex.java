@@ -0,0 +1,78 @@
+package za.ac.cput.mapapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, thread-safe snapshot of the study groups for serving many users
+ * at once (see NearbyGroupsServer).
+ *
+ * Queries run on a LocationQueryPlanner built for the snapshot. The planner
+ * keeps each query's distances in its own Match objects, so any number of
+ * threads can query from different points without locking.
+ *
+ * Changes produce a new snapshot (withChanges); the locations in a snapshot are
+ * never modified.
+ * @author abong
+ */
+public final class NearbyGroupsIndex {
+
+    private final List<StudyLocation> locations;
+    private final LocationQueryPlanner planner;
+    private final long version;
+
+    private NearbyGroupsIndex(List<StudyLocation> locations, long version) {
+        this.locations = Collections.unmodifiableList(new ArrayList<>(locations));
+        this.planner = LocationQueryPlanner.of(this.locations);
+        this.version = version;
+    }
+
+    /**
+     * @param version change feed version the locations are current to (0 if none)
+     */
+    public static NearbyGroupsIndex of(List<StudyLocation> locations, long version) {
+        return new NearbyGroupsIndex(locations, version);
+    }
+
+    /**
+     * A new snapshot with the changes from one change feed poll applied.
+     */
+    public NearbyGroupsIndex withChanges(StudyLocationChangeFeed.Changes changes) {
+        Map<Integer, StudyLocation> byId = new LinkedHashMap<>();
+        for (StudyLocation location : locations) {
+            byId.put(location.getId(), location);
+        }
+        for (StudyLocation location : changes.getUpserted()) {
+            byId.put(location.getId(), location);
+        }
+        for (int id : changes.getDeletedIds()) {
+            byId.remove(id);
+        }
+        return new NearbyGroupsIndex(new ArrayList<>(byId.values()), changes.getVersion());
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // ---------------- Queries ----------------
+
+    /**
+     * Run a query around a point. Safe to call from any number of threads.
+     * @return matching groups in query order
+     * @throws IllegalArgumentException for RECOMMENDED, whose scores depend on one user's position
+     */
+    public List<LocationQueryPlanner.Match> query(LocationQuery query, double latitude, double longitude) {
+        if (query.getSortKeys().contains(LocationQuery.SortKey.RECOMMENDED)) {
+            throw new IllegalArgumentException("RECOMMENDED is not supported here");
+        }
+        return planner.match(query, latitude, longitude);
+    }
+}
@@ -0,0 +1,379 @@
+package za.ac.cput.mapapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless server answering "groups near a point" for many clients.
+ *
+ * Study locations are loaded from the database once and kept in memory as a
+ * NearbyGroupsIndex; the StudyLocationChangeFeed is polled as in MapApp and each
+ * non-empty delta swaps in a new snapshot, so requests never wait on the
+ * database or on each other. Requests run on virtual threads when the JVM has
+ * them (Java 21+) and on a small fixed pool otherwise; either way a request is
+ * a short in-memory query.
+ *
+ * Endpoints:
+ * <pre>
+ * GET /groups/nearby?lat=-33.93&amp;lon=18.43[&amp;radius=500][&amp;sort=distance,members][&amp;limit=20]
+ * GET /health
+ * </pre>
+ * sort takes DISTANCE, NAME and MEMBERS (any case), most significant first.
+ * Listens on learnhub.server.host:learnhub.server.port (localhost:8085 by default).
+ * @author abong
+ */
+public class NearbyGroupsServer {
+
+    // Pending connections the kernel may queue while the dispatcher accepts
+    private static final int BACKLOG = 4096;
+
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final StudyLocationChangeFeed changeFeed;
+    private final ScheduledExecutorService changePoller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "study-location-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile NearbyGroupsIndex groups;
+    private boolean changePollFailing = false;
+
+    // Stats
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+
+    /**
+     * @param changeFeed started feed to poll for changes, or null to serve a fixed set
+     */
+    public NearbyGroupsServer(InetSocketAddress address, NearbyGroupsIndex groups,
+                              StudyLocationChangeFeed changeFeed) throws IOException {
+        this.groups = groups;
+        this.changeFeed = changeFeed;
+        this.requestExecutor = newRequestExecutor();
+        this.server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(requestExecutor);
+        server.createContext("/groups/nearby", this::handleNearby);
+        server.createContext("/health", this::handleHealth);
+    }
+
+    /**
+     * Server over the configured database, or the sample data if it is unavailable.
+     */
+    public static NearbyGroupsServer fromDatabase(InetSocketAddress address) throws IOException {
+        StudyLocationDBDemo dao = new StudyLocationDBDemo();
+        if (!dao.testConnection()) {
+            System.err.println("Database unavailable, serving sample data");
+            return new NearbyGroupsServer(address, NearbyGroupsIndex.of(EmbeddedDatabase.sampleStudyLocations(), 0), null);
+        }
+
+        StudyLocationChangeFeed changeFeed = new StudyLocationChangeFeed();
+        long version = -1;
+        try {
+            // Read the version first so changes made during the load are polled again
+            version = changeFeed.currentVersion();
+        } catch (Exception e) {
+            System.err.println("Study location change feed unavailable: " + e.getMessage());
+        }
+        List<StudyLocation> locations = dao.loadStudyLocations();
+        if (version < 0) {
+            return new NearbyGroupsServer(address, NearbyGroupsIndex.of(locations, 0), null);
+        }
+        changeFeed.start(version);
+        return new NearbyGroupsServer(address, NearbyGroupsIndex.of(locations, version), changeFeed);
+    }
+
+    /**
+     * Virtual thread per request where available, looked up reflectively so the
+     * app still builds and runs on Java 11.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            System.out.println("Nearby groups requests run on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // Requests are short and CPU-bound, so a few threads per core keep up
+            int threads = Runtime.getRuntime().availableProcessors() * 2;
+            AtomicInteger count = new AtomicInteger();
+            System.out.println("No virtual threads on Java " + System.getProperty("java.version")
+                    + ", nearby groups requests run on " + threads + " threads");
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "nearby-groups-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // ---------------- Lifecycle ----------------
+
+    /**
+     * Start serving, and polling for changes every syncIntervalMillis (0 for never).
+     */
+    public void start(long syncIntervalMillis) {
+        server.start();
+        System.out.println("Serving " + groups.size() + " study groups on http://"
+                + server.getAddress().getHostString() + ":" + getPort() + "/groups/nearby");
+        if (changeFeed != null && syncIntervalMillis > 0) {
+            long initialDelay = syncIntervalMillis + ThreadLocalRandom.current().nextLong(syncIntervalMillis);
+            changePoller.scheduleWithFixedDelay(this::pollChanges, initialDelay, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop accepting requests, giving those in progress up to delaySeconds to finish.
+     */
+    public void stop(int delaySeconds) {
+        changePoller.shutdownNow();
+        server.stop(delaySeconds);
+        requestExecutor.shutdown();
+        System.out.println("Nearby groups server stopped after " + requestCount.sum()
+                + " requests (" + errorCount.sum() + " errors)");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public NearbyGroupsIndex getGroups() {
+        return groups;
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    // ---------------- Change feed ----------------
+
+    /**
+     * Runs on the poller thread, the only writer of groups. Failures are logged
+     * once until polling recovers. When the change log no longer reaches the
+     * feed's version every group is reloaded, and retried until that succeeds.
+     */
+    private void pollChanges() {
+        try {
+            StudyLocationChangeFeed.Changes changes = changeFeed.isStarted() ? changeFeed.poll() : null;
+            if (changes == null || changes.isExpired()) {
+                StudyLocationChangeFeed.Snapshot snapshot = changeFeed.reload();
+                groups = NearbyGroupsIndex.of(snapshot.getLocations(), snapshot.getVersion());
+                System.out.println("Reloaded " + groups.size() + " study groups after the change log expired");
+            } else if (!changes.isEmpty()) {
+                groups = groups.withChanges(changes);
+                System.out.println("Study location changes: " + changes + ", now serving " + groups.size());
+            }
+            if (changePollFailing) {
+                changePollFailing = false;
+                System.out.println("Study location change polling recovered");
+            }
+        } catch (Exception e) {
+            if (!changePollFailing) {
+                changePollFailing = true;
+                System.err.println("Study location change polling failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // ---------------- Requests ----------------
+
+    private void handleNearby(HttpExchange exchange) throws IOException {
+        requestCount.increment();
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, error("Use GET"));
+                return;
+            }
+            Map<String, String> parameters = parseParameters(exchange.getRequestURI().getRawQuery());
+            double latitude = coordinate(parameters, "lat", 90);
+            double longitude = coordinate(parameters, "lon", 180);
+            LocationQuery query = parseQuery(parameters);
+
+            NearbyGroupsIndex snapshot = groups;
+            List<LocationQueryPlanner.Match> matches = snapshot.query(query, latitude, longitude);
+            send(exchange, 200, toJson(snapshot, matches));
+        } catch (IllegalArgumentException e) {
+            errorCount.increment();
+            send(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            errorCount.increment();
+            System.err.println("Nearby groups request failed: " + e);
+            send(exchange, 500, error("Internal error"));
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        NearbyGroupsIndex snapshot = groups;
+        send(exchange, 200, "{\"groups\":" + snapshot.size() + ",\"version\":" + snapshot.getVersion()
+                + ",\"requests\":" + requestCount.sum() + ",\"errors\":" + errorCount.sum() + "}");
+    }
+
+    /**
+     * radius, sort and limit parameters as a LocationQuery; all are optional.
+     */
+    static LocationQuery parseQuery(Map<String, String> parameters) {
+        LocationQuery.Builder builder = LocationQuery.builder();
+        String radius = parameters.get("radius");
+        if (radius != null) {
+            builder.within(parseNumber("radius", radius));
+        }
+        String sort = parameters.get("sort");
+        if (sort != null && !sort.isEmpty()) {
+            for (String key : sort.split(",")) {
+                try {
+                    builder.sortBy(LocationQuery.SortKey.valueOf(key.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown sort key: " + key);
+                }
+            }
+        }
+        String limit = parameters.get("limit");
+        if (limit != null) {
+            try {
+                builder.limit(Integer.parseInt(limit));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("limit is not a whole number: " + limit);
+            }
+        }
+        return builder.build();
+    }
+
+    static Map<String, String> parseParameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static double coordinate(Map<String, String> parameters, String name, double max) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        double coordinate = parseNumber(name, value);
+        if (Math.abs(coordinate) > max) {
+            throw new IllegalArgumentException(name + " out of range: " + value);
+        }
+        return coordinate;
+    }
+
+    private static double parseNumber(String name, String value) {
+        try {
+            double number = Double.parseDouble(value);
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new NumberFormatException();
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a number: " + value);
+        }
+    }
+
+    // ---------------- JSON ----------------
+
+    private static String toJson(NearbyGroupsIndex snapshot, List<LocationQueryPlanner.Match> matches) {
+        StringBuilder json = new StringBuilder(64 + matches.size() * 200);
+        json.append("{\"version\":").append(snapshot.getVersion())
+                .append(",\"count\":").append(matches.size())
+                .append(",\"groups\":[");
+        for (int i = 0; i < matches.size(); i++) {
+            StudyLocation location = matches.get(i).getLocation();
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(location.getId());
+            json.append(",\"groupName\":");
+            appendString(json, location.getGroupName());
+            json.append(",\"locationName\":");
+            appendString(json, location.getLocationName());
+            json.append(",\"building\":");
+            appendString(json, location.getBuilding());
+            json.append(",\"latitude\":").append(location.getLatitude())
+                    .append(",\"longitude\":").append(location.getLongitude())
+                    .append(",\"memberCount\":").append(location.getMemberCount())
+                    // Decimetres are plenty for a walking distance
+                    .append(",\"distanceMeters\":").append(Math.round(matches.get(i).getDistance() * 10) / 10.0)
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(AppConfig.getServerHost(), AppConfig.getServerPort());
+        NearbyGroupsServer server = fromDatabase(address);
+        server.start(AppConfig.getSyncIntervalMillis());
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            ConnectionPool pool = ConnectionPool.getShared();
+            System.out.println("DB pool on exit: " + pool.getMetrics());
+            pool.close();
+            if (AppConfig.isEmbeddedDb()) {
+                EmbeddedDatabase.shutdown();
+            }
+        }, "nearby-groups-shutdown"));
+    }
+}
@@ -0,0 +1,181 @@
+package za.ac.cput.mapapp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only, memory-mapped archive of map tiles packed into a single file.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   header  : magic "LHTA" | version int | tile count int | reserved int | data offset long
+ *   index   : tile count x (z int | x int | y int | offset long | length int), sorted by z, x, y
+ *   data    : concatenated PNG blobs, offsets relative to the data offset
+ * </pre>
+ * A lookup is a binary search over the mapped index and a slice of the mapped
+ * data, so no file is opened and no bytes are copied per tile.
+ * Use PackedTileArchiveBuilder to create archives.
+ * @author abong
+ */
+public class PackedTileArchive implements AutoCloseable {
+
+    static final int MAGIC = 0x4C485441; // "LHTA"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int INDEX_ENTRY_SIZE = 24;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer data;
+    private final int tileCount;
+
+    private PackedTileArchive(Path file, FileChannel channel, MappedByteBuffer index,
+                              MappedByteBuffer data, int tileCount) {
+        this.file = file;
+        this.channel = channel;
+        this.index = index;
+        this.data = data;
+        this.tileCount = tileCount;
+    }
+
+    /**
+     * Open and map an archive file.
+     * @throws IOException if the file is missing or is not a tile archive
+     */
+    public static PackedTileArchive open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a tile archive (too small): " + file);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a tile archive (bad magic): " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported tile archive version " + version + ": " + file);
+            }
+            int tileCount = header.getInt();
+            header.getInt(); // reserved
+            long dataOffset = header.getLong();
+
+            if (tileCount < 0) {
+                throw new IOException("Corrupt tile archive (negative tile count): " + file);
+            }
+            long indexSize = (long) tileCount * INDEX_ENTRY_SIZE;
+            long dataSize = size - dataOffset;
+            if (indexSize > Integer.MAX_VALUE || HEADER_SIZE + indexSize > dataOffset
+                    || dataSize < 0 || dataSize > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt or oversized tile archive (max 2 GB of tile data): " + file);
+            }
+
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, indexSize);
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, dataSize);
+            return new PackedTileArchive(file, channel, index, data, tileCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Find a tile.
+     * @return a read-only slice of the mapped file holding the PNG bytes, or null if
+     *         the archive does not have it or its index entry points outside the data
+     */
+    public ByteBuffer getTile(int z, int x, int y) {
+        int low = 0;
+        int high = tileCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int base = mid * INDEX_ENTRY_SIZE;
+            int cmp = compare(index.getInt(base), index.getInt(base + 4), index.getInt(base + 8), z, x, y);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                long offset = index.getLong(base + 12);
+                int length = index.getInt(base + 20);
+                if (offset < 0 || length < 0 || offset > data.capacity() - length) {
+                    // Corrupt entry: treat the tile as missing so it loads online
+                    return null;
+                }
+                ByteBuffer slice = data.duplicate();
+                slice.position((int) offset).limit((int) (offset + length));
+                return slice.slice().asReadOnlyBuffer();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the tile as a stream over the mapped bytes, or null if missing
+     */
+    public InputStream openTile(TileKey key) {
+        ByteBuffer tile = getTile(key.getZ(), key.getX(), key.getY());
+        return tile != null ? new ByteBufferInputStream(tile) : null;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mapped buffers stay valid until garbage collected; closing the channel releases the handle
+        channel.close();
+    }
+
+    private static int compare(int z1, int x1, int y1, int z2, int x2, int y2) {
+        if (z1 != z2) return Integer.compare(z1, z2);
+        if (x1 != x2) return Integer.compare(x1, x2);
+        return Integer.compare(y1, y2);
+    }
+
+    /**
+     * InputStream reading straight from a ByteBuffer slice.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package za.ac.cput.mapapp;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Packs a z/x/y.png directory pyramid (for example the DiskTileCache directory,
+ * or tiles exported by a tile server) into a single PackedTileArchive file.
+ * Usage: java za.ac.cput.mapapp.PackedTileArchiveBuilder &lt;tile directory&gt; &lt;archive file&gt;
+ * @author abong
+ */
+public class PackedTileArchiveBuilder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PackedTileArchiveBuilder <tile directory> <archive file>");
+            System.exit(1);
+        }
+        int count = build(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("Packed " + count + " tiles into " + args[1]);
+    }
+
+    /**
+     * Pack every z/x/y.png file under the directory into an archive.
+     * The archive is written to a temp file and moved into place when complete.
+     * @return number of tiles packed
+     */
+    public static int build(Path pyramid, Path archive) throws IOException {
+        List<TileFile> tiles = collectTiles(pyramid);
+        Collections.sort(tiles);
+
+        long dataOffset = PackedTileArchive.HEADER_SIZE + (long) tiles.size() * PackedTileArchive.INDEX_ENTRY_SIZE;
+        long dataSize = 0;
+        for (TileFile tile : tiles) {
+            dataSize += tile.size;
+        }
+        if (dataSize > Integer.MAX_VALUE) {
+            throw new IOException("Tile data exceeds the 2 GB archive limit");
+        }
+
+        Path dir = archive.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, ".tiles", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                // Header
+                out.writeInt(PackedTileArchive.MAGIC);
+                out.writeInt(PackedTileArchive.VERSION);
+                out.writeInt(tiles.size());
+                out.writeInt(0);
+                out.writeLong(dataOffset);
+
+                // Index
+                long offset = 0;
+                for (TileFile tile : tiles) {
+                    out.writeInt(tile.key.getZ());
+                    out.writeInt(tile.key.getX());
+                    out.writeInt(tile.key.getY());
+                    out.writeLong(offset);
+                    out.writeInt((int) tile.size);
+                    offset += tile.size;
+                }
+
+                // Data
+                for (TileFile tile : tiles) {
+                    copy(tile, out);
+                }
+            }
+            try {
+                Files.move(temp, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, archive, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return tiles.size();
+    }
+
+    private static List<TileFile> collectTiles(Path pyramid) throws IOException {
+        List<TileFile> tiles = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(pyramid)) {
+            for (Path file : (Iterable<Path>) walk::iterator) {
+                TileKey key = parseKey(pyramid.relativize(file));
+                if (key != null && Files.isRegularFile(file)) {
+                    tiles.add(new TileFile(key, file, Files.size(file)));
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * @return key for a relative path of the form z/x/y.png, or null for anything else
+     */
+    private static TileKey parseKey(Path relative) {
+        if (relative.getNameCount() != 3) {
+            return null;
+        }
+        String name = relative.getName(2).toString();
+        if (!name.endsWith(".png")) {
+            return null;
+        }
+        try {
+            return new TileKey(
+                    Integer.parseInt(relative.getName(0).toString()),
+                    Integer.parseInt(relative.getName(1).toString()),
+                    Integer.parseInt(name.substring(0, name.length() - 4)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void copy(TileFile tile, OutputStream out) throws IOException {
+        long copied = Files.copy(tile.file, out);
+        if (copied != tile.size) {
+            throw new IOException("Tile changed while packing: " + tile.file);
+        }
+    }
+
+    private static class TileFile implements Comparable<TileFile> {
+        final TileKey key;
+        final Path file;
+        final long size;
+
+        TileFile(TileKey key, Path file, long size) {
+            this.key = key;
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public int compareTo(TileFile other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package za.ac.cput.mapapp;
+
+import java.util.Arrays;
+
+/**
+ * Screen-space hit-testing grid for map markers.
+ * Markers are bucketed into square cells of the map component, each bucket a
+ * linked list threaded through int arrays, so a click or mouse move only checks
+ * the few markers in the cells around the pointer. The index is rebuilt (reusing
+ * its arrays) whenever the painter's view changes; it holds marker ids only and
+ * the painter maps them back to waypoints or clusters.
+ *
+ * Not thread-safe: use from the EDT.
+ * @author abong
+ */
+public class PickIndex {
+
+    public static final int DEFAULT_CELL_SIZE = 20;
+
+    private final int cellSize;
+    private int originX;
+    private int originY;
+    private int cols;
+    private int rows;
+    private int maxRadius;
+
+    // First entry per cell, -1 for none
+    private int[] heads = new int[0];
+
+    // Entries, chained per cell through next[]
+    private int[] ids = new int[64];
+    private int[] xs = new int[64];
+    private int[] ys = new int[64];
+    private int[] radii = new int[64];
+    private int[] next = new int[64];
+    private int size;
+
+    public PickIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public PickIndex(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Start a new index covering the given screen area. Entries may lie a little
+     * outside it (markers at the edge); they are clamped into the border cells.
+     */
+    public void reset(int x, int y, int width, int height) {
+        originX = x;
+        originY = y;
+        cols = Math.max(1, (width + cellSize - 1) / cellSize);
+        rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        if (heads.length < cols * rows) {
+            heads = new int[cols * rows];
+        }
+        Arrays.fill(heads, 0, cols * rows, -1);
+        size = 0;
+        maxRadius = 0;
+    }
+
+    /**
+     * Add a marker centred on (x, y) that can be hit within the given radius.
+     */
+    public void add(int id, int x, int y, int radius) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            radii = Arrays.copyOf(radii, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        int cell = cellIndex(col(x), row(y));
+        ids[size] = id;
+        xs[size] = x;
+        ys[size] = y;
+        radii[size] = radius;
+        next[size] = heads[cell];
+        heads[cell] = size;
+        size++;
+        maxRadius = Math.max(maxRadius, radius);
+    }
+
+    /**
+     * @return id of the marker nearest to the point among those whose radius
+     *         covers it, or -1 if none does. Later additions win ties, so markers
+     *         painted on top are picked first.
+     */
+    public int find(int x, int y) {
+        int reach = (maxRadius + cellSize - 1) / cellSize;
+        int col = col(x);
+        int row = row(y);
+
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int r = Math.max(0, row - reach); r <= Math.min(rows - 1, row + reach); r++) {
+            for (int c = Math.max(0, col - reach); c <= Math.min(cols - 1, col + reach); c++) {
+                for (int e = heads[cellIndex(c, r)]; e >= 0; e = next[e]) {
+                    long dx = xs[e] - x;
+                    long dy = ys[e] - y;
+                    long distance = dx * dx + dy * dy;
+                    if (distance <= (long) radii[e] * radii[e]
+                            && (distance < bestDistance || (distance == bestDistance && e > best))) {
+                        best = e;
+                        bestDistance = distance;
+                    }
+                }
+            }
+        }
+        return best >= 0 ? ids[best] : -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int col(int x) {
+        return Math.max(0, Math.min(cols - 1, Math.floorDiv(x - originX, cellSize)));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, Math.floorDiv(y - originY, cellSize)));
+    }
+
+    private int cellIndex(int col, int row) {
+        return row * cols + col;
+    }
+}
@@ -0,0 +1,87 @@
+package za.ac.cput.mapapp;
+
+/**
+ * Point-in-time snapshot of ConnectionPool counters.
+ * @author abong
+ */
+public class PoolMetrics {
+    private final int maxSize;
+    private final int activeCount;
+    private final int idleCount;
+    private final long borrowCount;
+    private final long totalBorrowWaitNanos;
+    private final long maxBorrowWaitNanos;
+    private final long connectionsCreated;
+    private final long validationFailures;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+
+    public PoolMetrics(int maxSize, int activeCount, int idleCount, long borrowCount,
+                       long totalBorrowWaitNanos, long maxBorrowWaitNanos, long connectionsCreated,
+                       long validationFailures, long statementCacheHits, long statementCacheMisses) {
+        this.maxSize = maxSize;
+        this.activeCount = activeCount;
+        this.idleCount = idleCount;
+        this.borrowCount = borrowCount;
+        this.totalBorrowWaitNanos = totalBorrowWaitNanos;
+        this.maxBorrowWaitNanos = maxBorrowWaitNanos;
+        this.connectionsCreated = connectionsCreated;
+        this.validationFailures = validationFailures;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getIdleCount() {
+        return idleCount;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    public double getAverageBorrowWaitMillis() {
+        return borrowCount == 0 ? 0.0 : totalBorrowWaitNanos / (double) borrowCount / 1_000_000.0;
+    }
+
+    public double getMaxBorrowWaitMillis() {
+        return maxBorrowWaitNanos / 1_000_000.0;
+    }
+
+    public long getConnectionsCreated() {
+        return connectionsCreated;
+    }
+
+    public long getValidationFailures() {
+        return validationFailures;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    public double getStatementCacheHitRate() {
+        long lookups = statementCacheHits + statementCacheMisses;
+        return lookups == 0 ? 0.0 : statementCacheHits / (double) lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PoolMetrics{active=%d, idle=%d, max=%d, borrows=%d, avgWait=%.3f ms, " +
+                           "maxWait=%.3f ms, created=%d, validationFailures=%d, stmtCacheHitRate=%.1f%%}",
+                           activeCount, idleCount, maxSize, borrowCount, getAverageBorrowWaitMillis(),
+                           getMaxBorrowWaitMillis(), connectionsCreated, validationFailures,
+                           getStatementCacheHitRate() * 100);
+    }
+}
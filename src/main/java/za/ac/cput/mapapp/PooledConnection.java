@@ -0,0 +1,248 @@
+package za.ac.cput.mapapp;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A physical connection owned by the ConnectionPool.
+ * DAO code never sees this class directly: it is handed a proxy whose close()
+ * returns the connection to the pool and whose prepareStatement(sql) reuses
+ * statements from a per-connection LRU cache.
+ * @author abong
+ */
+class PooledConnection {
+
+    private final ConnectionPool pool;
+    private final Connection physical;
+    private final Map<String, PreparedStatement> statementCache;
+
+    private long lastReleasedAt;
+    private boolean broken;
+
+    PooledConnection(ConnectionPool pool, Connection physical, int statementCacheSize) {
+        this.pool = pool;
+        this.physical = physical;
+        this.lastReleasedAt = System.currentTimeMillis();
+        this.statementCache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > statementCacheSize) {
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create the logical connection handed out for a single borrow.
+     */
+    Connection newLogicalConnection() {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new LogicalConnectionHandler());
+    }
+
+    boolean isValid(int timeoutSeconds) {
+        try {
+            return !broken && physical.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    long getLastReleasedAt() {
+        return lastReleasedAt;
+    }
+
+    /**
+     * Close the physical connection and every cached statement.
+     */
+    void closePhysical() {
+        Iterator<PreparedStatement> it = statementCache.values().iterator();
+        while (it.hasNext()) {
+            closeQuietly(it.next());
+            it.remove();
+        }
+        try { physical.close(); } catch (Exception e) {}
+    }
+
+    private PreparedStatement prepareCached(Connection logical, String sql) throws SQLException {
+        PreparedStatement cached = statementCache.get(sql);
+        if (cached != null && !cached.isClosed()) {
+            pool.recordStatementCacheHit();
+        } else {
+            pool.recordStatementCacheMiss();
+            cached = physical.prepareStatement(sql);
+            statementCache.put(sql, cached);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new CachedStatementHandler(logical, cached));
+    }
+
+    /**
+     * Return the connection to a clean state before it goes back to the pool.
+     */
+    private void reset() {
+        try {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            broken = true;
+        }
+    }
+
+    private Object invokeTracked(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                // SQLState class 08 = connection exception, 40XD = Derby session severity
+                if (state != null && (state.startsWith("08") || state.startsWith("40XD"))) {
+                    broken = true;
+                }
+            }
+            throw cause;
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        try { if (resource != null) resource.close(); } catch (Exception e) {}
+    }
+
+    /**
+     * Handler behind the Connection proxy handed to DAO code.
+     */
+    private class LogicalConnectionHandler implements InvocationHandler {
+        private boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    reset();
+                    lastReleasedAt = System.currentTimeMillis();
+                    pool.release(PooledConnection.this);
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return closed;
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("toString")) {
+                return "PooledConnection[" + physical + "]";
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool", "08003");
+            }
+            if (name.equals("prepareStatement") && args != null && args.length == 1) {
+                return prepareCached((Connection) proxy, (String) args[0]);
+            }
+            return invokeTracked(physical, method, args);
+        }
+    }
+
+    /**
+     * Handler behind a cached PreparedStatement: close() clears the parameters
+     * and any batch, and undoes this borrower's max rows, fetch size and query
+     * timeout, so the next borrower gets the statement as it was prepared. A
+     * statement that cannot be reset is evicted and closed.
+     */
+    private class CachedStatementHandler implements InvocationHandler {
+        private final Connection logical;
+        private final PreparedStatement target;
+        private boolean closed;
+        // Values before this borrower first changed them; null if unchanged
+        private Integer maxRows;
+        private Integer fetchSize;
+        private Integer queryTimeout;
+
+        CachedStatementHandler(Connection logical, PreparedStatement target) {
+            this.logical = logical;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.equals("close")) {
+                if (!closed) {
+                    closed = true;
+                    try {
+                        target.clearParameters();
+                        target.clearBatch();
+                        if (maxRows != null) {
+                            target.setMaxRows(maxRows);
+                        }
+                        if (fetchSize != null) {
+                            target.setFetchSize(fetchSize);
+                        }
+                        if (queryTimeout != null) {
+                            target.setQueryTimeout(queryTimeout);
+                        }
+                    } catch (SQLException e) {
+                        statementCache.values().remove(target);
+                        closeQuietly(target);
+                    }
+                }
+                return null;
+            }
+            if (name.equals("isClosed")) {
+                return closed;
+            }
+            if (name.equals("getConnection")) {
+                return logical;
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("toString")) {
+                return "CachedStatement[" + target + "]";
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed", "XJ012");
+            }
+            if (name.equals("setMaxRows") && maxRows == null) {
+                maxRows = target.getMaxRows();
+            } else if (name.equals("setFetchSize") && fetchSize == null) {
+                fetchSize = target.getFetchSize();
+            } else if (name.equals("setQueryTimeout") && queryTimeout == null) {
+                queryTimeout = target.getQueryTimeout();
+            }
+            return invokeTracked(target, method, args);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.JXMapViewer;
+import org.jxmapviewer.viewer.DefaultTileFactory;
+import org.jxmapviewer.viewer.Tile;
+import org.jxmapviewer.viewer.TileFactoryInfo;
+
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * DefaultTileFactory whose tile loads go through a TilePrefetchScheduler.
+ *
+ * The stock factory starts every new tile the moment the map asks for it and
+ * never forgets a request, so a fast pan or a burst of wheel zooms leaves a
+ * queue of tiles the user has already moved past. Here startLoading() only
+ * queues the tile with the scheduler, which hands the best few to the
+ * factory's loader threads, and getTile() tells the scheduler what is being
+ * painted. A tile whose request was cancelled is queued again when the map
+ * next paints it.
+ * @author abong
+ */
+public class PrefetchTileFactory extends DefaultTileFactory {
+
+    private final TilePrefetchScheduler scheduler;
+
+    /**
+     * Factory with the configured number of loader threads and pan-ahead ring.
+     */
+    public PrefetchTileFactory(TileFactoryInfo info) {
+        this(info, AppConfig.getTileLoadThreads(), AppConfig.getTilePrefetchRing());
+    }
+
+    /**
+     * @param loadThreads tiles downloading at once
+     * @param ringTiles widest pan-ahead ring in tiles; 0 turns prefetching off
+     */
+    public PrefetchTileFactory(TileFactoryInfo info, int loadThreads, int ringTiles) {
+        super(info);
+        setThreadPoolSize(loadThreads);
+        this.scheduler = new TilePrefetchScheduler(info, new TilePrefetchScheduler.TileLoader() {
+            @Override
+            public void prefetch(int x, int y, int zoom) {
+                prefetchTile(x, y, zoom);
+            }
+
+            @Override
+            public boolean start(Tile tile) {
+                return startNow(tile);
+            }
+        }, loadThreads, ringTiles);
+    }
+
+    /**
+     * Keep the scheduler's viewport in step with the map: pans, zooms and resizes.
+     */
+    public void attach(JXMapViewer mapViewer) {
+        mapViewer.addPropertyChangeListener("zoom", e -> viewportChanged(mapViewer));
+        mapViewer.addPropertyChangeListener("center", e -> viewportChanged(mapViewer));
+        mapViewer.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                viewportChanged(mapViewer);
+            }
+        });
+        viewportChanged(mapViewer);
+    }
+
+    private void viewportChanged(JXMapViewer mapViewer) {
+        viewportChanged(mapViewer.getZoom(), mapViewer.getViewportBounds());
+    }
+
+    /**
+     * The map now shows this area (map pixels at this zoom).
+     */
+    public void viewportChanged(int zoom, Rectangle2D viewport) {
+        scheduler.viewportChanged(zoom, viewport, System.nanoTime());
+    }
+
+    public TilePrefetchStats getPrefetchStats() {
+        return scheduler.getStats();
+    }
+
+    // ---------------- Factory hooks ----------------
+
+    /**
+     * Called by the map's painter for the tiles in view.
+     */
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        Tile tile = super.getTile(x, y, zoom);
+        scheduler.tileShown(tile);
+        return tile;
+    }
+
+    /**
+     * New tiles wait in the scheduler's queue instead of starting straight away.
+     */
+    @Override
+    protected void startLoading(Tile tile) {
+        scheduler.request(tile);
+    }
+
+    @Override
+    protected Runnable createTileRunner(Tile tile) {
+        Runnable runner = super.createTileRunner(tile);
+        return () -> {
+            try {
+                runner.run();
+            } finally {
+                scheduler.loadFinished();
+            }
+        };
+    }
+
+    private void prefetchTile(int x, int y, int zoom) {
+        // Creating the tile queues it through startLoading(); a tile created earlier
+        // and since cancelled has to be queued again by hand
+        scheduler.request(super.getTile(x, y, zoom));
+    }
+
+    private synchronized boolean startNow(Tile tile) {
+        if (tile.isLoading() || tile.isLoaded()) {
+            return false;
+        }
+        super.startLoading(tile);
+        return true;
+    }
+}
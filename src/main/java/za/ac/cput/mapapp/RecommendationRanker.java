@@ -0,0 +1,242 @@
+package za.ac.cput.mapapp;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Ranks study groups by the README's proximity rules, highest score first.
+ *
+ * Each group gets one score in 0..1 from four weighted parts:
+ * proximity to the user, free places (groups are capped at 8 members, so full
+ * groups get nothing here), recent activity, and a boost for groups created in
+ * the last 15 days that fades out linearly.
+ *
+ * Groups are kept in a score-ordered tree, so a change to one group re-scores
+ * and re-inserts only that group (O(log n)) and the top k are read off the front
+ * of the tree. Only the proximity part depends on the user's position; the rest
+ * is cached per group, and a move re-scores lazily on the next query. The
+ * recency boost is recomputed when the date changes.
+ *
+ * Registered as a WaypointStore listener it follows the map's waypoints.
+ * Not thread-safe: use from the EDT.
+ * @author abong
+ */
+public class RecommendationRanker implements WaypointStore.Listener {
+
+    public static final int MAX_GROUP_SIZE = 8;
+    public static final int RECENT_DAYS = 15;
+
+    private static final double PROXIMITY_WEIGHT = 0.40;
+    private static final double CAPACITY_WEIGHT = 0.25;
+    private static final double ACTIVITY_WEIGHT = 0.20;
+    private static final double RECENCY_WEIGHT = 0.15;
+
+    // Distance at which the proximity part has halved
+    private static final double PROXIMITY_HALF_METERS = 500;
+    // Activity count at which the activity part reaches half
+    private static final double ACTIVITY_HALF_COUNT = 10;
+
+    // Best first; ids break ties so the order is total
+    private static final Comparator<Scored> BEST_FIRST = (a, b) -> {
+        int cmp = Double.compare(b.score, a.score);
+        return cmp != 0 ? cmp : Integer.compare(a.location.getId(), b.location.getId());
+    };
+
+    private final Clock clock;
+    private final Map<Integer, Scored> scoredById = new HashMap<>();
+    private final TreeSet<Scored> ranked = new TreeSet<>(BEST_FIRST);
+
+    private double originLatitude;
+    private double originLongitude;
+    private boolean originStale;
+    private LocalDate scoredDate;
+
+    public RecommendationRanker(double originLatitude, double originLongitude) {
+        this(originLatitude, originLongitude, Clock.systemDefaultZone());
+    }
+
+    public RecommendationRanker(double originLatitude, double originLongitude, Clock clock) {
+        this.originLatitude = originLatitude;
+        this.originLongitude = originLongitude;
+        this.clock = clock;
+        this.scoredDate = LocalDate.now(clock);
+    }
+
+    // ---------------- Updates ----------------
+
+    /**
+     * Add or re-score a group (replacing any group with the same id).
+     */
+    public void update(StudyLocation location) {
+        Scored scored = scoredById.get(location.getId());
+        if (scored != null) {
+            ranked.remove(scored);
+        } else {
+            scored = new Scored();
+            scoredById.put(location.getId(), scored);
+        }
+        scored.location = location;
+        scored.base = baseScore(location, scoredDate);
+        scored.score = scored.base + proximityScore(location);
+        ranked.add(scored);
+    }
+
+    public void remove(int id) {
+        Scored scored = scoredById.remove(id);
+        if (scored != null) {
+            ranked.remove(scored);
+        }
+    }
+
+    /**
+     * Move the point distances are measured from. Re-scoring happens on the next query.
+     */
+    public void setOrigin(double latitude, double longitude) {
+        if (latitude != originLatitude || longitude != originLongitude) {
+            originLatitude = latitude;
+            originLongitude = longitude;
+            originStale = true;
+        }
+    }
+
+    // ---------------- WaypointStore.Listener ----------------
+
+    @Override
+    public void waypointAdded(StudyLocationWaypoint waypoint) {
+        update(waypoint.getStudyLocation());
+    }
+
+    @Override
+    public void waypointRemoved(StudyLocationWaypoint waypoint) {
+        remove(waypoint.getStudyLocation().getId());
+    }
+
+    @Override
+    public void waypointUpdated(StudyLocationWaypoint waypoint) {
+        update(waypoint.getStudyLocation());
+    }
+
+    @Override
+    public void userWaypointMoved(StudyLocationWaypoint userWaypoint) {
+        setOrigin(userWaypoint.getPosition().getLatitude(), userWaypoint.getPosition().getLongitude());
+    }
+
+    // ---------------- Queries ----------------
+
+    /**
+     * @return the k best groups, best first
+     */
+    public List<StudyLocation> top(int k) {
+        refresh();
+        List<StudyLocation> result = new ArrayList<>(Math.min(k, ranked.size()));
+        Iterator<Scored> it = ranked.iterator();
+        while (result.size() < k && it.hasNext()) {
+            result.add(it.next().location);
+        }
+        return result;
+    }
+
+    /**
+     * All groups, best first. The iterator is only valid until the next update.
+     */
+    public Iterator<StudyLocation> iterator() {
+        refresh();
+        Iterator<Scored> it = ranked.iterator();
+        return new Iterator<StudyLocation>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public StudyLocation next() {
+                return it.next().location;
+            }
+        };
+    }
+
+    /**
+     * @return the group's score in 0..1, or NaN if the group is not ranked
+     */
+    public double getScore(int id) {
+        refresh();
+        return currentScore(id);
+    }
+
+    /**
+     * getScore without the refresh check, for callers that refreshed once
+     * before scoring many groups.
+     */
+    double currentScore(int id) {
+        Scored scored = scoredById.get(id);
+        return scored != null ? scored.score : Double.NaN;
+    }
+
+    public int size() {
+        return scoredById.size();
+    }
+
+    /**
+     * Re-score after a move (proximity only) or a change of date (everything).
+     */
+    void refresh() {
+        LocalDate today = LocalDate.now(clock);
+        boolean newDay = !today.equals(scoredDate);
+        if (!originStale && !newDay) {
+            return;
+        }
+        scoredDate = today;
+        ranked.clear();
+        for (Scored scored : scoredById.values()) {
+            if (newDay) {
+                scored.base = baseScore(scored.location, today);
+            }
+            scored.score = scored.base + proximityScore(scored.location);
+            ranked.add(scored);
+        }
+        originStale = false;
+    }
+
+    // ---------------- Scoring ----------------
+
+    private double proximityScore(StudyLocation location) {
+        double distance = DistanceEngine.haversineMeters(originLatitude, originLongitude,
+                location.getLatitude(), location.getLongitude());
+        return PROXIMITY_WEIGHT / (1 + distance / PROXIMITY_HALF_METERS);
+    }
+
+    /**
+     * The parts of the score that do not depend on the user's position.
+     */
+    private static double baseScore(StudyLocation location, LocalDate today) {
+        int freePlaces = Math.max(0, MAX_GROUP_SIZE - location.getMemberCount());
+        double capacity = (double) freePlaces / MAX_GROUP_SIZE;
+
+        int activityCount = Math.max(0, location.getRecentActivity());
+        double activity = activityCount / (activityCount + ACTIVITY_HALF_COUNT);
+
+        double recency = 0;
+        if (location.getCreatedDate() != null) {
+            long ageDays = ChronoUnit.DAYS.between(location.getCreatedDate(), today);
+            if (ageDays >= 0 && ageDays < RECENT_DAYS) {
+                recency = 1 - (double) ageDays / RECENT_DAYS;
+            }
+        }
+
+        return CAPACITY_WEIGHT * capacity + ACTIVITY_WEIGHT * activity + RECENCY_WEIGHT * recency;
+    }
+
+    private static final class Scored {
+        StudyLocation location;
+        double base;
+        double score;
+    }
+}
@@ -0,0 +1,219 @@
+package za.ac.cput.mapapp;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Versioned schema migrations for the LocationDB database.
+ *
+ * The schema_version table records every migration applied to a database.
+ * migrate() reads the highest version once and applies only newer migrations,
+ * each in its own transaction together with its schema_version row, so DAO
+ * calls never need to create tables themselves. The connection pool runs it on
+ * its first connection, i.e. once per process.
+ *
+ * Statements tolerate objects that already exist: databases created before
+ * this class have some of the tables, the lat/lon index and the function. When
+ * two clients migrate the same server at once, the second one's schema_version
+ * insert fails as a duplicate and its transaction is rolled back.
+ * @author abong
+ */
+public final class SchemaManager {
+
+    private static final String CREATE_SCHEMA_VERSION =
+            "CREATE TABLE schema_version (" +
+            "version INT PRIMARY KEY, " +
+            "description VARCHAR(200) NOT NULL, " +
+            "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+    private static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+            new Migration(1, "Base tables",
+                    "CREATE TABLE study_locations (" +
+                    "id INT PRIMARY KEY, " +
+                    "group_name VARCHAR(100) NOT NULL, " +
+                    "location_type VARCHAR(50), " +
+                    "building_name VARCHAR(100), " +
+                    "latitude DOUBLE NOT NULL, " +
+                    "longitude DOUBLE NOT NULL, " +
+                    "capacity INT)",
+                    "CREATE TABLE students (" +
+                    "id INT PRIMARY KEY, " +
+                    "first_name VARCHAR(50), " +
+                    "last_name VARCHAR(50), " +
+                    "student_number VARCHAR(20) UNIQUE, " +
+                    "email VARCHAR(100), " +
+                    "course VARCHAR(100))",
+                    "CREATE TABLE user_location (" +
+                    "id INT PRIMARY KEY, " +
+                    "latitude DOUBLE NOT NULL, " +
+                    "longitude DOUBLE NOT NULL, " +
+                    "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)"),
+
+            new Migration(2, "Indexes for the student, radius and name queries",
+                    "CREATE INDEX idx_students_student_number ON students (student_number)",
+                    "CREATE INDEX idx_study_locations_lat_lon ON study_locations (latitude, longitude)",
+                    "CREATE INDEX idx_study_locations_group_name ON study_locations (group_name)"),
+
+            new Migration(3, "HAVERSINE_METERS function for radius queries",
+                    "CREATE FUNCTION HAVERSINE_METERS(LAT1 DOUBLE, LON1 DOUBLE, LAT2 DOUBLE, LON2 DOUBLE) " +
+                    "RETURNS DOUBLE PARAMETER STYLE JAVA NO SQL LANGUAGE JAVA DETERMINISTIC " +
+                    "EXTERNAL NAME 'za.ac.cput.mapapp.DerbyGeoFunctions.haversineMeters'"),
+
+            new Migration(4, "study_locations change log for StudyLocationChangeFeed",
+                    "CREATE TABLE study_location_changes (" +
+                    "seq BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY, " +
+                    "location_id INT NOT NULL, " +
+                    "changed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+                    "CREATE TRIGGER study_locations_log_insert AFTER INSERT ON study_locations " +
+                    "REFERENCING NEW AS n FOR EACH ROW " +
+                    "INSERT INTO study_location_changes (location_id) VALUES (n.id)",
+                    // An update that changes the id removes the old one
+                    "CREATE TRIGGER study_locations_log_update AFTER UPDATE ON study_locations " +
+                    "REFERENCING OLD AS o NEW AS n FOR EACH ROW " +
+                    "INSERT INTO study_location_changes (location_id) VALUES (o.id), (n.id)",
+                    "CREATE TRIGGER study_locations_log_delete AFTER DELETE ON study_locations " +
+                    "REFERENCING OLD AS o FOR EACH ROW " +
+                    "INSERT INTO study_location_changes (location_id) VALUES (o.id)"),
+
+            new Migration(5, "Group creation date and recent activity for recommendations",
+                    "ALTER TABLE study_locations ADD COLUMN created_at DATE",
+                    "ALTER TABLE study_locations ADD COLUMN activity INT NOT NULL DEFAULT 0"),
+
+            // No foreign key: the offline default student (id 0) is not in students
+            new Migration(6, "Per-student saved locations",
+                    "CREATE TABLE student_locations (" +
+                    "student_id INT PRIMARY KEY, " +
+                    "latitude DOUBLE NOT NULL, " +
+                    "longitude DOUBLE NOT NULL, " +
+                    "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+                    // The old single row belonged to whoever loadCurrentStudent returned: the lowest id
+                    "INSERT INTO student_locations (student_id, latitude, longitude) " +
+                    "SELECT s.id, u.latitude, u.longitude FROM user_location u, students s " +
+                    "WHERE u.id = 1 AND s.id = (SELECT MIN(id) FROM students) " +
+                    "AND NOT EXISTS (SELECT 1 FROM student_locations WHERE student_id = s.id)"),
+
+            // Migration 4 logged both ids on every update; the old id only matters when it changes
+            new Migration(7, "One change log row per update, index for change log retention",
+                    "DROP TRIGGER study_locations_log_update",
+                    "CREATE TRIGGER study_locations_log_update AFTER UPDATE ON study_locations " +
+                    "REFERENCING NEW AS n FOR EACH ROW " +
+                    "INSERT INTO study_location_changes (location_id) VALUES (n.id)",
+                    "CREATE TRIGGER study_locations_log_id_change AFTER UPDATE OF id ON study_locations " +
+                    "REFERENCING OLD AS o NEW AS n FOR EACH ROW WHEN (o.id <> n.id) " +
+                    "INSERT INTO study_location_changes (location_id) VALUES (o.id)",
+                    "CREATE INDEX idx_study_location_changes_changed_at ON study_location_changes (changed_at)")
+    ));
+
+    private SchemaManager() {
+    }
+
+    /**
+     * @return the version the newest migration brings a database to
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Apply every migration newer than the database's recorded version.
+     * @return the database's version afterwards
+     */
+    public static int migrate(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            executeIgnoringExisting(stmt, CREATE_SCHEMA_VERSION);
+        }
+
+        int current = currentVersion(con);
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version > current) {
+                if (apply(con, migration)) {
+                    System.out.println("Applied schema migration " + migration.version + ": " + migration.description);
+                }
+                current = migration.version;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * migrate() for a shared server the app may not be allowed to change:
+     * failures are logged rather than thrown, so queries still run against
+     * whatever schema the server has.
+     */
+    public static void migrateIfPossible(Connection con) {
+        try {
+            migrate(con);
+        } catch (SQLException e) {
+            System.err.println("Could not migrate database schema: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the highest applied version, 0 for a new database
+     */
+    public static int currentVersion(Connection con) throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement("SELECT MAX(version) FROM schema_version");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Run one migration and record it in one transaction.
+     * @return false if another client applied it first
+     */
+    private static boolean apply(Connection con, Migration migration) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+        try (Statement stmt = con.createStatement();
+             PreparedStatement record = con.prepareStatement(
+                     "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+            for (String sql : migration.statements) {
+                executeIgnoringExisting(stmt, sql);
+            }
+            record.setInt(1, migration.version);
+            record.setString(2, migration.description);
+            record.executeUpdate();
+            con.commit();
+            return true;
+        } catch (SQLException e) {
+            con.rollback();
+            // 23505 = duplicate key: another client recorded this version
+            if ("23505".equals(e.getSQLState())) {
+                return false;
+            }
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void executeIgnoringExisting(Statement stmt, String sql) throws SQLException {
+        try {
+            stmt.executeUpdate(sql);
+        } catch (SQLException e) {
+            // X0Y32 = table/index/trigger/column already exists, X0Y68 = routine already exists
+            if (!"X0Y32".equals(e.getSQLState()) && !"X0Y68".equals(e.getSQLState())) {
+                throw e;
+            }
+        }
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final String[] statements;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+}
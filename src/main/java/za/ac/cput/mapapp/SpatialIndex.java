@@ -0,0 +1,246 @@
+package za.ac.cput.mapapp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * In-memory spatial index over study locations.
+ * Locations are bucketed into a uniform latitude/longitude grid, so radius and
+ * k-nearest queries only look at the cells around the query point instead of
+ * scanning every location.
+ * @author abong
+ */
+public class SpatialIndex {
+
+    private static final double METERS_PER_DEGREE = DistanceEngine.METERS_PER_DEGREE;
+
+    // Default cell edge, roughly 100 m on the ground
+    private static final double DEFAULT_CELL_SIZE_METERS = 100;
+
+    private final double cellSizeDegrees;
+    private final Map<Long, List<StudyLocation>> cells = new HashMap<>();
+    private final Map<Integer, StudyLocation> locationsById = new HashMap<>();
+    private final Map<Integer, Long> cellKeysById = new HashMap<>();
+
+    // Occupied grid extent (only grows; bounds how far a nearest search has to go)
+    private int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE;
+    private int minCol = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE;
+
+    public SpatialIndex() {
+        this(DEFAULT_CELL_SIZE_METERS);
+    }
+
+    public SpatialIndex(double cellSizeMeters) {
+        this.cellSizeDegrees = cellSizeMeters / METERS_PER_DEGREE;
+    }
+
+    /**
+     * Build an index over the given locations.
+     */
+    public static SpatialIndex of(Collection<StudyLocation> locations) {
+        SpatialIndex index = new SpatialIndex();
+        for (StudyLocation location : locations) {
+            index.insert(location);
+        }
+        return index;
+    }
+
+    // ---------------- Updates ----------------
+
+    /**
+     * Add a location, replacing any location already indexed with the same id.
+     */
+    public void insert(StudyLocation location) {
+        remove(location.getId());
+
+        int row = cellRow(location.getLatitude());
+        int col = cellColumn(location.getLongitude());
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        minCol = Math.min(minCol, col);
+        maxCol = Math.max(maxCol, col);
+
+        long key = cellKey(row, col);
+        cells.computeIfAbsent(key, k -> new ArrayList<>()).add(location);
+        locationsById.put(location.getId(), location);
+        cellKeysById.put(location.getId(), key);
+    }
+
+    /**
+     * Remove the location with the given id.
+     * @return true if it was indexed
+     */
+    public boolean remove(int id) {
+        StudyLocation existing = locationsById.remove(id);
+        if (existing == null) {
+            return false;
+        }
+
+        long key = cellKeysById.remove(id);
+        List<StudyLocation> bucket = cells.get(key);
+        if (bucket != null) {
+            bucket.remove(existing);
+            if (bucket.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Re-index a location whose coordinates have changed.
+     */
+    public void update(StudyLocation location) {
+        insert(location);
+    }
+
+    public void clear() {
+        cells.clear();
+        locationsById.clear();
+        cellKeysById.clear();
+        minRow = minCol = Integer.MAX_VALUE;
+        maxRow = maxCol = Integer.MIN_VALUE;
+    }
+
+    public int size() {
+        return locationsById.size();
+    }
+
+    // ---------------- Queries ----------------
+
+    /**
+     * Find all locations within the given radius of a point (unordered).
+     */
+    public List<StudyLocation> findWithin(double latitude, double longitude, double radiusMeters) {
+        List<StudyLocation> result = new ArrayList<>();
+
+        double latSpan = radiusMeters / METERS_PER_DEGREE;
+        double lonSpan = latSpan / Math.max(minCosLatitude(latitude, latSpan), 1e-6);
+
+        // Clamp the query box to the occupied part of the grid
+        int fromRow = Math.max(cellRow(latitude - latSpan), minRow);
+        int toRow = Math.min(cellRow(latitude + latSpan), maxRow);
+        int fromCol = Math.max(cellColumn(longitude - lonSpan), minCol);
+        int toCol = Math.min(cellColumn(longitude + lonSpan), maxCol);
+
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int col = fromCol; col <= toCol; col++) {
+                List<StudyLocation> bucket = cells.get(cellKey(row, col));
+                if (bucket == null) {
+                    continue;
+                }
+                for (StudyLocation location : bucket) {
+                    if (DistanceEngine.haversineMeters(latitude, longitude, location.getLatitude(), location.getLongitude()) <= radiusMeters) {
+                        result.add(location);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the k locations nearest to a point, closest first.
+     * Searches rings of cells outwards from the query cell and stops once no
+     * unvisited cell can contain anything closer than the current k-th result.
+     */
+    public List<StudyLocation> findNearest(double latitude, double longitude, int k) {
+        if (k <= 0 || locationsById.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Max-heap on distance holding the best k candidates seen so far
+        PriorityQueue<Candidate> best = new PriorityQueue<>(k + 1,
+                Comparator.comparingDouble((Candidate c) -> c.distance).reversed());
+
+        int centerRow = cellRow(latitude);
+        int centerCol = cellColumn(longitude);
+        int maxRing = maxRingToCoverAll(centerRow, centerCol);
+        double cosLat = Math.max(Math.cos(Math.toRadians(latitude)), 1e-6);
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (best.size() == k) {
+                // Closest any cell in this ring can be, in metres (longitude shrinks with cos(lat))
+                double ringDistance = (ring - 1) * cellSizeDegrees * METERS_PER_DEGREE * Math.min(1.0, cosLat);
+                if (ringDistance > best.peek().distance) {
+                    break;
+                }
+            }
+            for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                int step = edgeRow ? 1 : Math.max(1, 2 * ring);
+                for (int col = centerCol - ring; col <= centerCol + ring; col += step) {
+                    List<StudyLocation> bucket = cells.get(cellKey(row, col));
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (StudyLocation location : bucket) {
+                        double distance = DistanceEngine.haversineMeters(latitude, longitude,
+                                location.getLatitude(), location.getLongitude());
+                        if (best.size() < k) {
+                            best.add(new Candidate(location, distance));
+                        } else if (distance < best.peek().distance) {
+                            best.poll();
+                            best.add(new Candidate(location, distance));
+                        }
+                    }
+                }
+            }
+        }
+
+        List<StudyLocation> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().location);
+        }
+        // Heap drains farthest first
+        Collections.reverse(result);
+        return result;
+    }
+
+    // ---------------- Grid helpers ----------------
+
+    private int cellRow(double latitude) {
+        return (int) Math.floor(latitude / cellSizeDegrees);
+    }
+
+    private int cellColumn(double longitude) {
+        return (int) Math.floor(longitude / cellSizeDegrees);
+    }
+
+    private static long cellKey(int row, int col) {
+        return ((long) row << 32) | (col & 0xffffffffL);
+    }
+
+    /**
+     * Smallest cos(latitude) within the latitude band, so longitude spans never undershoot.
+     */
+    private static double minCosLatitude(double latitude, double latSpan) {
+        double farthestFromEquator = Math.min(90, Math.abs(latitude) + latSpan);
+        return Math.cos(Math.toRadians(farthestFromEquator));
+    }
+
+    /**
+     * Number of rings needed before every occupied cell has been visited.
+     */
+    private int maxRingToCoverAll(int centerRow, int centerCol) {
+        return Math.max(
+                Math.max(Math.abs(minRow - centerRow), Math.abs(maxRow - centerRow)),
+                Math.max(Math.abs(minCol - centerCol), Math.abs(maxCol - centerCol)));
+    }
+
+    private static class Candidate {
+        final StudyLocation location;
+        final double distance;
+
+        Candidate(StudyLocation location, double distance) {
+            this.location = location;
+            this.distance = distance;
+        }
+    }
+}
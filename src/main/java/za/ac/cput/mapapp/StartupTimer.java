@@ -0,0 +1,71 @@
+package za.ac.cput.mapapp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long startup takes: time-to-first-frame (window visible with its
+ * skeleton) and time-to-interactive (all startup data loaded and displayed),
+ * plus the duration of each background loading stage.
+ * @author abong
+ */
+public final class StartupTimer {
+
+    private static volatile long startNanos = System.nanoTime();
+    private static volatile long firstFrameNanos;
+    private static volatile long interactiveNanos;
+    private static final Map<String, Long> stageNanos = new LinkedHashMap<>();
+
+    private StartupTimer() {
+    }
+
+    /**
+     * Mark the start of the application (call first thing in main).
+     */
+    public static void markStart() {
+        startNanos = System.nanoTime();
+    }
+
+    public static void markFirstFrame() {
+        if (firstFrameNanos == 0) {
+            firstFrameNanos = System.nanoTime();
+            System.out.printf("Startup: time-to-first-frame %.1f ms%n", getTimeToFirstFrameMillis());
+        }
+    }
+
+    public static void markStage(String stage) {
+        long elapsed = System.nanoTime() - startNanos;
+        synchronized (stageNanos) {
+            stageNanos.put(stage, elapsed);
+        }
+        System.out.printf("Startup: stage '%s' finished at %.1f ms%n", stage, elapsed / 1_000_000.0);
+    }
+
+    public static void markInteractive() {
+        if (interactiveNanos == 0) {
+            interactiveNanos = System.nanoTime();
+            System.out.printf("Startup: time-to-interactive %.1f ms%n", getTimeToInteractiveMillis());
+        }
+    }
+
+    public static double getTimeToFirstFrameMillis() {
+        return firstFrameNanos == 0 ? -1 : (firstFrameNanos - startNanos) / 1_000_000.0;
+    }
+
+    public static double getTimeToInteractiveMillis() {
+        return interactiveNanos == 0 ? -1 : (interactiveNanos - startNanos) / 1_000_000.0;
+    }
+
+    /**
+     * @return stage name to milliseconds since start, in completion order
+     */
+    public static Map<String, Double> getStageMillis() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        synchronized (stageNanos) {
+            for (Map.Entry<String, Long> entry : stageNanos.entrySet()) {
+                result.put(entry.getKey(), entry.getValue() / 1_000_000.0);
+            }
+        }
+        return result;
+    }
+}
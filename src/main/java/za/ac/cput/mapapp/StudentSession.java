@@ -0,0 +1,83 @@
+package za.ac.cput.mapapp;
+
+/**
+ * The student using this app instance, resolved once per session.
+ *
+ * The student number comes from learnhub.student.number and is looked up
+ * through the students.student_number index. Without it the session falls
+ * back to the first student in the database (the old single-user behaviour),
+ * and without a database to the default offline student (id 0). Locations are
+ * saved and loaded by the session's student id, so sessions on different lab
+ * machines never share a row.
+ * @author abong
+ */
+public final class StudentSession {
+
+    private static volatile StudentSession current = new StudentSession(new Student(), false);
+
+    private final Student student;
+    private final boolean fromDatabase;
+
+    private StudentSession(Student student, boolean fromDatabase) {
+        this.student = student;
+        this.fromDatabase = fromDatabase;
+    }
+
+    /**
+     * Session for a student already loaded (or the default student).
+     */
+    public static StudentSession of(Student student) {
+        return new StudentSession(student, student.getId() != 0);
+    }
+
+    /**
+     * Find this machine's student. Runs queries, so call it off the EDT.
+     */
+    public static StudentSession resolve(StudyLocationDBDemo dao) {
+        String studentNumber = AppConfig.getStudentNumber();
+        if (!studentNumber.isEmpty()) {
+            Student student = dao.loadStudentByNumber(studentNumber);
+            if (student != null) {
+                return new StudentSession(student, true);
+            }
+            System.err.println("Student " + studentNumber + " not found, using the default student");
+            return new StudentSession(new Student(), false);
+        }
+
+        System.out.println("learnhub.student.number not set, using the first student in the database");
+        Student student = dao.loadCurrentStudent();
+        return new StudentSession(student, student.getId() != 0);
+    }
+
+    /**
+     * @return the app's session; the default student until one is set
+     */
+    public static StudentSession getCurrent() {
+        return current;
+    }
+
+    public static void setCurrent(StudentSession session) {
+        current = session;
+    }
+
+    public Student getStudent() {
+        return student;
+    }
+
+    public int getStudentId() {
+        return student.getId();
+    }
+
+    /**
+     * @return false for the default offline student
+     */
+    public boolean isFromDatabase() {
+        return fromDatabase;
+    }
+
+    @Override
+    public String toString() {
+        return "StudentSession{studentId=" + student.getId() + ", studentNumber=" + student.getStudentNumber()
+                + (fromDatabase ? "" : ", default") + "}";
+    }
+}
@@ -1,5 +1,7 @@
 package za.ac.cput.mapapp;
 
+import java.time.LocalDate;
+
 /**
  * Data model class for Study Location
  * @author student
@@ -13,6 +15,8 @@ public class StudyLocation {
     private double longitude;
     private int memberCount;
     private double distance; // Distance from user's location
+    private LocalDate createdDate; // When the group was created (null if unknown)
+    private int recentActivity; // Messages and study sessions in the last 30 days
     
     // Constructor
     public StudyLocation(int id, String groupName, String locationName, String building, 
@@ -60,6 +64,14 @@ public class StudyLocation {
         return distance;
     }
     
+    public LocalDate getCreatedDate() {
+        return createdDate;
+    }
+    
+    public int getRecentActivity() {
+        return recentActivity;
+    }
+    
     // Setters
     public void setId(int id) {
         this.id = id;
@@ -93,6 +105,14 @@ public class StudyLocation {
         this.distance = distance;
     }
     
+    public void setCreatedDate(LocalDate createdDate) {
+        this.createdDate = createdDate;
+    }
+    
+    public void setRecentActivity(int recentActivity) {
+        this.recentActivity = recentActivity;
+    }
+    
     @Override
     public String toString() {
         return String.format("StudyLocation{id=%d, groupName='%s', locationName='%s', building='%s', " +
@@ -0,0 +1,134 @@
+package za.ac.cput.mapapp;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Paints one study group as a list row or a grid card.
+ * A single lightweight component is reused for every cell (the JList only asks
+ * for the visible ones), and it paints the icon, labels and MESSAGE button
+ * itself instead of holding child components, so scrolling a long list creates
+ * no Swing components at all. Clicks on the MESSAGE button are resolved by the
+ * list against getMessageButtonBounds.
+ * @author abong
+ */
+public class StudyLocationCellRenderer extends JComponent implements ListCellRenderer<StudyLocation> {
+
+    // Cell sizes, including the 10px gap around each row / card
+    public static final int LIST_CELL_WIDTH = 800;
+    public static final int LIST_CELL_HEIGHT = 70;
+    public static final int GRID_CELL_WIDTH = 270;
+    public static final int GRID_CELL_HEIGHT = 130;
+
+    private static final Color BUTTON_BLUE = new Color(135, 206, 235);
+    private static final Color GREY_BACKGROUND = new Color(240, 240, 240);
+
+    private static final Font LIST_NAME_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font LIST_TEXT_FONT = new Font("Arial", Font.PLAIN, 10);
+    private static final Font LIST_BUTTON_FONT = new Font("Arial", Font.PLAIN, 10);
+    private static final Font GRID_NAME_FONT = new Font("Arial", Font.BOLD, 11);
+    private static final Font GRID_TEXT_FONT = new Font("Arial", Font.PLAIN, 9);
+    private static final Font GRID_BUTTON_FONT = new Font("Arial", Font.PLAIN, 8);
+
+    private static final String MESSAGE = "MESSAGE";
+
+    private static final Rectangle LIST_MESSAGE_BUTTON = new Rectangle(655, 30, 100, 20);
+    private static final Rectangle GRID_MESSAGE_BUTTON = new Rectangle(20, 80, 100, 20);
+
+    private boolean gridMode;
+    private StudyLocation location;
+
+    public StudyLocationCellRenderer() {
+        setOpaque(true);
+    }
+
+    public void setGridMode(boolean gridMode) {
+        this.gridMode = gridMode;
+    }
+
+    public boolean isGridMode() {
+        return gridMode;
+    }
+
+    /**
+     * @return bounds of the MESSAGE button relative to the cell
+     */
+    public Rectangle getMessageButtonBounds() {
+        return new Rectangle(gridMode ? GRID_MESSAGE_BUTTON : LIST_MESSAGE_BUTTON);
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<? extends StudyLocation> list, StudyLocation value,
+                                                  int index, boolean isSelected, boolean cellHasFocus) {
+        this.location = value;
+        return this;
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics;
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        g.setColor(GREY_BACKGROUND);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (location == null) {
+            return;
+        }
+
+        String locationText = "• " + MapApp.formatDistance(location.getDistance()) + " - " + location.getBuilding();
+        String membersText = location.getMemberCount() + " MEMBERS";
+
+        if (gridMode) {
+            paintCard(g, 10, 10, 260, 120, 50);
+            paintText(g, locationText, membersText, 80, 20, GRID_NAME_FONT, GRID_TEXT_FONT);
+            paintButton(g, GRID_MESSAGE_BUTTON, GRID_BUTTON_FONT);
+        } else {
+            paintCard(g, 10, 10, 790, 60, 40);
+            paintText(g, locationText, membersText, 70, 20, LIST_NAME_FONT, LIST_TEXT_FONT);
+            paintButton(g, LIST_MESSAGE_BUTTON, LIST_BUTTON_FONT);
+        }
+    }
+
+    private void paintCard(Graphics2D g, int x, int y, int width, int height, int iconSize) {
+        g.setColor(Color.LIGHT_GRAY);
+        g.fillRect(x, y, width, height);
+        g.setColor(Color.GRAY);
+        g.drawRect(x, y, width - 1, height - 1);
+
+        // Group icon placeholder
+        g.fillRect(x + 10, y + 10, iconSize, iconSize);
+        g.setColor(Color.DARK_GRAY);
+        g.drawRect(x + 10, y + 10, iconSize - 1, iconSize - 1);
+    }
+
+    /**
+     * Name, location and member lines, laid out like the original labels
+     * (15px name line, then 12px text lines).
+     */
+    private void paintText(Graphics2D g, String locationText, String membersText, int x, int y,
+                           Font nameFont, Font textFont) {
+        g.setColor(Color.BLACK);
+        g.setFont(nameFont);
+        FontMetrics nameMetrics = g.getFontMetrics();
+        g.drawString(location.getGroupName(), x, y + centredBaseline(nameMetrics, 15));
+
+        g.setFont(textFont);
+        FontMetrics textMetrics = g.getFontMetrics();
+        g.drawString(locationText, x, y + 15 + centredBaseline(textMetrics, 12));
+        g.drawString(membersText, x, y + 27 + centredBaseline(textMetrics, 12));
+    }
+
+    private void paintButton(Graphics2D g, Rectangle bounds, Font font) {
+        g.setColor(BUTTON_BLUE);
+        g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+        g.setColor(Color.BLACK);
+        g.setFont(font);
+        FontMetrics metrics = g.getFontMetrics();
+        g.drawString(MESSAGE, bounds.x + (bounds.width - metrics.stringWidth(MESSAGE)) / 2,
+                bounds.y + centredBaseline(metrics, bounds.height));
+    }
+
+    private static int centredBaseline(FontMetrics metrics, int lineHeight) {
+        return (lineHeight - metrics.getHeight()) / 2 + metrics.getAscent();
+    }
+}
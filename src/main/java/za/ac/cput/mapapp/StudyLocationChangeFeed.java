@@ -0,0 +1,309 @@
+package za.ac.cput.mapapp;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incremental changes to study_locations since the last poll.
+ *
+ * Triggers on study_locations (created by SchemaManager) append the id of
+ * every inserted, updated or deleted row to the study_location_changes log,
+ * whose identity column is the table's version. A poll asks only for log
+ * entries newer than the last version it saw and joins them to the current
+ * rows: ids with a row are upserts, ids without one were deleted. Several changes to one group between polls collapse
+ * to one row. An idle poll is a single primary key range probe that returns
+ * nothing, so every lab machine can poll every few seconds without reloading
+ * the table.
+ *
+ * Call currentVersion() before the full load and start(version) after it;
+ * changes made during the load are then polled again, which is harmless.
+ *
+ * Polls also delete log entries older than learnhub.sync.retentionHours (at
+ * most once an hour, always keeping the newest entry). A feed whose version is
+ * older than the oldest entry left may have missed changes: its poll returns
+ * expired Changes and stops the feed, and the caller must do a full reload and
+ * start(version) again (reload() does both for a full-table client).
+ * @author abong
+ */
+public class StudyLocationChangeFeed {
+
+    private static final String SQL_CURRENT_VERSION =
+            "SELECT MAX(seq) FROM study_location_changes";
+
+    private static final String SQL_OLDEST_VERSION =
+            "SELECT MIN(seq) FROM study_location_changes";
+
+    private static final String SQL_PURGE =
+            "DELETE FROM study_location_changes WHERE changed_at < ? " +
+            "AND seq < (SELECT MAX(seq) FROM study_location_changes)";
+
+    private static final String SQL_ALL_LOCATIONS =
+            "SELECT id, GROUP_NAME, LOCATION_TYPE, BUILDING_NAME, LATITUDE, LONGITUDE, CAPACITY, " +
+            "CREATED_AT, ACTIVITY FROM study_locations";
+
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String SQL_CHANGES_SINCE =
+            "SELECT c.location_id, c.last_seq, s.id, s.GROUP_NAME, s.LOCATION_TYPE, " +
+            "s.BUILDING_NAME, s.LATITUDE, s.LONGITUDE, s.CAPACITY, s.CREATED_AT, s.ACTIVITY " +
+            "FROM (SELECT location_id, MAX(seq) AS last_seq FROM study_location_changes " +
+            "WHERE seq > ? GROUP BY location_id) c " +
+            "LEFT OUTER JOIN study_locations s ON s.id = c.location_id";
+
+    private final ConnectionPool pool;
+    private final long retentionMillis;
+    private volatile long version = -1;
+    private long nextPurgeMillis;
+
+    public StudyLocationChangeFeed() {
+        this(ConnectionPool.getShared());
+    }
+
+    public StudyLocationChangeFeed(ConnectionPool pool) {
+        this(pool, TimeUnit.HOURS.toMillis(AppConfig.getSyncRetentionHours()));
+    }
+
+    /**
+     * @param retentionMillis age after which log entries are deleted; 0 keeps them
+     */
+    public StudyLocationChangeFeed(ConnectionPool pool, long retentionMillis) {
+        this.pool = pool;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * The changes found by one poll.
+     */
+    public static final class Changes {
+        private final List<StudyLocation> upserted;
+        private final List<Integer> deletedIds;
+        private final long version;
+        private final boolean expired;
+
+        Changes(List<StudyLocation> upserted, List<Integer> deletedIds, long version) {
+            this(upserted, deletedIds, version, false);
+        }
+
+        private Changes(List<StudyLocation> upserted, List<Integer> deletedIds, long version, boolean expired) {
+            this.upserted = Collections.unmodifiableList(upserted);
+            this.deletedIds = Collections.unmodifiableList(deletedIds);
+            this.version = version;
+            this.expired = expired;
+        }
+
+        static Changes expired(long version) {
+            return new Changes(new ArrayList<>(), new ArrayList<>(), version, true);
+        }
+
+        /**
+         * @return inserted or updated groups, as they are now (distance not set)
+         */
+        public List<StudyLocation> getUpserted() {
+            return upserted;
+        }
+
+        public List<Integer> getDeletedIds() {
+            return deletedIds;
+        }
+
+        /**
+         * @return the newest version these changes include
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public boolean isEmpty() {
+            return upserted.isEmpty() && deletedIds.isEmpty();
+        }
+
+        /**
+         * @return true if the log no longer reaches back to the feed's version;
+         *         the feed has stopped and the caller must reload everything
+         */
+        public boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public String toString() {
+            return "Changes{upserted=" + upserted.size() + ", deleted=" + deletedIds.size()
+                    + ", version=" + version + (expired ? ", expired" : "") + "}";
+        }
+    }
+
+    /**
+     * A full load of study locations, tagged with the change log version read
+     * before it. Changes with a higher version may be missing from it.
+     */
+    public static final class Snapshot {
+        private final List<StudyLocation> locations;
+        private final long version;
+
+        /**
+         * @param version change log version read before the load, or -1 if unknown
+         */
+        public Snapshot(List<StudyLocation> locations, long version) {
+            this.locations = locations;
+            this.version = version;
+        }
+
+        public List<StudyLocation> getLocations() {
+            return locations;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    // ---------------- Versions ----------------
+
+    /**
+     * @return the change log's newest version (0 when empty)
+     */
+    public long currentVersion() throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(SQL_CURRENT_VERSION);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Poll from the given version on. Ignored once started, so a later full
+     * reload does not move the feed back; an expired feed can be started again.
+     */
+    public synchronized void start(long fromVersion) {
+        if (version < 0) {
+            version = fromVersion;
+        }
+    }
+
+    public boolean isStarted() {
+        return version >= 0;
+    }
+
+    /**
+     * @return the last version seen, or -1 before start
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    // ---------------- Polling ----------------
+
+    /**
+     * Fetch the changes since the last poll and advance the version past them.
+     * @return the changes, or expired Changes (and a stopped feed) if entries
+     *         after the feed's version have been purged
+     * @throws IllegalStateException before start
+     */
+    public synchronized Changes poll() throws SQLException {
+        if (version < 0) {
+            throw new IllegalStateException("Change feed not started");
+        }
+        purgeIfDue();
+        List<StudyLocation> upserted = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        long newest = version;
+
+        try (Connection con = pool.getConnection()) {
+            if (oldestVersion(con) > version + 1) {
+                long expiredAt = version;
+                version = -1;
+                return Changes.expired(expiredAt);
+            }
+            try (PreparedStatement stmt = con.prepareStatement(SQL_CHANGES_SINCE)) {
+                stmt.setLong(1, version);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        newest = Math.max(newest, rs.getLong("last_seq"));
+                        rs.getInt("id");
+                        if (rs.wasNull()) {
+                            deletedIds.add(rs.getInt("location_id"));
+                        } else {
+                            upserted.add(StudyLocationDBDemo.readStudyLocation(rs));
+                        }
+                    }
+                }
+            }
+        }
+
+        version = newest;
+        return new Changes(upserted, deletedIds, newest);
+    }
+
+    /**
+     * Load every study location and (re)start the feed at the version read
+     * before the load, e.g. after an expired poll.
+     */
+    public synchronized Snapshot reload() throws SQLException {
+        long from = currentVersion();
+        List<StudyLocation> locations = new ArrayList<>();
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(SQL_ALL_LOCATIONS);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                locations.add(StudyLocationDBDemo.readStudyLocation(rs));
+            }
+        }
+        version = from;
+        return new Snapshot(locations, from);
+    }
+
+    /**
+     * @return the oldest version still in the log, or 0 when it is empty
+     */
+    private static long oldestVersion(Connection con) throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement(SQL_OLDEST_VERSION);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // ---------------- Retention ----------------
+
+    /**
+     * Delete log entries older than the retention, keeping the newest so the
+     * current version survives.
+     * @return entries deleted
+     */
+    public int purge() throws SQLException {
+        if (retentionMillis <= 0) {
+            return 0;
+        }
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(SQL_PURGE)) {
+            stmt.setTimestamp(1, new Timestamp(System.currentTimeMillis() - retentionMillis));
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Purge at most once an hour. A client without DELETE rights on a shared
+     * server keeps polling; some other client or the server purges.
+     */
+    private void purgeIfDue() {
+        long now = System.currentTimeMillis();
+        if (retentionMillis <= 0 || now < nextPurgeMillis) {
+            return;
+        }
+        nextPurgeMillis = now + PURGE_INTERVAL_MILLIS;
+        try {
+            int purged = purge();
+            if (purged > 0) {
+                System.out.println("Purged " + purged + " study location change log entries");
+            }
+        } catch (SQLException e) {
+            System.err.println("Could not purge the study location change log: " + e.getMessage());
+        }
+    }
+}
@@ -5,7 +5,7 @@ package za.ac.cput.mapapp;
  * @author abong
  */
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.PreparedStatement;
@@ -17,8 +17,61 @@ import java.util.logging.Logger;
 
 public class StudyLocationDBDemo {
     
-    // Database connection details for Derby
-    private static final String DB_URL = "jdbc:derby://localhost:1527/LocationDB;user=app;password=app";
+    // Shared connection pool (connections and prepared statements are reused)
+    private final ConnectionPool pool;
+    
+    private static final double METERS_PER_DEGREE = DistanceEngine.METERS_PER_DEGREE;
+    
+    private static final String SQL_WITHIN_BOUNDING_BOX =
+            "SELECT id, GROUP_NAME, LOCATION_TYPE, BUILDING_NAME, LATITUDE, LONGITUDE, CAPACITY, " +
+            "CREATED_AT, ACTIVITY " +
+            "FROM study_locations " +
+            "WHERE LATITUDE BETWEEN ? AND ? AND LONGITUDE BETWEEN ? AND ?";
+    
+    private static final String SQL_WITHIN_REFINED =
+            "SELECT id, GROUP_NAME, LOCATION_TYPE, BUILDING_NAME, LATITUDE, LONGITUDE, CAPACITY, " +
+            "CREATED_AT, ACTIVITY, HAVERSINE_METERS(?, ?, LATITUDE, LONGITUDE) AS DISTANCE " +
+            "FROM study_locations " +
+            "WHERE LATITUDE BETWEEN ? AND ? AND LONGITUDE BETWEEN ? AND ? " +
+            "AND HAVERSINE_METERS(?, ?, LATITUDE, LONGITUDE) <= ? " +
+            "ORDER BY DISTANCE";
+    
+    private static final String SQL_LOAD_STUDENT_LOCATION =
+            "SELECT latitude, longitude FROM student_locations WHERE student_id = ?";
+    
+    // Same student as StudentSession.resolve: by number, else the first student, else the default (id 0)
+    private static final String SQL_LOAD_LOCATION_BY_STUDENT_NUMBER =
+            "SELECT latitude, longitude FROM student_locations " +
+            "WHERE student_id = COALESCE((SELECT id FROM students WHERE student_number = ?), 0)";
+    
+    private static final String SQL_LOAD_FIRST_STUDENT_LOCATION =
+            "SELECT latitude, longitude FROM student_locations " +
+            "WHERE student_id = COALESCE((SELECT MIN(id) FROM students), 0)";
+    
+    private static final String SQL_UPDATE_STUDENT_LOCATION =
+            "UPDATE student_locations SET latitude = ?, longitude = ?, updated_at = CURRENT_TIMESTAMP " +
+            "WHERE student_id = ?";
+    
+    private static final String SQL_INSERT_STUDENT_LOCATION =
+            "INSERT INTO student_locations (student_id, latitude, longitude) VALUES (?, ?, ?)";
+    
+
+    private static volatile boolean storedFunctionAvailable = true;
+    
+    public StudyLocationDBDemo() {
+        this(ConnectionPool.getShared());
+    }
+    
+    public StudyLocationDBDemo(ConnectionPool pool) {
+        this.pool = pool;
+    }
+    
+    /**
+     * @return current connection pool metrics
+     */
+    public PoolMetrics getPoolMetrics() {
+        return pool.getMetrics();
+    }
     
     /**
      * Display all study locations from the database (for testing purposes)
@@ -29,9 +82,7 @@ public class StudyLocationDBDemo {
         ResultSet rs = null;
 
         try {
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
-            String url = "jdbc:derby://localhost:1527/LocationDB;user=app;password=app";
-            con = DriverManager.getConnection(url);
+            con = pool.getConnection();
             System.out.println("Connected!");
 
             stat = con.createStatement();
@@ -77,15 +128,12 @@ public class StudyLocationDBDemo {
         ResultSet rs = null;
         
         try {
-            // Load Derby JDBC driver
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
-            
-            // Connect to database
-            con = DriverManager.getConnection(DB_URL);
+            // Borrow a pooled connection
+            con = pool.getConnection();
             
             // Prepare SQL query
-            String sql = "SELECT id, GROUP_NAME, LOCATION_TYPE, BUILDING_NAME, LATITUDE, LONGITUDE, CAPACITY " +
-                        "FROM study_locations ORDER BY group_name";
+            String sql = "SELECT id, GROUP_NAME, LOCATION_TYPE, BUILDING_NAME, LATITUDE, LONGITUDE, CAPACITY, " +
+                        "CREATED_AT, ACTIVITY FROM study_locations ORDER BY group_name";
             stmt = con.prepareStatement(sql);
             
             // Execute query
@@ -93,17 +141,7 @@ public class StudyLocationDBDemo {
             
             // Process results
             while (rs.next()) {
-                StudyLocation location = new StudyLocation(
-                    rs.getInt("id"),
-                    rs.getString("GROUP_NAME"),
-                    rs.getString("LOCATION_TYPE"),
-                    rs.getString("BUILDING_NAME"),
-                    rs.getDouble("LATITUDE"),
-                    rs.getDouble("LONGITUDE"),
-                    rs.getInt("CAPACITY")
-                );
-                
-                studyLocations.add(location);
+                studyLocations.add(readStudyLocation(rs));
             }
             
             System.out.println("Successfully loaded " + studyLocations.size() + " study locations from database");
@@ -121,19 +159,144 @@ public class StudyLocationDBDemo {
         return studyLocations;
     }
     
+    /**
+     * Load all study locations with their distance (meters) from the user's position.
+     */
     public List<StudyLocation> loadStudyLocationsWithDistance(double userLatitude, double userLongitude) {
         List<StudyLocation> studyLocations = loadStudyLocations();
+        DistanceEngine.of(studyLocations).applyDistances(userLatitude, userLongitude);
+        return studyLocations;
+    }
+    
+    /**
+     * Load only the study locations within a radius of a point, closest first.
+     * A bounding box on the indexed LATITUDE/LONGITUDE columns prefilters rows in SQL.
+     * When the HAVERSINE_METERS stored function is available the exact distance
+     * check and ORDER BY also run in Derby; otherwise they are done here.
+     * @param latitude query point latitude
+     * @param longitude query point longitude
+     * @param radiusMeters search radius in meters
+     * @return locations inside the radius with distance (meters) set, sorted by distance
+     * @throws SQLException if the database cannot be queried, so callers can tell a failure from no groups
+     */
+    public List<StudyLocation> loadStudyLocationsWithin(double latitude, double longitude, double radiusMeters)
+            throws SQLException {
+        List<StudyLocation> studyLocations = new ArrayList<>();
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
         
-        // Calculate distance for each location
-        for (StudyLocation location : studyLocations) {
-            double distance = calculateDistance(userLatitude, userLongitude, 
-                                               location.getLatitude(), location.getLongitude());
-            location.setDistance(distance);
+        // Bounding box around the point (1 degree of latitude ~ 111.2 km)
+        double latSpan = radiusMeters / METERS_PER_DEGREE;
+        double lonSpan = latSpan / Math.max(Math.cos(Math.toRadians(Math.min(89.9, Math.abs(latitude) + latSpan))), 1e-6);
+        
+        try {
+            con = pool.getConnection();
+            
+            boolean refineInDatabase = storedFunctionAvailable;
+            try {
+                stmt = prepareWithin(con, refineInDatabase, latitude, longitude, latSpan, lonSpan, radiusMeters);
+                rs = stmt.executeQuery();
+            } catch (SQLException e) {
+                if (!refineInDatabase || !isMissingStoredFunction(e)) {
+                    // Connection resets, lock timeouts etc. say nothing about the function
+                    throw e;
+                }
+                // Function not registered, or its class is not on the server classpath
+                disableStoredFunction(e);
+                refineInDatabase = false;
+                try { if (stmt != null) stmt.close(); } catch (Exception ex) {}
+                stmt = prepareWithin(con, false, latitude, longitude, latSpan, lonSpan, radiusMeters);
+                rs = stmt.executeQuery();
+            }
+            
+            while (rs.next()) {
+                StudyLocation location = readStudyLocation(rs);
+                if (refineInDatabase) {
+                    location.setDistance(rs.getDouble("DISTANCE"));
+                }
+                studyLocations.add(location);
+            }
+            
+            if (!refineInDatabase) {
+                // Refine the bounding box to the exact radius in Java
+                studyLocations = refineWithin(studyLocations, latitude, longitude, radiusMeters);
+            }
+            
+            System.out.println("Loaded " + studyLocations.size() + " study locations within " +
+                               radiusMeters + " m" + (refineInDatabase ? " (refined in database)" : ""));
+            
+        } finally {
+            // Clean up resources
+            try { if (rs != null) rs.close(); } catch (Exception e) {}
+            try { if (stmt != null) stmt.close(); } catch (Exception e) {}
+            try { if (con != null) con.close(); } catch (Exception e) {}
         }
         
         return studyLocations;
     }
     
+    private PreparedStatement prepareWithin(Connection con, boolean refineInDatabase, double latitude, double longitude,
+                                            double latSpan, double lonSpan, double radiusMeters) throws SQLException {
+        PreparedStatement stmt = con.prepareStatement(refineInDatabase ? SQL_WITHIN_REFINED : SQL_WITHIN_BOUNDING_BOX);
+        int i = 1;
+        if (refineInDatabase) {
+            stmt.setDouble(i++, latitude);
+            stmt.setDouble(i++, longitude);
+        }
+        stmt.setDouble(i++, latitude - latSpan);
+        stmt.setDouble(i++, latitude + latSpan);
+        stmt.setDouble(i++, longitude - lonSpan);
+        stmt.setDouble(i++, longitude + lonSpan);
+        if (refineInDatabase) {
+            stmt.setDouble(i++, latitude);
+            stmt.setDouble(i++, longitude);
+            stmt.setDouble(i, radiusMeters);
+        }
+        return stmt;
+    }
+    
+    /**
+     * Map the current row of a study_locations query (including CREATED_AT and ACTIVITY).
+     */
+    static StudyLocation readStudyLocation(ResultSet rs) throws SQLException {
+        StudyLocation location = new StudyLocation(
+            rs.getInt("id"),
+            rs.getString("GROUP_NAME"),
+            rs.getString("LOCATION_TYPE"),
+            rs.getString("BUILDING_NAME"),
+            rs.getDouble("LATITUDE"),
+            rs.getDouble("LONGITUDE"),
+            rs.getInt("CAPACITY")
+        );
+        Date createdAt = rs.getDate("CREATED_AT");
+        location.setCreatedDate(createdAt != null ? createdAt.toLocalDate() : null);
+        location.setRecentActivity(rs.getInt("ACTIVITY"));
+        return location;
+    }
+    
+    /**
+     * Whether the error means HAVERSINE_METERS or its class is missing:
+     * 42Y03 (no such function), 42X50/42X51 (method or class not found) or
+     * XJ001 (Java exception, e.g. ClassNotFoundException, loading it).
+     */
+    private static boolean isMissingStoredFunction(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            String state = next.getSQLState();
+            if ("42Y03".equals(state) || "42X50".equals(state) || "42X51".equals(state) || "XJ001".equals(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void disableStoredFunction(SQLException e) {
+        if (storedFunctionAvailable) {
+            storedFunctionAvailable = false;
+            System.err.println("HAVERSINE_METERS unavailable (" + e.getSQLState() + "), refining distances in Java");
+        }
+    }
+    
     public Student loadStudentByNumber(String studentNumber) {
         Connection con = null;
         PreparedStatement stmt = null;
@@ -141,11 +304,8 @@ public class StudyLocationDBDemo {
         Student student = null;
         
         try {
-            // Load Derby JDBC driver
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
-            
-            // Connect to database
-            con = DriverManager.getConnection(DB_URL);
+            // Borrow a pooled connection
+            con = pool.getConnection();
             
             // Prepare SQL query
             String sql = "SELECT id, first_name, last_name, student_number, email, course " +
@@ -185,6 +345,10 @@ public class StudyLocationDBDemo {
         return student;
     }
     
+    /**
+     * The student with the lowest id, or the default student. Only a fallback
+     * for single-user databases: StudentSession resolves the real student.
+     */
     public Student loadCurrentStudent() {
         Connection con = null;
         PreparedStatement stmt = null;
@@ -192,11 +356,8 @@ public class StudyLocationDBDemo {
         Student student = null;
         
         try {
-            // Load Derby JDBC driver
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
-            
-            // Connect to database
-            con = DriverManager.getConnection(DB_URL);
+            // Borrow a pooled connection
+            con = pool.getConnection();
             
             // Prepare SQL query - get the user (assuming only one record)
             String sql = "SELECT id, first_name, last_name, student_number, email, course " +
@@ -248,8 +409,7 @@ public class StudyLocationDBDemo {
         ResultSet rs = null;
 
         try {
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
-            con = DriverManager.getConnection(DB_URL);
+            con = pool.getConnection();
             System.out.println("Connected to database!");
 
             stat = con.createStatement();
@@ -283,20 +443,23 @@ public class StudyLocationDBDemo {
         }
     }
     
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Radius of the earth in km
-        
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        double distance = R * c; // Distance in km
+    /**
+     * Keep the candidates within the radius, with distances set, closest first.
+     */
+    private List<StudyLocation> refineWithin(List<StudyLocation> candidates, double latitude, double longitude,
+                                             double radiusMeters) {
+        int[] indexes = new int[candidates.size()];
+        double[] distances = new double[candidates.size()];
+        int count = DistanceEngine.of(candidates).within(latitude, longitude, radiusMeters, indexes, distances);
         
-        return distance;
+        List<StudyLocation> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StudyLocation location = candidates.get(indexes[i]);
+            location.setDistance(distances[i]);
+            result.add(location);
+        }
+        result.sort((a, b) -> Double.compare(a.getDistance(), b.getDistance()));
+        return result;
     }
     
     /**
@@ -306,8 +469,7 @@ public class StudyLocationDBDemo {
     public boolean testConnection() {
         Connection con = null;
         try {
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
-            con = DriverManager.getConnection(DB_URL);
+            con = pool.getConnection();
             System.out.println("Database connection test successful!");
             return true;
         } catch (Exception e) {
@@ -318,25 +480,21 @@ public class StudyLocationDBDemo {
         }
     }
     
-     /**
-     * Load the user's saved location (latitude and longitude) from the database.
+    /**
+     * Load a student's saved location (latitude and longitude) from the database.
      * @return double[] { latitude, longitude } or null if not found
      */
-    public double[] loadUserLocation() {
+    public double[] loadUserLocation(int studentId) {
         double[] location = null;
         Connection con = null;
         PreparedStatement stmt = null;
         ResultSet rs = null;
 
         try {
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
-            con = DriverManager.getConnection(DB_URL);
+            con = pool.getConnection();
 
-            // Create table if it doesn’t exist
-            createUserLocationTableIfNotExists(con);
-
-            String sql = "SELECT latitude, longitude FROM user_location WHERE id = 1";
-            stmt = con.prepareStatement(sql);
+            stmt = con.prepareStatement(SQL_LOAD_STUDENT_LOCATION);
+            stmt.setInt(1, studentId);
             rs = stmt.executeQuery();
 
             if (rs.next()) {
@@ -344,13 +502,10 @@ public class StudyLocationDBDemo {
                     rs.getDouble("latitude"),
                     rs.getDouble("longitude")
                 };
-                System.out.println("Loaded user location: " + location[0] + ", " + location[1]);
-            } else {
-                System.out.println("No saved user location found.");
             }
 
         } catch (Exception e) {
-            System.err.println("Error loading user location: " + e.getMessage());
+            System.err.println("Error loading location of student " + studentId + ": " + e.getMessage());
             e.printStackTrace();
         } finally {
             try { if (rs != null) rs.close(); } catch (Exception e) {}
@@ -361,65 +516,107 @@ public class StudyLocationDBDemo {
         return location;
     }
 
-    public boolean saveUserLocation(double latitude, double longitude) {
+    /**
+     * Load the saved location of the student StudentSession.resolve would pick
+     * for this number (the first student when it is empty), without waiting
+     * for the student to be resolved first.
+     * @return double[] { latitude, longitude } or null if not found
+     */
+    public double[] loadUserLocationByStudentNumber(String studentNumber) {
+        double[] location = null;
         Connection con = null;
         PreparedStatement stmt = null;
-        Statement cleanup = null;
+        ResultSet rs = null;
 
         try {
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
-            con = DriverManager.getConnection(DB_URL);
-
-            // Create table if it doesn’t exist
-            createUserLocationTableIfNotExists(con);
+            con = pool.getConnection();
 
-            // Delete existing record
-            cleanup = con.createStatement();
-            cleanup.executeUpdate("DELETE FROM user_location WHERE id = 1");
-
-            // Insert new record
-            String sql = "INSERT INTO user_location (id, latitude, longitude) VALUES (1, ?, ?)";
-            stmt = con.prepareStatement(sql);
-            stmt.setDouble(1, latitude);
-            stmt.setDouble(2, longitude);
+            if (studentNumber.isEmpty()) {
+                stmt = con.prepareStatement(SQL_LOAD_FIRST_STUDENT_LOCATION);
+            } else {
+                stmt = con.prepareStatement(SQL_LOAD_LOCATION_BY_STUDENT_NUMBER);
+                stmt.setString(1, studentNumber);
+            }
+            rs = stmt.executeQuery();
 
-            int rows = stmt.executeUpdate();
-            System.out.println("Saved user location: " + latitude + ", " + longitude);
-            return rows > 0;
+            if (rs.next()) {
+                location = new double[]{
+                    rs.getDouble("latitude"),
+                    rs.getDouble("longitude")
+                };
+            }
 
         } catch (Exception e) {
-            System.err.println("Error saving user location: " + e.getMessage());
+            System.err.println("Error loading location of student " + studentNumber + ": " + e.getMessage());
             e.printStackTrace();
-            return false;
         } finally {
+            try { if (rs != null) rs.close(); } catch (Exception e) {}
             try { if (stmt != null) stmt.close(); } catch (Exception e) {}
-            try { if (cleanup != null) cleanup.close(); } catch (Exception e) {}
             try { if (con != null) con.close(); } catch (Exception e) {}
         }
+
+        return location;
     }
 
     /**
-     * Create the user_location table if it does not exist.
+     * Save a student's location, logging instead of throwing on failure.
+     * @return true if the location was stored
      */
-    private void createUserLocationTableIfNotExists(Connection con) {
-        Statement stmt = null;
+    public boolean saveUserLocation(int studentId, double latitude, double longitude) {
         try {
-            stmt = con.createStatement();
-            String createTableSQL =
-                    "CREATE TABLE user_location (" +
-                    "id INT PRIMARY KEY, " +
-                    "latitude DOUBLE NOT NULL, " +
-                    "longitude DOUBLE NOT NULL, " +
-                    "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
-            stmt.executeUpdate(createTableSQL);
-            System.out.println("Created user_location table successfully.");
+            upsertUserLocation(studentId, latitude, longitude);
+            System.out.println("Saved location of student " + studentId + ": " + latitude + ", " + longitude);
+            return true;
         } catch (SQLException e) {
-            // Ignore "table already exists" errors
-            if (!"X0Y32".equals(e.getSQLState())) {
-                e.printStackTrace();
+            System.err.println("Error saving location of student " + studentId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Insert or update the student's student_locations row in one transaction.
+     * Each student has their own row, so students saving at the same time lock
+     * different rows. Derby 10.14 cannot MERGE from SYSIBM.SYSDUMMY1, so this is
+     * an UPDATE followed by an INSERT when no row existed; if the same student's
+     * other session inserts first, the update is retried.
+     */
+    public void upsertUserLocation(int studentId, double latitude, double longitude) throws SQLException {
+        Connection con = pool.getConnection();
+        boolean autoCommit = con.getAutoCommit();
+
+        try {
+            con.setAutoCommit(false);
+            if (updateUserLocation(con, studentId, latitude, longitude) == 0) {
+                try (PreparedStatement insert = con.prepareStatement(SQL_INSERT_STUDENT_LOCATION)) {
+                    insert.setInt(1, studentId);
+                    insert.setDouble(2, latitude);
+                    insert.setDouble(3, longitude);
+                    insert.executeUpdate();
+                } catch (SQLException e) {
+                    // 23505 = duplicate key: the row was inserted since the update
+                    if (!"23505".equals(e.getSQLState())) {
+                        throw e;
+                    }
+                    updateUserLocation(con, studentId, latitude, longitude);
+                }
             }
+            con.commit();
+        } catch (SQLException e) {
+            try { con.rollback(); } catch (Exception ex) {}
+            throw e;
         } finally {
-            try { if (stmt != null) stmt.close(); } catch (Exception e) {}
+            try { con.setAutoCommit(autoCommit); } catch (Exception e) {}
+            try { con.close(); } catch (Exception e) {}
+        }
+    }
+
+    private static int updateUserLocation(Connection con, int studentId, double latitude, double longitude)
+            throws SQLException {
+        try (PreparedStatement update = con.prepareStatement(SQL_UPDATE_STUDENT_LOCATION)) {
+            update.setDouble(1, latitude);
+            update.setDouble(2, longitude);
+            update.setInt(3, studentId);
+            return update.executeUpdate();
         }
     }
 
@@ -0,0 +1,76 @@
+package za.ac.cput.mapapp;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List model behind the "groups nearby" list and grid views.
+ * Sorting or filtering swaps the backing list in place and fires only the
+ * events needed to resize the view; the JList then repaints the visible rows.
+ * @author abong
+ */
+public class StudyLocationListModel extends AbstractListModel<StudyLocation> {
+
+    private List<StudyLocation> locations = new ArrayList<>();
+
+    /**
+     * Replace the displayed locations. The model keeps the given list, so the
+     * caller must not modify it afterwards.
+     */
+    public void setLocations(List<StudyLocation> newLocations) {
+        int oldSize = locations.size();
+        locations = newLocations != null ? newLocations : new ArrayList<>();
+        int newSize = locations.size();
+
+        if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        } else if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+        int common = Math.min(oldSize, newSize);
+        if (common > 0) {
+            fireContentsChanged(this, 0, common - 1);
+        }
+    }
+
+    /**
+     * Like setLocations, but only rows that now hold a different location
+     * object are repainted. Use it when the locations kept from the old list
+     * were not modified in place (change feed deltas replace changed groups
+     * with new objects).
+     */
+    public void updateLocations(List<StudyLocation> newLocations) {
+        List<StudyLocation> oldLocations = locations;
+        int oldSize = oldLocations.size();
+        locations = newLocations != null ? newLocations : new ArrayList<>();
+        int newSize = locations.size();
+
+        if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        } else if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        }
+        int first = 0;
+        int last = Math.min(oldSize, newSize) - 1;
+        while (first <= last && oldLocations.get(first) == locations.get(first)) {
+            first++;
+        }
+        while (last >= first && oldLocations.get(last) == locations.get(last)) {
+            last--;
+        }
+        if (first <= last) {
+            fireContentsChanged(this, first, last);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return locations.size();
+    }
+
+    @Override
+    public StudyLocation getElementAt(int index) {
+        return locations.get(index);
+    }
+}
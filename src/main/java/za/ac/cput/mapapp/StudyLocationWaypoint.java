@@ -12,6 +12,8 @@ public class StudyLocationWaypoint extends DefaultWaypoint {
     private final Color color;
     private final boolean isUserLocation;
     private StudyLocation studyLocation;
+    private boolean visible = true;
+    private boolean highlighted;
     
     public StudyLocationWaypoint(String label, GeoPosition coord, Color color, boolean isUserLocation) {
         super(coord);
@@ -39,4 +41,26 @@ public class StudyLocationWaypoint extends DefaultWaypoint {
     public void setStudyLocation(StudyLocation studyLocation) {
         this.studyLocation = studyLocation;
     }
-}
\ No newline at end of file
+
+    /**
+     * Whether the waypoint passes the current list filter and is drawn on the map.
+     */
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
+    /**
+     * Whether the waypoint is drawn as a recommended group.
+     */
+    public boolean isHighlighted() {
+        return highlighted;
+    }
+
+    public void setHighlighted(boolean highlighted) {
+        this.highlighted = highlighted;
+    }
+}
@@ -1,9 +1,18 @@
 package za.ac.cput.mapapp;
 
 import org.jxmapviewer.JXMapViewer;
+import org.jxmapviewer.viewer.GeoPosition;
+import org.jxmapviewer.viewer.TileFactory;
 import org.jxmapviewer.viewer.WaypointPainter;
 import java.awt.*;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  *
@@ -12,71 +21,498 @@ import java.awt.geom.Point2D;
 
 
 /**
- * Custom waypoint painter for study locations
+ * Custom waypoint painter for study locations.
+ * Study groups are drawn as clusters from a MarkerClusterer: one badge with the
+ * total member count per cluster, or the normal marker for a group on its own.
+ * World-pixel coordinates are projected once per zoom level (and again only when
+ * the waypoints change) and kept sorted by x, so each frame only visits the
+ * markers inside the viewport. Markers and labels are drawn from pre-rendered
+ * sprites, so a steady-state frame does not allocate. The markers on screen are
+ * also kept in a PickIndex for click and hover hit-testing.
+ * Registered as a WaypointStore listener, the painter follows individual
+ * waypoint changes: the clusterer is updated per waypoint and the projection is
+ * redone lazily on the next paint. Hidden (filtered out) waypoints are not drawn
+ * and highlighted (recommended) ones get a gold marker. In fast rendering mode
+ * (while the map is being dragged or zoomed) only markers and badges are drawn.
  */
-public class StudyLocationWaypointPainter extends WaypointPainter<StudyLocationWaypoint> {
-    
+public class StudyLocationWaypointPainter extends WaypointPainter<StudyLocationWaypoint>
+        implements WaypointStore.Listener {
+
+    private static final Font USER_LABEL_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Font MEMBER_FONT = new Font("Arial", Font.PLAIN, 10);
+    private static final Font CLUSTER_FONT = new Font("Arial", Font.BOLD, 11);
+    private static final Color CLUSTER_COLOR = new Color(30, 80, 160);
+    private static final Color RECOMMENDED_COLOR = new Color(230, 160, 0);
+    private static final String USER_LABEL = "You";
+
+    // How far outside the viewport a marker may be and still be drawn
+    private static final int CULL_MARGIN = 20;
+    // How close the pointer must be to a marker's centre to hit it
+    private static final int WAYPOINT_HIT_RADIUS = 12;
+
+    // Pre-rendered sprites; the anchor is the marker centre
+    private final Sprite userMarker = createMarkerSprite(Color.RED, 16, 8);
+    private final Sprite groupMarker = createMarkerSprite(Color.BLUE, 12, 6);
+    private final Sprite recommendedMarker = createMarkerSprite(RECOMMENDED_COLOR, 14, 6);
+    private final Sprite userLabel = createLabelSprite(USER_LABEL, USER_LABEL_FONT, 12);
+    private Sprite[] memberLabels = new Sprite[16];
+    private Sprite[] clusterBadges = new Sprite[64];
+
+    private final MarkerClusterer clusterer = new MarkerClusterer();
+    private final Set<StudyLocationWaypoint> groupWaypoints = new LinkedHashSet<>();
+    private StudyLocationWaypoint userWaypoint;
+
+    // Projection cache, sorted by world x. Each entry is a single waypoint or a cluster.
+    private StudyLocationWaypoint[] projected = new StudyLocationWaypoint[0];
+    private MarkerClusterer.Cluster[] projectedClusters = new MarkerClusterer.Cluster[0];
+    private double[] projectedX = new double[0];
+    private double[] projectedY = new double[0];
+    private double userX;
+    private double userY;
+    private int projectedZoom = Integer.MIN_VALUE;
+    private int projectedVersion = -1;
+    private TileFactory projectedFactory;
+    private boolean projectionStale = true;
+    private boolean userProjectionStale = true;
+
+    // Screen-space hit-testing for the current view
+    private final PickIndex pickIndex = new PickIndex();
+    private double pickViewportX = Double.NaN;
+    private double pickViewportY = Double.NaN;
+    private int pickWidth;
+    private int pickHeight;
+    private boolean pickStale = true;
+
+    private boolean fastRendering;
+
+    /**
+     * Replace all waypoints at once. Hidden waypoints are skipped.
+     */
     @Override
-    protected void doPaint(Graphics2D g, JXMapViewer map, int width, int height) {
-        if (getWaypoints() == null) {
-            return;
+    public void setWaypoints(Set<? extends StudyLocationWaypoint> waypoints) {
+        userWaypoint = null;
+        groupWaypoints.clear();
+        for (StudyLocationWaypoint waypoint : waypoints) {
+            if (waypoint.isUserLocation()) {
+                userWaypoint = waypoint;
+            } else if (waypoint.isVisible()) {
+                groupWaypoints.add(waypoint);
+            }
         }
-        
-        // Enable antialiasing for smoother graphics
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        
-        for (StudyLocationWaypoint waypoint : getWaypoints()) {
-            Point2D point = map.getTileFactory().geoToPixel(
-                waypoint.getPosition(), map.getZoom());
-            
-            // Convert to screen coordinates
-            Rectangle viewportBounds = map.getViewportBounds();
-            int x = (int)(point.getX() - viewportBounds.getX());
-            int y = (int)(point.getY() - viewportBounds.getY());
-            
-            // Only paint if the waypoint is visible
-            if (x >= -20 && x <= width + 20 && y >= -20 && y <= height + 20) {
-                paintWaypoint(g, waypoint, x, y);
+        clusterer.setWaypoints(groupWaypoints);
+        invalidateProjection();
+    }
+
+    /**
+     * @return the user's waypoint and the visible study group waypoints
+     */
+    @Override
+    public Set<StudyLocationWaypoint> getWaypoints() {
+        Set<StudyLocationWaypoint> waypoints = new LinkedHashSet<>(groupWaypoints);
+        if (userWaypoint != null) {
+            waypoints.add(userWaypoint);
+        }
+        return Collections.unmodifiableSet(waypoints);
+    }
+
+    // ---------------- WaypointStore.Listener ----------------
+
+    @Override
+    public void waypointAdded(StudyLocationWaypoint waypoint) {
+        if (waypoint.isVisible()) {
+            show(waypoint);
+        }
+    }
+
+    @Override
+    public void waypointRemoved(StudyLocationWaypoint waypoint) {
+        hide(waypoint);
+    }
+
+    @Override
+    public void waypointUpdated(StudyLocationWaypoint waypoint) {
+        if (waypoint.isVisible()) {
+            clusterer.update(waypoint);
+            invalidateProjection();
+        }
+    }
+
+    @Override
+    public void waypointVisibilityChanged(StudyLocationWaypoint waypoint) {
+        if (waypoint.isVisible()) {
+            show(waypoint);
+        } else {
+            hide(waypoint);
+        }
+    }
+
+    @Override
+    public void userWaypointMoved(StudyLocationWaypoint waypoint) {
+        userWaypoint = waypoint;
+        userProjectionStale = true;
+        pickStale = true;
+    }
+
+    private void show(StudyLocationWaypoint waypoint) {
+        if (groupWaypoints.add(waypoint)) {
+            clusterer.add(waypoint);
+            invalidateProjection();
+        }
+    }
+
+    private void hide(StudyLocationWaypoint waypoint) {
+        if (groupWaypoints.remove(waypoint)) {
+            clusterer.remove(waypoint.getStudyLocation().getId());
+            invalidateProjection();
+        }
+    }
+
+    /**
+     * Force the world coordinates to be recomputed on the next paint
+     * (call after moving a waypoint in place).
+     */
+    public void invalidateProjection() {
+        projectionStale = true;
+    }
+
+    /**
+     * Leave out the text labels, e.g. while the map is moving.
+     */
+    public void setFastRendering(boolean fastRendering) {
+        this.fastRendering = fastRendering;
+    }
+
+    public MarkerClusterer getClusterer() {
+        return clusterer;
+    }
+
+    @Override
+    protected void doPaint(Graphics2D g, JXMapViewer map, int width, int height) {
+        int zoom = map.getZoom();
+        TileFactory tileFactory = map.getTileFactory();
+        ensureProjected(tileFactory, zoom);
+
+        Rectangle viewportBounds = map.getViewportBounds();
+        ensurePickIndex(viewportBounds, width, height);
+        double minX = viewportBounds.getX() - CULL_MARGIN;
+        double maxX = viewportBounds.getX() + width + CULL_MARGIN;
+        double minY = viewportBounds.getY() - CULL_MARGIN;
+        double maxY = viewportBounds.getY() + height + CULL_MARGIN;
+
+        for (int i = firstAtOrAfter(minX); i < projectedX.length && projectedX[i] <= maxX; i++) {
+            double worldY = projectedY[i];
+            if (worldY < minY || worldY > maxY) {
+                continue;
+            }
+            int x = (int) (projectedX[i] - viewportBounds.getX());
+            int y = (int) (worldY - viewportBounds.getY());
+            if (projectedClusters[i] != null) {
+                clusterBadge(projectedClusters[i].getMemberSum()).draw(g, x, y);
+            } else {
+                paintWaypoint(g, projected[i], x, y);
             }
         }
+
+        // The user's marker always goes on top
+        if (userWaypoint != null && userX >= minX && userX <= maxX && userY >= minY && userY <= maxY) {
+            paintWaypoint(g, userWaypoint,
+                    (int) (userX - viewportBounds.getX()),
+                    (int) (userY - viewportBounds.getY()));
+        }
     }
-    
+
     private void paintWaypoint(Graphics2D g, StudyLocationWaypoint waypoint, int x, int y) {
-        Color originalColor = g.getColor();
-        
         if (waypoint.isUserLocation()) {
-            // Paint user location marker (larger, red)
-            g.setColor(Color.RED);
-            g.fillOval(x - 8, y - 8, 16, 16);
-            g.setColor(Color.WHITE);
-            g.fillOval(x - 4, y - 4, 8, 8);
-            
-            // Add label
-            g.setColor(Color.BLACK);
-            g.setFont(new Font("Arial", Font.BOLD, 12));
-            FontMetrics fm = g.getFontMetrics();
-            String label = "You";
-            int labelWidth = fm.stringWidth(label);
-            g.drawString(label, x - labelWidth/2, y - 12);
-            
+            // User location marker (larger, red) with label
+            userMarker.draw(g, x, y);
+            if (!fastRendering) {
+                userLabel.draw(g, x, y - 12);
+            }
         } else {
-            // Paint study location marker (blue)
-            g.setColor(Color.BLUE);
-            g.fillOval(x - 6, y - 6, 12, 12);
-            g.setColor(Color.WHITE);
-            g.fillOval(x - 3, y - 3, 6, 6);
-            
-            // Add member count if available
-            if (waypoint.getStudyLocation() != null) {
-                g.setColor(Color.BLACK);
-                g.setFont(new Font("Arial", Font.PLAIN, 10));
-                FontMetrics fm = g.getFontMetrics();
-                String memberText = String.valueOf(waypoint.getStudyLocation().getMemberCount());
-                int textWidth = fm.stringWidth(memberText);
-                g.drawString(memberText, x - textWidth/2, y - 10);
+            // Study location marker (blue, or gold if recommended) with member count if available
+            (waypoint.isHighlighted() ? recommendedMarker : groupMarker).draw(g, x, y);
+            if (!fastRendering && waypoint.getStudyLocation() != null) {
+                memberLabel(waypoint.getStudyLocation().getMemberCount()).draw(g, x, y - 10);
             }
         }
-        
-        g.setColor(originalColor);
+    }
+
+    /**
+     * Find the marker under a point on the map component.
+     * @return the group or user waypoint, or null if the point is not on a single marker
+     */
+    public StudyLocationWaypoint findWaypointAt(JXMapViewer map, Point2D point) {
+        int id = pick(map, point);
+        if (id == projected.length) {
+            return userWaypoint;
+        }
+        return id >= 0 ? projected[id] : null;
+    }
+
+    /**
+     * Find the cluster badge under a point on the map component.
+     * @return the cluster, or null if the point is not on a badge of two or more groups
+     */
+    public MarkerClusterer.Cluster findClusterAt(JXMapViewer map, Point2D point) {
+        int id = pick(map, point);
+        return id >= 0 && id < projectedClusters.length ? projectedClusters[id] : null;
+    }
+
+    /**
+     * @return index of the projected entry under the point, projected.length for
+     *         the user's marker, or -1 for none
+     */
+    private int pick(JXMapViewer map, Point2D point) {
+        ensureProjected(map.getTileFactory(), map.getZoom());
+        ensurePickIndex(map.getViewportBounds(), map.getWidth(), map.getHeight());
+        return pickIndex.find((int) Math.round(point.getX()), (int) Math.round(point.getY()));
+    }
+
+    /**
+     * Rebuild the pick index from the projected coordinates if the view moved,
+     * was resized or was re-projected since it was last built.
+     */
+    private void ensurePickIndex(Rectangle viewportBounds, int width, int height) {
+        double viewportX = viewportBounds.getX();
+        double viewportY = viewportBounds.getY();
+        if (!pickStale && viewportX == pickViewportX && viewportY == pickViewportY
+                && width == pickWidth && height == pickHeight) {
+            return;
+        }
+
+        pickIndex.reset(0, 0, width, height);
+        double minX = viewportX - CULL_MARGIN;
+        double maxX = viewportX + width + CULL_MARGIN;
+        double minY = viewportY - CULL_MARGIN;
+        double maxY = viewportY + height + CULL_MARGIN;
+        for (int i = firstAtOrAfter(minX); i < projectedX.length && projectedX[i] <= maxX; i++) {
+            if (projectedY[i] < minY || projectedY[i] > maxY) {
+                continue;
+            }
+            int radius = projectedClusters[i] != null
+                    ? clusterBadge(projectedClusters[i].getMemberSum()).anchorX
+                    : WAYPOINT_HIT_RADIUS;
+            pickIndex.add(i, (int) (projectedX[i] - viewportX), (int) (projectedY[i] - viewportY), radius);
+        }
+        // Added last so it wins over groups underneath, as it is painted on top
+        if (userWaypoint != null) {
+            pickIndex.add(projected.length, (int) (userX - viewportX), (int) (userY - viewportY), WAYPOINT_HIT_RADIUS);
+        }
+
+        pickViewportX = viewportX;
+        pickViewportY = viewportY;
+        pickWidth = width;
+        pickHeight = height;
+        pickStale = false;
+    }
+
+    // ---------------- Projection cache ----------------
+
+    private void ensureProjected(TileFactory tileFactory, int zoom) {
+        if (projectionStale || zoom != projectedZoom || tileFactory != projectedFactory
+                || clusterer.getVersion() != projectedVersion) {
+            project(tileFactory, zoom);
+        } else if (userProjectionStale) {
+            // Only the user's marker moved (e.g. while picking a location)
+            projectUser(tileFactory, zoom);
+        }
+    }
+
+    private void projectUser(TileFactory tileFactory, int zoom) {
+        if (userWaypoint != null) {
+            Point2D point = tileFactory.geoToPixel(userWaypoint.getPosition(), zoom);
+            userX = point.getX();
+            userY = point.getY();
+        }
+        userProjectionStale = false;
+    }
+
+    private void project(TileFactory tileFactory, int zoom) {
+        int level = MarkerClusterer.levelForZoom(tileFactory, zoom);
+        List<StudyLocationWaypoint> singles = new ArrayList<>();
+        List<MarkerClusterer.Cluster> clusters = new ArrayList<>();
+        if (level >= 0) {
+            for (MarkerClusterer.Cluster cluster : clusterer.getClusters(level)) {
+                StudyLocationWaypoint single = cluster.getSingleWaypoint();
+                if (single != null) {
+                    singles.add(single);
+                } else {
+                    clusters.add(cluster);
+                }
+            }
+        } else {
+            // Most detailed zoom: no clustering
+            singles.addAll(groupWaypoints);
+        }
+
+        int n = singles.size() + clusters.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            GeoPosition position = i < singles.size()
+                    ? singles.get(i).getPosition()
+                    : clusters.get(i - singles.size()).getPosition();
+            Point2D point = tileFactory.geoToPixel(position, zoom);
+            xs[i] = point.getX();
+            ys[i] = point.getY();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(xs[a], xs[b]));
+
+        projected = new StudyLocationWaypoint[n];
+        projectedClusters = new MarkerClusterer.Cluster[n];
+        projectedX = new double[n];
+        projectedY = new double[n];
+        for (int i = 0; i < n; i++) {
+            int source = order[i];
+            if (source < singles.size()) {
+                projected[i] = singles.get(source);
+            } else {
+                projectedClusters[i] = clusters.get(source - singles.size());
+            }
+            projectedX[i] = xs[source];
+            projectedY[i] = ys[source];
+        }
+
+        projectUser(tileFactory, zoom);
+
+        projectedZoom = zoom;
+        projectedFactory = tileFactory;
+        projectedVersion = clusterer.getVersion();
+        projectionStale = false;
+        pickStale = true;
+    }
+
+    /**
+     * Binary search for the first projected entry with world x >= minX.
+     */
+    private int firstAtOrAfter(double minX) {
+        int low = 0;
+        int high = projectedX.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (projectedX[mid] < minX) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // ---------------- Sprites ----------------
+
+    private Sprite memberLabel(int memberCount) {
+        if (memberCount < 0) {
+            memberCount = 0;
+        }
+        if (memberCount >= memberLabels.length) {
+            memberLabels = Arrays.copyOf(memberLabels, Math.max(memberCount + 1, memberLabels.length * 2));
+        }
+        Sprite sprite = memberLabels[memberCount];
+        if (sprite == null) {
+            sprite = createLabelSprite(String.valueOf(memberCount), MEMBER_FONT, 10);
+            memberLabels[memberCount] = sprite;
+        }
+        return sprite;
+    }
+
+    private Sprite clusterBadge(int memberSum) {
+        if (memberSum < 0) {
+            memberSum = 0;
+        }
+        if (memberSum >= clusterBadges.length) {
+            clusterBadges = Arrays.copyOf(clusterBadges, Math.max(memberSum + 1, clusterBadges.length * 2));
+        }
+        Sprite sprite = clusterBadges[memberSum];
+        if (sprite == null) {
+            sprite = createBadgeSprite(String.valueOf(memberSum));
+            clusterBadges[memberSum] = sprite;
+        }
+        return sprite;
+    }
+
+    /**
+     * Round cluster badge with the member count in the middle, sized to fit the text.
+     */
+    private static Sprite createBadgeSprite(String text) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measure = scratch.createGraphics();
+        FontMetrics fm = measure.getFontMetrics(CLUSTER_FONT);
+        int textWidth = fm.stringWidth(text);
+        int ascent = fm.getAscent();
+        int descent = fm.getDescent();
+        measure.dispose();
+
+        int diameter = Math.max(22, textWidth + 12);
+        BufferedImage image = new BufferedImage(diameter + 2, diameter + 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(CLUSTER_COLOR);
+        g.fillOval(1, 1, diameter, diameter);
+        g.setColor(Color.WHITE);
+        g.setStroke(new BasicStroke(2f));
+        g.drawOval(2, 2, diameter - 2, diameter - 2);
+        g.setFont(CLUSTER_FONT);
+        g.drawString(text, 1 + (diameter - textWidth) / 2, 1 + (diameter + ascent - descent) / 2);
+        g.dispose();
+        return new Sprite(image, 1 + diameter / 2, 1 + diameter / 2);
+    }
+
+    private static Sprite createMarkerSprite(Color color, int outer, int inner) {
+        BufferedImage image = new BufferedImage(outer + 2, outer + 2, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(color);
+        g.fillOval(1, 1, outer, outer);
+        g.setColor(Color.WHITE);
+        int offset = 1 + (outer - inner) / 2;
+        g.fillOval(offset, offset, inner, inner);
+        g.dispose();
+        return new Sprite(image, 1 + outer / 2, 1 + outer / 2);
+    }
+
+    /**
+     * Render a text label; the anchor is the horizontal centre on the baseline.
+     */
+    private static Sprite createLabelSprite(String text, Font font, int fontSize) {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measure = scratch.createGraphics();
+        FontMetrics fm = measure.getFontMetrics(font);
+        int textWidth = fm.stringWidth(text);
+        int ascent = fm.getAscent();
+        int descent = fm.getDescent();
+        measure.dispose();
+
+        BufferedImage image = new BufferedImage(Math.max(1, textWidth + 2), Math.max(fontSize, ascent + descent) + 2,
+                                                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(Color.BLACK);
+        g.setFont(font);
+        g.drawString(text, 1, 1 + ascent);
+        g.dispose();
+        return new Sprite(image, 1 + textWidth / 2, 1 + ascent);
+    }
+
+    /**
+     * Pre-rendered image with the point it is anchored on.
+     */
+    private static class Sprite {
+        final Image image;
+        final int anchorX;
+        final int anchorY;
+
+        Sprite(Image image, int anchorX, int anchorY) {
+            this.image = image;
+            this.anchorX = anchorX;
+            this.anchorY = anchorY;
+        }
+
+        void draw(Graphics2D g, int x, int y) {
+            g.drawImage(image, x - anchorX, y - anchorY, null);
+        }
     }
 }
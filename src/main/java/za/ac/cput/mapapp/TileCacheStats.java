@@ -0,0 +1,76 @@
+package za.ac.cput.mapapp;
+
+/**
+ * Point-in-time snapshot of DiskTileCache counters.
+ * @author abong
+ */
+public class TileCacheStats {
+    private final long hits;
+    private final long misses;
+    private final long bytesSaved;
+    private final long writes;
+    private final long evictions;
+    private final int tileCount;
+    private final long totalBytes;
+    private final long maxBytes;
+
+    public TileCacheStats(long hits, long misses, long bytesSaved, long writes,
+                          long evictions, int tileCount, long totalBytes, long maxBytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.bytesSaved = bytesSaved;
+        this.writes = writes;
+        this.evictions = evictions;
+        this.tileCount = tileCount;
+        this.totalBytes = totalBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : hits / (double) lookups;
+    }
+
+    /**
+     * @return bytes served from disk instead of being downloaded again
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TileCacheStats{hits=%d, misses=%d, hitRate=%.1f%%, saved=%.1f KB, writes=%d, " +
+                           "evictions=%d, tiles=%d, size=%.1f/%.1f MB}",
+                           hits, misses, getHitRate() * 100, bytesSaved / 1024.0, writes, evictions,
+                           tileCount, totalBytes / 1048576.0, maxBytes / 1048576.0);
+    }
+}
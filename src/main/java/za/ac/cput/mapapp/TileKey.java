@@ -0,0 +1,87 @@
+package za.ac.cput.mapapp;
+
+import java.net.URL;
+
+/**
+ * Identifies a map tile by its OSM zoom level and x/y column/row.
+ * @author abong
+ */
+public final class TileKey implements Comparable<TileKey> {
+    private final int z;
+    private final int x;
+    private final int y;
+
+    public TileKey(int z, int x, int y) {
+        this.z = z;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Parse z/x/y from the end of a tile URL path
+     * (e.g. https://tile.openstreetmap.org/16/37750/39760.png).
+     * @return the key, or null if the URL does not end in z/x/y.png
+     */
+    public static TileKey fromUrl(URL url) {
+        String[] parts = url.getPath().split("/");
+        if (parts.length < 3) {
+            return null;
+        }
+        String y = parts[parts.length - 1];
+        if (!y.endsWith(".png")) {
+            return null;
+        }
+        try {
+            return new TileKey(
+                    Integer.parseInt(parts[parts.length - 3]),
+                    Integer.parseInt(parts[parts.length - 2]),
+                    Integer.parseInt(y.substring(0, y.length() - 4)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return relative path of the tile in a z/x/y.png directory pyramid
+     */
+    public String toPath() {
+        return z + "/" + x + "/" + y + ".png";
+    }
+
+    @Override
+    public int compareTo(TileKey other) {
+        if (z != other.z) return Integer.compare(z, other.z);
+        if (x != other.x) return Integer.compare(x, other.x);
+        return Integer.compare(y, other.y);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TileKey)) return false;
+        TileKey other = (TileKey) o;
+        return z == other.z && x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return (z * 31 + x) * 31 + y;
+    }
+
+    @Override
+    public String toString() {
+        return z + "/" + x + "/" + y;
+    }
+}
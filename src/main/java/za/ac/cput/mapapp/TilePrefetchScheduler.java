@@ -0,0 +1,421 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.viewer.Tile;
+import org.jxmapviewer.viewer.TileFactoryInfo;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Decides which map tiles load next, so the tiles the user is about to see
+ * arrive before the ones they have scrolled or zoomed away from.
+ *
+ * Requests are queued by class: VISIBLE tiles on screen now, then PAN_AHEAD
+ * tiles in a ring beyond the edges the map is moving towards (all edges while
+ * it stands still), then ADJACENT_ZOOM tiles for the view one level in and one
+ * level out. Within a class the tile nearest the middle of the view goes first.
+ * Only maxInFlight loads run at once; the rest wait here, where they can still
+ * be dropped. Each viewport change re-ranks the queue and cancels requests that
+ * no longer fall in any class, e.g. for a zoom level the wheel has already
+ * left. Loads already running finish, and there are never more than
+ * maxInFlight of them.
+ *
+ * Effectiveness is measured as the share of tiles that were already loaded at
+ * the moment they came into view (TilePrefetchStats.getPresentRate()).
+ * @author abong
+ */
+public class TilePrefetchScheduler {
+
+    /**
+     * Request classes, most urgent first.
+     */
+    public enum Priority {
+        VISIBLE, PAN_AHEAD, ADJACENT_ZOOM
+    }
+
+    /**
+     * The tile factory side of the scheduler. Never called with the scheduler's lock held.
+     */
+    public interface TileLoader {
+
+        /**
+         * Make sure the factory has a tile at these coordinates and pass it to
+         * request() if it still needs loading.
+         */
+        void prefetch(int x, int y, int zoom);
+
+        /**
+         * Start loading a dispatched tile; loadFinished() must follow once it is done.
+         * @return false if the tile was already loading or loaded
+         */
+        boolean start(Tile tile);
+    }
+
+    // Pan speed (tiles per second) below which the map counts as standing still
+    private static final double MIN_PAN_SPEED = 0.5;
+    // How far ahead of a moving view to prefetch, in seconds of travel
+    private static final double LOOKAHEAD_SECONDS = 0.5;
+    // A move after a longer pause than this starts a new pan
+    private static final long PAN_GAP_NANOS = 250_000_000L;
+
+    private final TileFactoryInfo info;
+    private final TileLoader loader;
+    private final int maxInFlight;
+    private final int ringTiles;
+
+    // Queued requests by tile URL, and the same requests in dispatch order (guarded by "this")
+    private final Map<String, Request> queued = new HashMap<>();
+    private PriorityQueue<Request> queue = new PriorityQueue<>();
+    private int inFlight;
+    private long sequence;
+
+    // Tiles in view since they came into view, by URL (guarded by "this")
+    private final Map<String, Tile> shownTiles = new HashMap<>();
+
+    // The view in tile units at the current zoom (guarded by "this")
+    private int zoom = -1;
+    private double centerX;
+    private double centerY;
+    private double halfWidth;
+    private double halfHeight;
+    private double velocityX;
+    private double velocityY;
+    private long lastMoveNanos;
+
+    // Pan-ahead ring width past each edge, in tiles (guarded by "this")
+    private int ringLeft;
+    private int ringRight;
+    private int ringTop;
+    private int ringBottom;
+
+    // Counters (guarded by "this")
+    private long shown;
+    private long presentWhenShown;
+    private long requested;
+    private long prefetchRequested;
+    private long started;
+    private long cancelled;
+
+    /**
+     * @param maxInFlight loads running at once
+     * @param ringTiles widest pan-ahead ring in tiles; 0 loads only what is on screen
+     */
+    public TilePrefetchScheduler(TileFactoryInfo info, TileLoader loader, int maxInFlight, int ringTiles) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.info = info;
+        this.loader = loader;
+        this.maxInFlight = maxInFlight;
+        this.ringTiles = Math.max(0, ringTiles);
+    }
+
+    private static final class Request implements Comparable<Request> {
+        final Tile tile;
+        final long sequence;
+        Priority priority;
+        double distance;
+
+        Request(Tile tile, long sequence) {
+            this.tile = tile;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            int cmp = priority.compareTo(other.priority);
+            if (cmp == 0) {
+                cmp = Double.compare(distance, other.distance);
+            }
+            return cmp != 0 ? cmp : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // ---------------- Viewport ----------------
+
+    /**
+     * The map now shows this area. Re-ranks queued requests, cancels the ones
+     * that no longer matter, and queues prefetches around the new view.
+     * @param viewport visible area in map pixels at this zoom (JXMapViewer.getViewportBounds())
+     */
+    public void viewportChanged(int zoom, Rectangle2D viewport, long nanoTime) {
+        List<int[]> prefetches;
+        synchronized (this) {
+            int tileSize = info.getTileSize(zoom);
+            double newCenterX = viewport.getCenterX() / tileSize;
+            double newCenterY = viewport.getCenterY() / tileSize;
+            updateVelocity(zoom, newCenterX, newCenterY, nanoTime);
+
+            this.zoom = zoom;
+            centerX = newCenterX;
+            centerY = newCenterY;
+            halfWidth = viewport.getWidth() / tileSize / 2;
+            halfHeight = viewport.getHeight() / tileSize / 2;
+            updateRing();
+
+            rerank();
+            shownTiles.values().removeIf(tile -> classify(tile, null) != Priority.VISIBLE);
+            prefetches = ringTiles > 0 ? prefetchCandidates() : Collections.emptyList();
+        }
+        for (int[] tile : prefetches) {
+            loader.prefetch(tile[0], tile[1], tile[2]);
+        }
+        pump();
+    }
+
+    private void updateVelocity(int newZoom, double newCenterX, double newCenterY, long nanoTime) {
+        long elapsed = nanoTime - lastMoveNanos;
+        if (newZoom != zoom || elapsed >= PAN_GAP_NANOS) {
+            velocityX = 0;
+            velocityY = 0;
+        } else if (elapsed > 0) {
+            // Average with the previous estimate; drag events arrive unevenly
+            double seconds = elapsed / 1_000_000_000.0;
+            velocityX = (velocityX + offset(newCenterX - centerX, newZoom) / seconds) / 2;
+            velocityY = (velocityY + (newCenterY - centerY) / seconds) / 2;
+        }
+        lastMoveNanos = nanoTime;
+    }
+
+    /**
+     * Ring on the leading edges, wider the faster the pan; one tile all round when still.
+     */
+    private void updateRing() {
+        if (ringTiles == 0) {
+            ringLeft = ringRight = ringTop = ringBottom = 0;
+            return;
+        }
+        boolean movingX = Math.abs(velocityX) >= MIN_PAN_SPEED;
+        boolean movingY = Math.abs(velocityY) >= MIN_PAN_SPEED;
+        if (!movingX && !movingY) {
+            ringLeft = ringRight = ringTop = ringBottom = 1;
+            return;
+        }
+        int aheadX = movingX ? ahead(velocityX) : 0;
+        int aheadY = movingY ? ahead(velocityY) : 0;
+        ringLeft = velocityX < 0 ? aheadX : 0;
+        ringRight = velocityX > 0 ? aheadX : 0;
+        ringTop = velocityY < 0 ? aheadY : 0;
+        ringBottom = velocityY > 0 ? aheadY : 0;
+    }
+
+    private int ahead(double velocity) {
+        return (int) Math.min(ringTiles, Math.max(1, Math.ceil(Math.abs(velocity) * LOOKAHEAD_SECONDS)));
+    }
+
+    // ---------------- Requests ----------------
+
+    /**
+     * Queue a tile the factory wants loaded, in the class its position puts it
+     * in; tiles outside every class are left until they come into view.
+     */
+    public void request(Tile tile) {
+        synchronized (this) {
+            if (!needsLoading(tile) || queued.containsKey(tile.getURL())) {
+                return;
+            }
+            Request request = new Request(tile, sequence++);
+            request.priority = classify(tile, request);
+            if (request.priority == null) {
+                return;
+            }
+            enqueue(request);
+        }
+        pump();
+    }
+
+    /**
+     * The map is painting this tile. Counts it if it just came into view, and
+     * makes sure it is queued as VISIBLE if it still needs loading.
+     */
+    public void tileShown(Tile tile) {
+        if (tile.getURL() == null) {
+            return;
+        }
+        synchronized (this) {
+            if (shownTiles.putIfAbsent(tile.getURL(), tile) == null) {
+                shown++;
+                if (tile.isLoaded()) {
+                    presentWhenShown++;
+                }
+            }
+            if (!needsLoading(tile)) {
+                return;
+            }
+            Request request = queued.get(tile.getURL());
+            if (request == null) {
+                request = new Request(tile, sequence++);
+                classify(tile, request);
+                request.priority = Priority.VISIBLE;
+                enqueue(request);
+            } else if (request.priority != Priority.VISIBLE) {
+                queue.remove(request);
+                request.priority = Priority.VISIBLE;
+                queue.add(request);
+            } else {
+                return;
+            }
+        }
+        pump();
+    }
+
+    /**
+     * A load handed to the TileLoader has finished, successfully or not.
+     */
+    public void loadFinished() {
+        synchronized (this) {
+            inFlight--;
+        }
+        pump();
+    }
+
+    private void enqueue(Request request) {
+        queued.put(request.tile.getURL(), request);
+        queue.add(request);
+        requested++;
+        if (request.priority != Priority.VISIBLE) {
+            prefetchRequested++;
+        }
+    }
+
+    private static boolean needsLoading(Tile tile) {
+        return tile.getURL() != null && !tile.isLoaded() && !tile.isLoading() && !tile.loadingFailed();
+    }
+
+    /**
+     * Start queued loads, best first, until maxInFlight are running.
+     */
+    private void pump() {
+        while (true) {
+            Tile next = null;
+            synchronized (this) {
+                while (inFlight < maxInFlight && !queue.isEmpty()) {
+                    Request request = queue.poll();
+                    queued.remove(request.tile.getURL());
+                    if (needsLoading(request.tile)) {
+                        next = request.tile;
+                        inFlight++;
+                        break;
+                    }
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            boolean loading = loader.start(next);
+            synchronized (this) {
+                if (loading) {
+                    started++;
+                } else {
+                    inFlight--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-rank every queued request against the current view, dropping those outside every class.
+     */
+    private void rerank() {
+        PriorityQueue<Request> reranked = new PriorityQueue<>(Math.max(11, queued.size()));
+        for (Iterator<Request> it = queued.values().iterator(); it.hasNext(); ) {
+            Request request = it.next();
+            request.priority = classify(request.tile, request);
+            if (request.priority == null) {
+                it.remove();
+                cancelled++;
+            } else {
+                reranked.add(request);
+            }
+        }
+        queue = reranked;
+    }
+
+    // ---------------- Geometry ----------------
+
+    /**
+     * The class a tile falls in for the current view, or null if none.
+     * @param request if not null, receives the tile's distance from the middle of its view
+     */
+    private Priority classify(Tile tile, Request request) {
+        int tileZoom = tile.getZoom();
+        if (zoom < 0 || Math.abs(tileZoom - zoom) > 1) {
+            return null;
+        }
+        // The screen covers the same number of tiles at every zoom; only its centre scales
+        double scale = Math.pow(2, zoom - tileZoom);
+        double dx = offset(tile.getX() + 0.5 - centerX * scale, tileZoom);
+        double dy = tile.getY() + 0.5 - centerY * scale;
+        if (request != null) {
+            request.distance = Math.hypot(dx, dy);
+        }
+
+        if (tileZoom != zoom) {
+            return ringTiles > 0 && overlaps(dx, dy, 0, 0, 0, 0) ? Priority.ADJACENT_ZOOM : null;
+        }
+        if (overlaps(dx, dy, 0, 0, 0, 0)) {
+            return Priority.VISIBLE;
+        }
+        return overlaps(dx, dy, ringLeft, ringRight, ringTop, ringBottom) ? Priority.PAN_AHEAD : null;
+    }
+
+    /**
+     * Whether a tile whose centre is (dx, dy) tiles from the view's centre
+     * overlaps the view widened by the given number of tiles on each side.
+     */
+    private boolean overlaps(double dx, double dy, int left, int right, int top, int bottom) {
+        return dx > -(halfWidth + left + 0.5) && dx < halfWidth + right + 0.5
+                && dy > -(halfHeight + top + 0.5) && dy < halfHeight + bottom + 0.5;
+    }
+
+    /**
+     * A horizontal tile offset taken the short way round the wrapped map.
+     */
+    private double offset(double dx, int tileZoom) {
+        int width = info.getMapWidthInTilesAtZoom(tileZoom);
+        return dx - width * Math.floor(dx / width + 0.5);
+    }
+
+    /**
+     * Tiles of the pan-ahead ring and of the views one zoom level in and out.
+     */
+    private List<int[]> prefetchCandidates() {
+        List<int[]> tiles = new ArrayList<>();
+        addTiles(tiles, zoom, centerX - halfWidth - ringLeft, centerY - halfHeight - ringTop,
+                centerX + halfWidth + ringRight, centerY + halfHeight + ringBottom);
+        for (int adjacent : new int[] {zoom - 1, zoom + 1}) {
+            if (adjacent >= info.getMinimumZoomLevel() && adjacent <= info.getMaximumZoomLevel()) {
+                double scale = Math.pow(2, zoom - adjacent);
+                addTiles(tiles, adjacent, centerX * scale - halfWidth, centerY * scale - halfHeight,
+                        centerX * scale + halfWidth, centerY * scale + halfHeight);
+            }
+        }
+        return tiles;
+    }
+
+    private void addTiles(List<int[]> tiles, int tileZoom, double left, double top, double right, double bottom) {
+        int width = info.getMapWidthInTilesAtZoom(tileZoom);
+        int firstX = (int) Math.floor(left);
+        int lastX = Math.min((int) Math.ceil(right) - 1, firstX + width - 1);
+        int firstY = Math.max(0, (int) Math.floor(top));
+        int lastY = Math.min(width - 1, (int) Math.ceil(bottom) - 1);
+        for (int y = firstY; y <= lastY; y++) {
+            for (int x = firstX; x <= lastX; x++) {
+                tiles.add(new int[] {Math.floorMod(x, width), y, tileZoom});
+            }
+        }
+    }
+
+    // ---------------- Stats ----------------
+
+    public synchronized TilePrefetchStats getStats() {
+        return new TilePrefetchStats(shown, presentWhenShown, requested, prefetchRequested, started, cancelled,
+                queued.size(), inFlight);
+    }
+}
@@ -0,0 +1,90 @@
+package za.ac.cput.mapapp;
+
+/**
+ * Point-in-time snapshot of TilePrefetchScheduler counters.
+ * @author abong
+ */
+public class TilePrefetchStats {
+    private final long shown;
+    private final long presentWhenShown;
+    private final long requested;
+    private final long prefetchRequested;
+    private final long started;
+    private final long cancelled;
+    private final int queued;
+    private final int inFlight;
+
+    public TilePrefetchStats(long shown, long presentWhenShown, long requested, long prefetchRequested,
+                             long started, long cancelled, int queued, int inFlight) {
+        this.shown = shown;
+        this.presentWhenShown = presentWhenShown;
+        this.requested = requested;
+        this.prefetchRequested = prefetchRequested;
+        this.started = started;
+        this.cancelled = cancelled;
+        this.queued = queued;
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * @return tiles that came into view (a tile that leaves and comes back counts again)
+     */
+    public long getShown() {
+        return shown;
+    }
+
+    /**
+     * @return tiles that were already loaded when they came into view
+     */
+    public long getPresentWhenShown() {
+        return presentWhenShown;
+    }
+
+    /**
+     * Prefetch effectiveness: the share of tiles already loaded when they came into view.
+     */
+    public double getPresentRate() {
+        return shown == 0 ? 0.0 : presentWhenShown / (double) shown;
+    }
+
+    public long getRequested() {
+        return requested;
+    }
+
+    /**
+     * @return requests queued for tiles not yet on screen (pan-ahead ring or adjacent zoom)
+     */
+    public long getPrefetchRequested() {
+        return prefetchRequested;
+    }
+
+    /**
+     * @return loads handed to the tile factory
+     */
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * @return queued requests dropped because their tile left the viewport or zoom level
+     */
+    public long getCancelled() {
+        return cancelled;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TilePrefetchStats{shown=%d, presentWhenShown=%d (%.1f%%), requested=%d, " +
+                           "prefetched=%d, started=%d, cancelled=%d, queued=%d, inFlight=%d}",
+                           shown, presentWhenShown, getPresentRate() * 100, requested, prefetchRequested,
+                           started, cancelled, queued, inFlight);
+    }
+}
@@ -0,0 +1,65 @@
+package za.ac.cput.mapapp;
+
+/**
+ * Point-in-time snapshot of UserLocationWriter counters.
+ * A write is one student's position stored; flush latency is measured from
+ * the first unsaved submit to the commit that stored it (or a newer position).
+ * @author abong
+ */
+public class UserLocationWriteStats {
+    private final long submitCount;
+    private final long writeCount;
+    private final long failureCount;
+    private final long totalFlushNanos;
+    private final long maxFlushNanos;
+    private final long lastFlushNanos;
+
+    public UserLocationWriteStats(long submitCount, long writeCount, long failureCount,
+                                  long totalFlushNanos, long maxFlushNanos, long lastFlushNanos) {
+        this.submitCount = submitCount;
+        this.writeCount = writeCount;
+        this.failureCount = failureCount;
+        this.totalFlushNanos = totalFlushNanos;
+        this.maxFlushNanos = maxFlushNanos;
+        this.lastFlushNanos = lastFlushNanos;
+    }
+
+    public long getSubmitCount() {
+        return submitCount;
+    }
+
+    /**
+     * @return successful writes; submits minus writes were coalesced away
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    public long getCoalescedCount() {
+        return Math.max(0, submitCount - writeCount);
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public double getAverageFlushMillis() {
+        return writeCount == 0 ? 0.0 : totalFlushNanos / (double) writeCount / 1_000_000.0;
+    }
+
+    public double getMaxFlushMillis() {
+        return maxFlushNanos / 1_000_000.0;
+    }
+
+    public double getLastFlushMillis() {
+        return lastFlushNanos / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserLocationWriteStats{submits=%d, writes=%d, coalesced=%d, failures=%d, " +
+                           "avgFlush=%.3f ms, maxFlush=%.3f ms, lastFlush=%.3f ms}",
+                           submitCount, writeCount, getCoalescedCount(), failureCount,
+                           getAverageFlushMillis(), getMaxFlushMillis(), getLastFlushMillis());
+    }
+}
@@ -0,0 +1,254 @@
+package za.ac.cput.mapapp;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind saver for the user's location.
+ *
+ * submit() only records the student's latest position and returns, so it is
+ * safe on the EDT. A single background thread writes it after a short
+ * coalescing delay; a burst of submits (clicking around the map) becomes one
+ * write of the last position per student. A failed write is retried with
+ * exponential backoff, and a newer submit simply replaces the position being
+ * retried.
+ *
+ * flush() blocks until everything submitted so far is committed, and is the
+ * hook the shutdown sequence uses before closing the connection pool.
+ * @author abong
+ */
+public class UserLocationWriter {
+
+    /**
+     * Stores one student's position durably (committed when it returns).
+     */
+    public interface Store {
+        void save(int studentId, double latitude, double longitude) throws SQLException;
+    }
+
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private static UserLocationWriter shared;
+
+    private final Store store;
+    private final long coalesceMillis;
+    private final long initialBackoffMillis;
+    private final ScheduledExecutorService executor;
+
+    // Guarded by this
+    // Latest unsaved position per student id, in submit order
+    private final Map<Integer, double[]> pending = new LinkedHashMap<>();
+    private long pendingSinceNanos;
+    private long submittedSeq;
+    private long persistedSeq;
+    private int consecutiveFailures;
+    private ScheduledFuture<?> scheduled;
+    private boolean closed;
+
+    // Stats
+    private final LongAdder submitCount = new LongAdder();
+    private final LongAdder writeCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder totalFlushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+
+    /**
+     * @param coalesceMillis how long to wait for further submits before writing
+     * @param initialBackoffMillis delay before the first retry; doubles per failure up to 30 s
+     */
+    public UserLocationWriter(Store store, long coalesceMillis, long initialBackoffMillis) {
+        this.store = store;
+        this.coalesceMillis = coalesceMillis;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-location-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Writer shared by the application, saving through the shared connection pool.
+     */
+    public static synchronized UserLocationWriter getShared() {
+        if (shared == null) {
+            StudyLocationDBDemo dao = new StudyLocationDBDemo();
+            shared = new UserLocationWriter(dao::upsertUserLocation,
+                    AppConfig.getUserLocationCoalesceMillis(), 500);
+        }
+        return shared;
+    }
+
+    /**
+     * Flush and close the shared writer, if one was created.
+     * @return true if everything submitted was written in time
+     */
+    public static synchronized boolean closeShared(long timeout, TimeUnit unit) {
+        if (shared == null) {
+            return true;
+        }
+        boolean flushed = shared.close(timeout, unit);
+        System.out.println("User location writes on exit: " + shared.getStats());
+        return flushed;
+    }
+
+    // ---------------- Submitting ----------------
+
+    /**
+     * Record a student's new position to be written. Never blocks on the database.
+     * @throws IllegalStateException after close
+     */
+    public synchronized void submit(int studentId, double latitude, double longitude) {
+        if (closed) {
+            throw new IllegalStateException("UserLocationWriter is closed");
+        }
+        pending.put(studentId, new double[]{latitude, longitude});
+        submittedSeq++;
+        submitCount.increment();
+        if (pendingSinceNanos == 0) {
+            pendingSinceNanos = System.nanoTime();
+        }
+        if (scheduled == null) {
+            scheduled = executor.schedule(this::write, coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Wait until every position submitted before this call is committed,
+     * writing immediately instead of waiting out the coalescing or backoff delay.
+     * @return false if the timeout passed first
+     */
+    public synchronized boolean flush(long timeout, TimeUnit unit) {
+        long target = submittedSeq;
+        if (persistedSeq >= target) {
+            return true;
+        }
+        if (scheduled != null && scheduled.cancel(false)) {
+            scheduled = executor.schedule(this::write, 0, TimeUnit.MILLISECONDS);
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (persistedSeq < target) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return false;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Flush, then stop the writer thread. Later submits are rejected.
+     * @return true if everything submitted was written in time
+     */
+    public boolean close(long timeout, TimeUnit unit) {
+        boolean flushed = flush(timeout, unit);
+        synchronized (this) {
+            closed = true;
+        }
+        executor.shutdownNow();
+        if (!flushed) {
+            System.err.println("User location not saved before shutdown");
+        }
+        return flushed;
+    }
+
+    public UserLocationWriteStats getStats() {
+        return new UserLocationWriteStats(
+                submitCount.sum(),
+                writeCount.sum(),
+                failureCount.sum(),
+                totalFlushNanos.sum(),
+                maxFlushNanos.get(),
+                lastFlushNanos);
+    }
+
+    // ---------------- Writing ----------------
+
+    /**
+     * Runs on the writer thread: store the latest positions, then either finish,
+     * schedule the next write (more submits arrived) or back off and retry the
+     * positions that failed.
+     */
+    private void write() {
+        Map<Integer, double[]> batch;
+        long seq;
+        long sinceNanos;
+        synchronized (this) {
+            scheduled = null;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new LinkedHashMap<>(pending);
+            seq = submittedSeq;
+            sinceNanos = pendingSinceNanos;
+        }
+
+        long startNanos = System.nanoTime();
+        Map<Integer, double[]> saved = new HashMap<>();
+        Exception failure = null;
+        for (Map.Entry<Integer, double[]> entry : batch.entrySet()) {
+            double[] position = entry.getValue();
+            try {
+                store.save(entry.getKey(), position[0], position[1]);
+                saved.put(entry.getKey(), position);
+            } catch (Exception e) {
+                failureCount.increment();
+                failure = e;
+            }
+        }
+
+        if (!saved.isEmpty()) {
+            long flushNanos = System.nanoTime() - sinceNanos;
+            writeCount.add(saved.size());
+            totalFlushNanos.add(flushNanos * saved.size());
+            maxFlushNanos.accumulateAndGet(flushNanos, Math::max);
+            lastFlushNanos = flushNanos;
+        }
+
+        synchronized (this) {
+            // Keep positions that failed or were replaced while this write ran
+            for (Map.Entry<Integer, double[]> entry : saved.entrySet()) {
+                if (pending.get(entry.getKey()) == entry.getValue()) {
+                    pending.remove(entry.getKey());
+                }
+            }
+            if (pending.isEmpty()) {
+                pendingSinceNanos = 0;
+            } else if (failure == null) {
+                // Submitted while this write ran; they have waited at most since it started
+                pendingSinceNanos = startNanos;
+            }
+
+            long delay = coalesceMillis;
+            if (failure != null) {
+                consecutiveFailures++;
+                delay = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(consecutiveFailures - 1, 16));
+                System.err.println("Saving user location failed (attempt " + consecutiveFailures +
+                        ", retrying in " + delay + " ms): " + failure.getMessage());
+            } else {
+                persistedSeq = seq;
+                consecutiveFailures = 0;
+            }
+            if (!pending.isEmpty() && scheduled == null && !executor.isShutdown()) {
+                scheduled = executor.schedule(this::write, delay, TimeUnit.MILLISECONDS);
+            }
+            notifyAll();
+        }
+    }
+}
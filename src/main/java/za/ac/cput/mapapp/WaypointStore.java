@@ -0,0 +1,203 @@
+package za.ac.cput.mapapp;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The map's waypoints, kept for the lifetime of the map and keyed by study
+ * location id. Reloads are applied as add/remove/update diffs, the user's marker
+ * is moved in place and filtering only flips visibility flags, so refreshes do
+ * not reallocate waypoints. Listeners (the painter, the spatial index) are told
+ * about each change and update themselves incrementally.
+ *
+ * Not thread-safe: use from the EDT.
+ * @author abong
+ */
+public class WaypointStore {
+
+    /**
+     * Change events. All methods default to doing nothing.
+     */
+    public interface Listener {
+        default void waypointAdded(StudyLocationWaypoint waypoint) {
+        }
+
+        default void waypointRemoved(StudyLocationWaypoint waypoint) {
+        }
+
+        /**
+         * The waypoint's position or study location data changed.
+         */
+        default void waypointUpdated(StudyLocationWaypoint waypoint) {
+        }
+
+        default void waypointVisibilityChanged(StudyLocationWaypoint waypoint) {
+        }
+
+        default void userWaypointMoved(StudyLocationWaypoint userWaypoint) {
+        }
+    }
+
+    private final Map<Integer, StudyLocationWaypoint> waypointsById = new LinkedHashMap<>();
+    private final StudyLocationWaypoint userWaypoint;
+    private final List<Listener> listeners = new ArrayList<>();
+
+    public WaypointStore(GeoPosition userPosition) {
+        userWaypoint = new StudyLocationWaypoint("Your Location", userPosition, Color.RED, true);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // ---------------- Updates ----------------
+
+    /**
+     * Bring the store in line with a freshly loaded set of study locations.
+     * New locations get a waypoint (visible until the next filter is applied),
+     * missing ones are removed, and existing waypoints take the new StudyLocation
+     * object, moving in place if its coordinates changed.
+     */
+    public void sync(Collection<StudyLocation> locations) {
+        Set<Integer> seen = new HashSet<>();
+        for (StudyLocation location : locations) {
+            seen.add(location.getId());
+            upsert(location);
+        }
+
+        Iterator<StudyLocationWaypoint> it = waypointsById.values().iterator();
+        while (it.hasNext()) {
+            StudyLocationWaypoint waypoint = it.next();
+            if (!seen.contains(waypoint.getStudyLocation().getId())) {
+                it.remove();
+                for (Listener listener : listeners) {
+                    listener.waypointRemoved(waypoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a waypoint for a new location, or hand an existing waypoint the new
+     * StudyLocation object (moving it if its coordinates changed). Nothing
+     * happens if the waypoint already holds this object.
+     */
+    public void upsert(StudyLocation location) {
+        StudyLocationWaypoint waypoint = waypointsById.get(location.getId());
+        if (waypoint == null) {
+            waypoint = new StudyLocationWaypoint(location.getGroupName(),
+                    new GeoPosition(location.getLatitude(), location.getLongitude()), Color.BLUE, false);
+            waypoint.setStudyLocation(location);
+            waypointsById.put(location.getId(), waypoint);
+            for (Listener listener : listeners) {
+                listener.waypointAdded(waypoint);
+            }
+        } else if (waypoint.getStudyLocation() != location) {
+            StudyLocation previous = waypoint.getStudyLocation();
+            waypoint.setStudyLocation(location);
+            if (previous.getLatitude() != location.getLatitude()
+                    || previous.getLongitude() != location.getLongitude()) {
+                waypoint.setPosition(new GeoPosition(location.getLatitude(), location.getLongitude()));
+            }
+            for (Listener listener : listeners) {
+                listener.waypointUpdated(waypoint);
+            }
+        }
+    }
+
+    /**
+     * Remove the waypoint of a location, if there is one.
+     */
+    public void remove(int id) {
+        StudyLocationWaypoint waypoint = waypointsById.remove(id);
+        if (waypoint != null) {
+            for (Listener listener : listeners) {
+                listener.waypointRemoved(waypoint);
+            }
+        }
+    }
+
+    /**
+     * Show only the waypoints of the given locations; only waypoints whose
+     * visibility actually changes produce events.
+     */
+    public void applyFilter(Collection<StudyLocation> visibleLocations) {
+        Set<Integer> visibleIds = new HashSet<>();
+        for (StudyLocation location : visibleLocations) {
+            visibleIds.add(location.getId());
+        }
+        for (StudyLocationWaypoint waypoint : waypointsById.values()) {
+            boolean visible = visibleIds.contains(waypoint.getStudyLocation().getId());
+            if (waypoint.isVisible() != visible) {
+                waypoint.setVisible(visible);
+                for (Listener listener : listeners) {
+                    listener.waypointVisibilityChanged(waypoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Highlight the waypoints of the given locations and clear the rest.
+     * The painter reads the flag when it draws, so this fires no events;
+     * repaint the map afterwards.
+     */
+    public void applyHighlight(Collection<StudyLocation> highlightedLocations) {
+        Set<Integer> highlightedIds = new HashSet<>();
+        for (StudyLocation location : highlightedLocations) {
+            highlightedIds.add(location.getId());
+        }
+        for (StudyLocationWaypoint waypoint : waypointsById.values()) {
+            waypoint.setHighlighted(highlightedIds.contains(waypoint.getStudyLocation().getId()));
+        }
+    }
+
+    /**
+     * Move the user's marker in place.
+     */
+    public void moveUser(GeoPosition position) {
+        if (Objects.equals(userWaypoint.getPosition(), position)) {
+            return;
+        }
+        userWaypoint.setPosition(position);
+        for (Listener listener : listeners) {
+            listener.userWaypointMoved(userWaypoint);
+        }
+    }
+
+    // ---------------- Queries ----------------
+
+    public StudyLocationWaypoint getUserWaypoint() {
+        return userWaypoint;
+    }
+
+    public StudyLocationWaypoint get(int id) {
+        return waypointsById.get(id);
+    }
+
+    /**
+     * @return all study location waypoints, visible or not
+     */
+    public Collection<StudyLocationWaypoint> getWaypoints() {
+        return Collections.unmodifiableCollection(waypointsById.values());
+    }
+
+    public int size() {
+        return waypointsById.size();
+    }
+}
@@ -0,0 +1,94 @@
+package za.ac.cput.mapapp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Statements from the pool's per-connection cache come back to the next
+ * borrower as they were prepared, whatever the last borrower left on them.
+ * @author abong
+ */
+class ConnectionPoolTest {
+
+    private static final String INSERT = "INSERT INTO pool_test (n) VALUES (?)";
+
+    @TempDir
+    Path directory;
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        EmbeddedDatabase.prepareDirectory(directory);
+        // One connection, so every borrow gets the same statement cache
+        pool = new ConnectionPool(EmbeddedDatabase.DRIVER, EmbeddedDatabase.url(directory), 1, 5_000, 8);
+        try (Connection con = pool.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE pool_test (n INT)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+        EmbeddedDatabase.shutdown(directory);
+    }
+
+    @Test
+    void closedStatementDropsItsPendingBatch() throws Exception {
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(INSERT)) {
+            stmt.setInt(1, 1);
+            stmt.addBatch();
+            // Closed before executeBatch, as when a batch insert fails part way
+        }
+
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(INSERT)) {
+            stmt.setInt(1, 2);
+            stmt.addBatch();
+            assertEquals(1, stmt.executeBatch().length);
+        }
+        assertEquals(1, count());
+    }
+
+    @Test
+    void closedStatementRestoresItsOptions() throws Exception {
+        String select = "SELECT n FROM pool_test";
+        int fetchSize;
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(select)) {
+            fetchSize = stmt.getFetchSize();
+            stmt.setFetchSize(50);
+            stmt.setMaxRows(1);
+            stmt.setQueryTimeout(7);
+        }
+
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(select)) {
+            assertEquals(0, stmt.getMaxRows());
+            assertEquals(fetchSize, stmt.getFetchSize());
+            assertEquals(0, stmt.getQueryTimeout());
+        }
+        assertEquals(1, pool.getMetrics().getStatementCacheHits());
+    }
+
+    private int count() throws Exception {
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement("SELECT COUNT(*) FROM pool_test");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
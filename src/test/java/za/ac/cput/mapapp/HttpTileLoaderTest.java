@@ -0,0 +1,279 @@
+package za.ac.cput.mapapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HttpTileLoader against an in-process stub tile server: caching and
+ * connection reuse, 304 revalidation of expired tiles, 404 negative caching,
+ * Retry-After pauses and per-tile backoff. Each test counts what reached the
+ * server.
+ * @author abong
+ */
+class HttpTileLoaderTest {
+
+    private static final int THREADS = 4;
+    private static final int ZOOM = 16;
+
+    static {
+        // Without this the stub's separate header and body writes stall on delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @TempDir
+    Path directory;
+
+    private StubTileServer server;
+    private HttpTileLoader loader;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StubTileServer();
+        loader = new HttpTileLoader(new DiskTileCache(directory, 64L * 1024 * 1024),
+                "LearnHub/1.0 test", THREADS, 0, 10_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        loader.close();
+        server.stop();
+    }
+
+    // ---------------- Caching ----------------
+
+    @Test
+    void downloadsEachTileOnceOverReusedConnections() throws Exception {
+        List<URL> urls = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            urls.add(server.tileUrl(37_000 + i / 8, 39_000 + i % 8 * 10));
+        }
+
+        loadAll(urls);
+        assertEquals(64, server.ok.get());
+        assertEquals(64, loader.getDownloads());
+        assertTrue(server.connections.size() <= THREADS,
+                "expected at most " + THREADS + " connections, got " + server.connections.size());
+
+        // Fresh tiles come from the disk cache
+        loadAll(urls);
+        assertEquals(64, server.requests.get());
+    }
+
+    @Test
+    void expiredTileIsServedFromDiskAndRevalidatedWith304() throws Exception {
+        server.maxAgeSeconds = 1;
+        URL url = server.tileUrl(37_000, 39_000);
+        assertEquals("tile " + url.getPath(), load(url));
+
+        Thread.sleep(1_100);
+        assertEquals("tile " + url.getPath(), load(url));
+        // Revalidation runs in the background, after the load returned
+        awaitCount(loader::getNotModified, 1);
+        assertEquals(1, server.notModified.get());
+        assertEquals(1, server.ok.get());
+
+        // The 304 extended the expiry, so the next load sends nothing
+        load(url);
+        assertEquals(2, server.requests.get());
+    }
+
+    // ---------------- Failures ----------------
+
+    @Test
+    void missingTileIsOnlyAskedForOnce() throws Exception {
+        URL url = server.tileUrl(37_000, 39_007);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(FileNotFoundException.class, () -> load(url));
+        }
+        assertEquals(1, server.notFound.get());
+        assertEquals(2, loader.getFailFast());
+    }
+
+    @Test
+    void retryAfterPausesEveryRequest() throws Exception {
+        server.rateLimitNext.set(1);
+        URL limited = server.tileUrl(37_000, 39_000);
+        URL next = server.tileUrl(37_000, 39_001);
+
+        assertThrows(IOException.class, () -> load(limited));
+        assertEquals(1, server.tooMany.get());
+
+        long start = System.nanoTime();
+        load(next);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // The stub sends Retry-After: 1
+        assertTrue(waitedMillis >= 900, "next request went out after " + waitedMillis + " ms");
+        assertEquals(1, server.ok.get());
+    }
+
+    @Test
+    void failedTileBacksOffThenRetries() throws Exception {
+        URL url = server.tileUrl(37_000, 39_000);
+        server.statuses.put(url.getPath(), 500);
+
+        assertThrows(IOException.class, () -> load(url));
+        assertThrows(IOException.class, () -> load(url));
+        assertEquals(1, server.requests.get(), "retried during backoff");
+        assertEquals(1, loader.getFailFast());
+
+        // The first backoff is two seconds
+        server.statuses.remove(url.getPath());
+        Thread.sleep(2_100);
+        assertEquals("tile " + url.getPath(), load(url));
+        assertEquals(2, server.requests.get());
+    }
+
+    @Test
+    void backoffDoublesUpToFiveMinutes() {
+        assertEquals(2_000, HttpTileLoader.backoffMillis(1));
+        assertEquals(4_000, HttpTileLoader.backoffMillis(2));
+        assertEquals(8_000, HttpTileLoader.backoffMillis(3));
+        assertEquals(TimeUnit.MINUTES.toMillis(5), HttpTileLoader.backoffMillis(10));
+        assertEquals(TimeUnit.MINUTES.toMillis(5), HttpTileLoader.backoffMillis(10_000));
+    }
+
+    @Test
+    void retryAfterIsReadInSecondsOrAsADate() {
+        assertEquals(120_000, HttpTileLoader.retryAfterMillis(headers("Retry-After", "120")));
+        long fromDate = HttpTileLoader.retryAfterMillis(headers("Retry-After", "Wed, 21 Oct 2015 07:28:00 GMT"));
+        // A date in the past means no wait
+        assertEquals(0, fromDate);
+        assertEquals(30_000, HttpTileLoader.retryAfterMillis(headers("Retry-After", "soon")));
+    }
+
+    // ---------------- Helpers ----------------
+
+    private String load(URL url) throws IOException {
+        try (InputStream in = loader.get(url)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void loadAll(List<URL> urls) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (URL url : urls) {
+                futures.add(executor.submit(() -> load(url)));
+            }
+            for (Future<String> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitCount(LongSupplier count, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.getAsLong() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, count.getAsLong());
+    }
+
+    private static HttpHeaders headers(String name, String value) {
+        return HttpHeaders.of(Map.of(name, List.of(value)), (n, v) -> true);
+    }
+
+    /**
+     * Tile server stand-in with ETags and max-age. Tiles whose y ends in 7 are
+     * 404s; other statuses can be set per path, and the next requests can be
+     * answered 429 with Retry-After.
+     */
+    private static final class StubTileServer {
+        final HttpServer server;
+        volatile int maxAgeSeconds = 3600;
+        final Map<String, Integer> statuses = new ConcurrentHashMap<>();
+        final AtomicInteger rateLimitNext = new AtomicInteger();
+
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger ok = new AtomicInteger();
+        final AtomicInteger notModified = new AtomicInteger();
+        final AtomicInteger notFound = new AtomicInteger();
+        final AtomicInteger tooMany = new AtomicInteger();
+        final Set<String> connections = ConcurrentHashMap.newKeySet();
+
+        StubTileServer() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+            server.createContext("/", this::handle);
+            server.setExecutor(Executors.newFixedThreadPool(THREADS));
+            server.start();
+        }
+
+        URL tileUrl(int x, int y) throws IOException {
+            return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/" + ZOOM + "/" + x + "/" + y + ".png");
+        }
+
+        void stop() {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdownNow();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            connections.add(exchange.getRemoteAddress().toString());
+
+            String path = exchange.getRequestURI().getPath();
+            String etag = "\"" + path.hashCode() + "\"";
+            Integer status = statuses.get(path);
+            if (rateLimitNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                tooMany.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, "slow down");
+            } else if (status != null) {
+                send(exchange, status, "HTTP " + status);
+            } else if (path.endsWith("7.png")) {
+                notFound.incrementAndGet();
+                send(exchange, 404, "no such tile");
+            } else if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=" + maxAgeSeconds);
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                ok.incrementAndGet();
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=" + maxAgeSeconds);
+                send(exchange, 200, "tile " + path);
+            }
+            exchange.close();
+        }
+
+        private static void send(HttpExchange exchange, int status, String text) throws IOException {
+            byte[] body = text.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package za.ac.cput.mapapp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Many students saving and reloading their location at the same time, each on
+ * their own student_locations row, against a fresh embedded database.
+ *
+ * Every simulated student saves a new position each round and reads it back;
+ * a read that does not return the student's own last save means another
+ * student overwrote it. After the run every student's row must hold their
+ * final position, or a save was lost.
+ * @author abong
+ */
+class StudentLocationConcurrencyTest {
+
+    private static final double BASE_LAT = -33.93080102488844;
+    private static final double BASE_LON = 18.430230425585137;
+
+    private static final int STUDENTS = 200;
+    private static final int ROUNDS = 10;
+    private static final int THREADS = 32;
+    // Student ids used by the test, clear of the seeded ones
+    private static final int FIRST_STUDENT_ID = 1_000_000;
+
+    @TempDir
+    Path directory;
+
+    private ConnectionPool pool;
+    private StudyLocationDBDemo dao;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        EmbeddedDatabase.prepareDirectory(directory);
+        pool = new ConnectionPool(EmbeddedDatabase.DRIVER, EmbeddedDatabase.url(directory), THREADS, 30_000, 32);
+        pool.setInitializer(SchemaManager::migrate);
+        dao = new StudyLocationDBDemo(pool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+        EmbeddedDatabase.shutdown(directory);
+    }
+
+    @Test
+    void concurrentSavesAreNeitherOverwrittenNorLost() throws Exception {
+        AtomicInteger overwritten = new AtomicInteger();
+        List<String> errors = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>(STUDENTS);
+            for (int s = 0; s < STUDENTS; s++) {
+                int student = FIRST_STUDENT_ID + s;
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        double latitude = latitude(student);
+                        double longitude = longitude(round);
+                        try {
+                            dao.upsertUserLocation(student, latitude, longitude);
+                            double[] saved = dao.loadUserLocation(student);
+                            if (saved == null || saved[0] != latitude || saved[1] != longitude) {
+                                overwritten.incrementAndGet();
+                            }
+                        } catch (SQLException e) {
+                            synchronized (errors) {
+                                errors.add("student " + student + " (" + e.getSQLState() + "): " + e.getMessage());
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(List.of(), errors, "failed saves");
+        assertEquals(0, overwritten.get(), "reads that did not return the student's own save");
+        for (int s = 0; s < STUDENTS; s++) {
+            int student = FIRST_STUDENT_ID + s;
+            assertArrayEquals(new double[]{latitude(student), longitude(ROUNDS - 1)},
+                    dao.loadUserLocation(student), "final location of student " + student);
+        }
+    }
+
+    private static double latitude(int student) {
+        return BASE_LAT + (student - FIRST_STUDENT_ID) * 1e-5;
+    }
+
+    private static double longitude(int round) {
+        return BASE_LON + round * 1e-5;
+    }
+}
@@ -0,0 +1,113 @@
+package za.ac.cput.mapapp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The study_locations triggers and the change log's retention, against a fresh
+ * embedded database.
+ * @author abong
+ */
+class StudyLocationChangeFeedTest {
+
+    @TempDir
+    Path directory;
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedDatabase.prepareDirectory(directory);
+        pool = new ConnectionPool(EmbeddedDatabase.DRIVER, EmbeddedDatabase.url(directory), 2, 5_000, 8);
+        pool.setInitializer(SchemaManager::migrate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+        EmbeddedDatabase.shutdown(directory);
+    }
+
+    @Test
+    void updateLogsTheOldIdOnlyWhenItChanges() throws Exception {
+        execute("INSERT INTO study_locations (id, group_name, latitude, longitude) VALUES (1, 'Maths', -33.93, 18.43)");
+        execute("UPDATE study_locations SET group_name = 'Applied Maths' WHERE id = 1");
+        assertEquals(List.of(1, 1), loggedIds());
+
+        execute("UPDATE study_locations SET id = 2 WHERE id = 1");
+        assertEquals(List.of(1, 1, 2, 1), loggedIds());
+    }
+
+    @Test
+    void purgeKeepsTheNewestEntryAndExpiresFeedsBehindIt() throws Exception {
+        StudyLocationChangeFeed feed = new StudyLocationChangeFeed(pool, 1);
+        feed.start(feed.currentVersion());
+        for (int id = 1; id <= 3; id++) {
+            execute("INSERT INTO study_locations (id, group_name, latitude, longitude) VALUES ("
+                    + id + ", 'Group " + id + "', -33.93, 18.43)");
+        }
+        long newest = feed.currentVersion();
+        Thread.sleep(10);
+
+        // The feed purges on its first poll, after its own version was read
+        StudyLocationChangeFeed.Changes changes = feed.poll();
+        assertTrue(changes.isExpired());
+        assertFalse(feed.isStarted());
+        assertEquals(1, loggedIds().size());
+        assertEquals(newest, feed.currentVersion());
+
+        StudyLocationChangeFeed.Snapshot snapshot = feed.reload();
+        assertEquals(3, snapshot.getLocations().size());
+        assertEquals(newest, snapshot.getVersion());
+        assertTrue(feed.isStarted());
+        assertFalse(feed.poll().isExpired());
+    }
+
+    @Test
+    void feedAtTheNewestVersionSurvivesAPurge() throws Exception {
+        execute("INSERT INTO study_locations (id, group_name, latitude, longitude) VALUES (1, 'Maths', -33.93, 18.43)");
+        execute("INSERT INTO study_locations (id, group_name, latitude, longitude) VALUES (2, 'Physics', -33.93, 18.43)");
+        StudyLocationChangeFeed feed = new StudyLocationChangeFeed(pool, 1);
+        feed.start(feed.currentVersion());
+        Thread.sleep(10);
+
+        StudyLocationChangeFeed.Changes changes = feed.poll();
+        assertFalse(changes.isExpired());
+        assertTrue(changes.isEmpty());
+        assertEquals(1, loggedIds().size());
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(sql)) {
+            stmt.executeUpdate();
+        }
+    }
+
+    private List<Integer> loggedIds() throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement stmt = con.prepareStatement(
+                     "SELECT location_id FROM study_location_changes ORDER BY seq");
+             ResultSet rs = stmt.executeQuery()) {
+            List<Integer> ids = new ArrayList<>();
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+            return ids;
+        }
+    }
+}